@@ -31,17 +31,21 @@ public class CarcassonneController implements Observer {
 	 * accordingly.
 	 */
 	public void update(Observable o, Object arg) {
-		if (arg instanceof String && ((String) arg).equalsIgnoreCase("rotate")) {
-			model.rotateCard();
-		} else if (arg instanceof Coordinate) {
-			model.placeCurrentCardOnBoard((Coordinate) arg);
-		} else if (arg instanceof Direction) {
-			if (model.placeMarkerOnLastPlacedCard((Direction) arg)) {
+		// a view may be taking its seat back (see Match.rejoin())
+		synchronized (model) {
+			if (arg instanceof String
+					&& ((String) arg).equalsIgnoreCase("rotate")) {
+				model.rotateCard();
+			} else if (arg instanceof Coordinate) {
+				model.placeCurrentCardOnBoard((Coordinate) arg);
+			} else if (arg instanceof Direction) {
+				if (model.placeMarkerOnLastPlacedCard((Direction) arg)) {
+					model.nextTurn();
+				}
+			} else if (arg instanceof String
+					&& ((String) arg).compareTo("pass") == 0) {
 				model.nextTurn();
 			}
-		} else if (arg instanceof String
-				&& ((String) arg).compareTo("pass") == 0) {
-			model.nextTurn();
 		}
 	}
 
@@ -10,6 +10,10 @@ import model.*;
  * This class represent a Carcassonne Match. It provides method to add players
  * and to start a match.
  * 
+ * A match rebuilt after a restart has its players but none of their views:
+ * each of them takes its seat back by rejoin(), with the color it had, and
+ * the match goes on as soon as the view of the current player is back.
+ * 
  * @author Guido Gerosa
  * 
  */
@@ -27,8 +31,43 @@ public class Match implements Observer {
 	 *            - the game name to register
 	 */
 	public Match(String gameName) {
+		this(gameName, null);
+	}
+
+	/**
+	 * Same as Match(gameName), but the moves of the match are recorded in the
+	 * given {@link MatchJournal}.
+	 * 
+	 * @param gameName
+	 *            - the game name to register
+	 * @param journal
+	 *            - the {@link MatchJournal} of the match, or null
+	 */
+	public Match(String gameName, MatchJournal journal) {
+		this(gameName, new CarcassonneModel(new Deck()), journal);
+	}
+
+	/**
+	 * Creates a match going on with the given {@link GameEngine}, rebuilt
+	 * after a restart, whose moves are recorded in the given
+	 * {@link MatchJournal} starting from a snapshot.
+	 * 
+	 * @param gameName
+	 *            - the game name to register
+	 * @param engine
+	 *            - the {@link GameEngine} of the match
+	 * @param journal
+	 *            - the {@link MatchJournal} of the match, or null
+	 */
+	public Match(String gameName, GameEngine engine, MatchJournal journal) {
+		this(gameName, new CarcassonneModel(engine), journal);
+	}
+
+	private Match(String gameName, CarcassonneModel model,
+			MatchJournal journal) {
 		this.gameName = gameName;
-		model = new CarcassonneModel(new Deck());
+		this.model = model;
+		model.setJournal(journal);
 		model.addObserver(this);
 		controller = new CarcassonneController(model);
 		players = new HashMap<Player, AbstractCarcassonneView>();
@@ -89,6 +128,40 @@ public class Match implements Observer {
 		return true;
 	}
 
+	/**
+	 * Gives the seat of the player having the given color back to the given
+	 * view, in a match that has already started, for example one rebuilt after
+	 * a restart. The view receives a {@link StartSignal} and what it has
+	 * missed of the match (see {@link CarcassonneModel#catchUp(Observer)}),
+	 * then it observes the model like the other views.
+	 * 
+	 * @param view
+	 *            - the view taking the seat
+	 * @param color
+	 *            - the {@link PlayerColor} of the seat
+	 * @return true if the seat has been taken, false if the match has no such
+	 *         player, hasn't started or the seat already has a view
+	 */
+	public boolean rejoin(AbstractCarcassonneView view, PlayerColor color) {
+		synchronized (model) {
+			Player player = model.getPlayer(color);
+			Card firstCard = model.getFirstCard();
+			if (player == null || firstCard == null
+					|| players.containsKey(player)) {
+				return false;
+			}
+			players.put(player, view);
+			view.update(null, new StartSignal(firstCard, gameName, player,
+					model.getPlayersNumber()));
+			model.catchUp(view);
+			model.addObserver(view);
+			if (player.equals(model.getCurrentPlayer())) {
+				view.addObserver(controller);
+			}
+			return true;
+		}
+	}
+
 	/**
 	 * When this method receives a instance of {@link Player} it makes the
 	 * controller observe only the view of the given player
@@ -106,7 +179,10 @@ public class Match implements Observer {
 				.entrySet()) {
 			entry.getValue().deleteObserver(controller);
 		}
-		players.get(playerToObserve).addObserver(controller);
+		AbstractCarcassonneView next = players.get(playerToObserve);
+		if (next != null) {
+			next.addObserver(controller);
+		}
 	}
 
 }
@@ -9,17 +9,85 @@ import model.Coordinate;
  * methods to place new {@link Card} objects in given {@link Coordinate} and
  * updates the players score.
  * 
+ * Changes can be made reversible: after checkpoint() every placement, zone
+ * merge, perimeter change and marker placement or removal is recorded in an
+ * {@link UndoLog}, so that rollback() reverts them in time proportional to
+ * the changes instead of copying the {@link Board}.
+ * 
+ * The {@link Board} keeps a Zobrist hash of the tiles put and of the markers
+ * on them, updated at each change, so that equal positions reached by
+ * different orders of moves can be recognized (see getHash()).
+ * 
+ * For each {@link TileType} asked about, the {@link Board} also counts the
+ * openings where it fits with some rotation, updating the counts as openings
+ * come and go, so that telling whether a tile can be put anywhere doesn't
+ * need to look at the openings (see getFittingOpenings()).
+ * 
  * @author Guido Gerosa
  * 
  */
 public class Board {
 
-	private Map<Coordinate, Card> grid;
+	private LongMap<Card> grid;
 	private ZonesHandler zonesHandler;
 	private Map<Direction, Zone> touchedZones = null;
-	private Set<Coordinate> openings;
+	// packed coordinates of the openings mapped to their signature
+	private LongIntMap openings;
+	// openings grouped by signature, and which groups are not empty
+	private LongIntMap[] openingsBySignature;
+	private long[] usedSignatures;
+	// openings fitting each tracked TileType, by id, and the tracked types
+	private int[] fittingOpenings = new int[0];
+	private boolean[] isTracked = new boolean[0];
+	private TileType[] tracked = new TileType[0];
+	private int trackedCount = 0;
+	private long hash = 0;
+	private static final int SIDES = Direction.values().length;
+	private static final int SIGNATURES = TileType.SIGNATURES;
 	static final int START_X = 0;
 	static final int START_Y = 0;
+	private static final int GRID_PUT = 0;
+	private static final int OPENING = 1;
+	private static final int TOUCHED_ZONES = 2;
+	private static final int ZONE_MARKER = 3;
+	private static final int ZONE_MARKERS_REMOVED = 4;
+	private static final int CARD_MARKER = 5;
+	private UndoLog log = null;
+	private final UndoLog.Undoer undoer = new UndoLog.Undoer() {
+		@Override
+		@SuppressWarnings("unchecked")
+		public void undo(int operation, long key, int value, Object first,
+				Object second) {
+			switch (operation) {
+			case GRID_PUT:
+				grid.remove(key);
+				hash ^= Zobrist.tile(key, value);
+				break;
+			case OPENING:
+				if (value < 0) {
+					removeOpening(key);
+				} else {
+					setOpening(key, value);
+				}
+				break;
+			case TOUCHED_ZONES:
+				touchedZones = (Map<Direction, Zone>) first;
+				break;
+			case ZONE_MARKER:
+				((Zone) first).removeLastMarker();
+				break;
+			case ZONE_MARKERS_REMOVED:
+				((Zone) first).restoreMarkers((Collection<Marker>) second);
+				break;
+			case CARD_MARKER:
+				setMarker(key, (Card) first, Direction.fromOrdinal(value),
+						(Marker) second);
+				break;
+			default:
+				throw new IllegalStateException();
+			}
+		}
+	};
 
 	/**
 	 * The Constructor places the tile given in the (0,0) coordinate.
@@ -30,9 +98,197 @@ public class Board {
 	 */
 	public Board() {
 		zonesHandler = new ZonesHandler();
-		grid = new HashMap<Coordinate, Card>();
-		openings = new HashSet<Coordinate>();
-		openings.add(new Coordinate(0, 0));
+		grid = new LongMap<Card>();
+		openings = new LongIntMap();
+		openingsBySignature = new LongIntMap[SIGNATURES];
+		usedSignatures = new long[SIGNATURES / Long.SIZE];
+		setOpening(Coordinate.pack(START_X, START_Y), 0);
+	}
+
+	/**
+	 * Starts recording the changes of this {@link Board}, if it's not already
+	 * doing it, and returns a mark of the current state to be passed to
+	 * rollback(). While recording completed {@link Zone}s are not compacted.
+	 * 
+	 * @return a mark of the current state
+	 */
+	public int checkpoint() {
+		if (log == null) {
+			log = new UndoLog();
+			zonesHandler.setUndoLog(log);
+		}
+		return log.size();
+	}
+
+	/**
+	 * Reverts every change made after the given checkpoint. Later checkpoints
+	 * are no longer valid; the given one and the earlier ones still are.
+	 * 
+	 * @param checkpoint
+	 *            - a mark returned by checkpoint() since recording started
+	 * @throws IllegalStateException
+	 *             - if changes are not being recorded
+	 */
+	public void rollback(int checkpoint) {
+		if (log == null) {
+			throw new IllegalStateException("No checkpoint has been taken.");
+		}
+		log.rollback(checkpoint);
+	}
+
+	/**
+	 * Stops recording the changes and forgets those recorded, which can't be
+	 * reverted anymore.
+	 */
+	public void commit() {
+		log = null;
+		zonesHandler.setUndoLog(null);
+	}
+
+	private void record(int operation, long key, int value, Object first,
+			Object second) {
+		if (log != null) {
+			log.record(undoer, operation, key, value, first, second);
+		}
+	}
+
+	/**
+	 * Puts the given {@link Marker} on the given side of the {@link Card} in
+	 * the given packed {@link Coordinate}, or removes the marker of the
+	 * {@link Card} if the given one is null, recording the previous marker and
+	 * updating the hash.
+	 */
+	private void setMarker(long coordinate, Card tile, Direction side,
+			Marker marker) {
+		try {
+			Direction previous = tile.getMarkerPosition();
+			Marker removed = tile.getMarker();
+			record(CARD_MARKER, coordinate, previous.ordinal(), tile, removed);
+			hash ^= Zobrist.marker(coordinate, removed.getOwner().getColor(),
+					previous);
+			tile.removeMarker();
+		} catch (NoMarkerOnCardException e) {
+			record(CARD_MARKER, coordinate, 0, tile, null);
+		}
+		if (marker != null) {
+			tile.addMarker(side, marker);
+			hash ^= Zobrist.marker(coordinate, marker.getOwner().getColor(),
+					side);
+		}
+	}
+
+	/**
+	 * Returns the Zobrist hash of this {@link Board}: the exclusive or of a
+	 * key for each tile put, standing for its {@link Coordinate} and the sides
+	 * it shows, and of a key for each {@link Marker}, standing for its
+	 * {@link Coordinate}, side and color. Boards having the same tiles and
+	 * markers in the same places have the same hash, whatever the order they
+	 * have been put in.
+	 * 
+	 * @return the hash of this {@link Board}
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Stores the given packed {@link Coordinate} as an opening having the
+	 * given signature, moving it from the group of its previous signature.
+	 */
+	private void setOpening(long coordinate, int signature) {
+		removeOpening(coordinate);
+		record(OPENING, coordinate, -1, null, null);
+		openings.put(coordinate, signature);
+		if (openingsBySignature[signature] == null) {
+			openingsBySignature[signature] = new LongIntMap();
+		}
+		openingsBySignature[signature].put(coordinate, signature);
+		usedSignatures[signature / Long.SIZE] |= 1L << signature;
+		countFitting(signature, 1);
+	}
+
+	/**
+	 * Removes the given packed {@link Coordinate} from the openings, if it's
+	 * there.
+	 */
+	private void removeOpening(long coordinate) {
+		int signature = openings.get(coordinate, -1);
+		if (signature >= 0) {
+			record(OPENING, coordinate, signature, null, null);
+			openings.remove(coordinate);
+			LongIntMap group = openingsBySignature[signature];
+			group.remove(coordinate);
+			if (group.size() == 0) {
+				usedSignatures[signature / Long.SIZE] &= ~(1L << signature);
+			}
+			countFitting(signature, -1);
+		}
+	}
+
+	/**
+	 * Adds the given amount to the fitting openings of the tracked
+	 * {@link TileType}s that fit the given signature.
+	 */
+	private void countFitting(int signature, int amount) {
+		for (int i = 0; i < trackedCount; i++) {
+			if (tracked[i].getRotations(signature) != 0) {
+				fittingOpenings[tracked[i].getId()] += amount;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of openings where a tile of the given
+	 * {@link TileType} can be put, with some rotation. The first time a
+	 * {@link TileType} is asked about the openings are counted, then the count
+	 * is kept up to date at each change of the {@link Board}, rollbacks
+	 * included.
+	 * 
+	 * @param type
+	 *            - the {@link TileType}
+	 * @return the number of openings fitting the {@link TileType}
+	 */
+	public int getFittingOpenings(TileType type) {
+		int id = type.getId();
+		if (id >= fittingOpenings.length) {
+			int length = Math.max(id + 1, fittingOpenings.length * 2);
+			fittingOpenings = Arrays.copyOf(fittingOpenings, length);
+			isTracked = Arrays.copyOf(isTracked, length);
+		}
+		if (!isTracked[id]) {
+			isTracked[id] = true;
+			if (trackedCount == tracked.length) {
+				tracked = Arrays.copyOf(tracked, Math.max(8, trackedCount * 2));
+			}
+			tracked[trackedCount++] = type;
+			for (int word = 0; word < usedSignatures.length; word++) {
+				long signatures = usedSignatures[word];
+				while (signatures != 0) {
+					int signature = word * Long.SIZE
+							+ Long.numberOfTrailingZeros(signatures);
+					signatures &= signatures - 1;
+					if (type.getRotations(signature) != 0) {
+						fittingOpenings[id] += openingsBySignature[signature]
+								.size();
+					}
+				}
+			}
+		}
+		return fittingOpenings[id];
+	}
+
+
+	/**
+	 * Returns the signature of the opening in the given {@link Coordinate}:
+	 * which {@link Place} a tile needs on each side to match its neighbours
+	 * (see {@link TileType}).
+	 * 
+	 * @param coordinate
+	 *            - the {@link Coordinate} of the opening
+	 * @return the signature of the opening, or -1 if a tile can't be put there
+	 */
+	public int getSignature(Coordinate coordinate) {
+		return openings.get(coordinate.pack(), -1);
 	}
 
 	/**
@@ -40,47 +296,159 @@ public class Board {
 	 * {@link Card} at the given {@link Coordinate}
 	 * 
 	 * @param coordinate
-	 *            - the {@link Coordinate} to check
+	 *            - the packed {@link Coordinate} to check
 	 * @param tile
 	 *            - the {@link Card} to check
 	 * @return true if the tile is placeable
 	 */
-	private boolean isPlaceable(Coordinate coordinate, Card tile) {
-		if (openings.contains(coordinate)) {
-			for (Direction direction : Direction.values()) {
-				if (grid.get(coordinate.go(direction)) != null
-						&& !tile.getPlace(direction).equals(
-								grid.get(coordinate.go(direction)).getPlace(
-										direction.opposite()))) {
-					return false;
-				}
-			}
-			return true;
-		} else {
-			return false;
-		}
+	private boolean isPlaceable(long coordinate, Card tile) {
+		int signature = openings.get(coordinate, -1);
+		return signature >= 0
+				&& tile.getType().fits(tile.getRotation(), signature);
 	}
 
 	/**
 	 * This method returns true if the given {@link Card} can be put on the
-	 * {@link Board}.
+	 * {@link Board}. If so the {@link Card} is left rotated so that it can be
+	 * put somewhere; otherwise its rotation is not changed.
+	 * 
+	 * Only one opening for each signature needs to be checked, since openings
+	 * having the same signature accept the same tiles.
 	 * 
 	 * @param tile
 	 *            - the {@link Card} to check for "putability"
 	 * @return true if the given {@link Card} can be put on the {@link Board}
 	 */
 	public boolean canAccept(Card tile) {
-		for (Coordinate coordinate : openings) {
-			for (int i = 0; i < Direction.values().length; i++) {
-				if (isPlaceable(coordinate, tile)) {
+		TileType type = tile.getType();
+		if (getFittingOpenings(type) == 0) {
+			return false;
+		}
+		for (int word = 0; word < usedSignatures.length; word++) {
+			long signatures = usedSignatures[word];
+			while (signatures != 0) {
+				int signature = word * Long.SIZE
+						+ Long.numberOfTrailingZeros(signatures);
+				signatures &= signatures - 1;
+				if (type.getRotations(signature) != 0) {
+					while (!type.fits(tile.getRotation(), signature)) {
+						tile.rotate();
+					}
 					return true;
 				}
-				tile.rotate();
 			}
 		}
 		return false;
 	}
 
+	/**
+	 * Returns the {@link Coordinate}s where the given {@link Card} can be put
+	 * without rotating it.
+	 * 
+	 * @param tile
+	 *            - the {@link Card} to check
+	 * @return a {@link Collection} of the {@link Coordinate}s accepting the
+	 *         {@link Card}
+	 */
+	public Collection<Coordinate> getAcceptingCoordinates(Card tile) {
+		Collection<Coordinate> result = new ArrayList<Coordinate>();
+		for (int word = 0; word < usedSignatures.length; word++) {
+			long signatures = usedSignatures[word];
+			while (signatures != 0) {
+				int signature = word * Long.SIZE
+						+ Long.numberOfTrailingZeros(signatures);
+				signatures &= signatures - 1;
+				if (tile.getType().fits(tile.getRotation(), signature)) {
+					LongIntMap group = openingsBySignature[signature];
+					for (int slot = 0; slot < group.capacity(); slot++) {
+						if (group.isUsed(slot)) {
+							result.add(Coordinate.unpack(group.keyAt(slot)));
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Tells the given {@link PlacementVisitor} every legal placement of a tile
+	 * of the given {@link TileType}: each free {@link Coordinate} and rotation
+	 * matching the neighbours, together with the sides where a {@link Marker}
+	 * could be put afterwards, that are those whose {@link Zone} would not be
+	 * ruled. Rotations showing the same tile as a lower one are skipped, so
+	 * symmetric tiles give each placement once. Neither the {@link Board} nor
+	 * any {@link Card} is modified and nothing is allocated for each
+	 * placement. The {@link Board} must not be changed by the visitor during
+	 * the enumeration.
+	 * 
+	 * @param type
+	 *            - the {@link TileType} of the tile to put
+	 * @param visitor
+	 *            - the {@link PlacementVisitor} to tell the placements to
+	 * @return false if the visitor stopped the enumeration, true otherwise
+	 */
+	public boolean forEachPlacement(TileType type, PlacementVisitor visitor) {
+		for (int word = 0; word < usedSignatures.length; word++) {
+			long signatures = usedSignatures[word];
+			while (signatures != 0) {
+				int signature = word * Long.SIZE
+						+ Long.numberOfTrailingZeros(signatures);
+				signatures &= signatures - 1;
+				int rotations = type.getRotations(signature);
+				while (rotations != 0) {
+					int rotation = Integer.numberOfTrailingZeros(rotations);
+					rotations &= rotations - 1;
+					LongIntMap group = openingsBySignature[signature];
+					for (int slot = 0; slot < group.capacity(); slot++) {
+						if (!group.isUsed(slot)) {
+							continue;
+						}
+						long coordinate = group.keyAt(slot);
+						if (!visitor.visit(Coordinate.unpackX(coordinate),
+								Coordinate.unpackY(coordinate), rotation,
+								getMarkerDirections(coordinate, type, rotation))) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the mask of the sides of a tile put in the given packed
+	 * {@link Coordinate} with the given rotation where a {@link Marker} could
+	 * be put: the side must show something and none of the {@link Zone}s it
+	 * would be merged with can be ruled.
+	 */
+	private int getMarkerDirections(long coordinate, TileType type,
+			int rotation) {
+		int result = 0;
+		for (int i = 0; i < SIDES; i++) {
+			Direction side = Direction.fromOrdinal(i);
+			if (type.getPlace(rotation, side) == Place.NOTHING) {
+				continue;
+			}
+			boolean ruled = false;
+			int connected = side.mask() | type.cross(rotation, side);
+			while (connected != 0 && !ruled) {
+				Direction direction = Direction.fromOrdinal(Integer
+						.numberOfTrailingZeros(connected));
+				connected &= connected - 1;
+				Zone neighbour = zonesHandler.getZoneAt(
+						Coordinate.go(coordinate, direction),
+						direction.opposite());
+				ruled = neighbour != null && neighbour.isRuled();
+			}
+			if (!ruled) {
+				result |= side.mask();
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Returns a {@link Collection} containing the last modified {@link Zone}s.
 	 * 
@@ -115,14 +483,24 @@ public class Board {
 	 */
 	private Card put(Coordinate coordinate, Card tile)
 			throws InvalidPutException {
-		if (this.isPlaceable(coordinate, tile)) {
-			openings.remove(coordinate);
-			for (Coordinate toAdd : coordinate.getNeighbours()) {
-				if (!grid.keySet().contains(toAdd)) {
-					openings.add(toAdd);
+		long key = coordinate.pack();
+		if (this.isPlaceable(key, tile)) {
+			removeOpening(key);
+			for (int i = 0; i < SIDES; i++) {
+				Direction direction = Direction.fromOrdinal(i);
+				long toAdd = Coordinate.go(key, direction);
+				if (!grid.containsKey(toAdd)) {
+					// the new neighbour constrains the side facing the tile
+					int signature = Math.max(openings.get(toAdd, 0), 0)
+							| ((tile.getPlace(direction).ordinal() + 1) << (2 * direction
+									.opposite().ordinal()));
+					setOpening(toAdd, signature);
 				}
 			}
-			return grid.put(coordinate, tile);
+			int code = tile.getType().getCode(tile.getRotation());
+			record(GRID_PUT, key, code, null, null);
+			hash ^= Zobrist.tile(key, code);
+			return grid.put(key, tile);
 		} else {
 			throw new InvalidPutException();
 		}
@@ -153,8 +531,10 @@ public class Board {
 			throw new InvalidMarkerPositionException();
 		} else {
 			toRule.addMarker(marker);
+			record(ZONE_MARKER, 0, 0, toRule, null);
 		}
-		grid.get(coordinate).addMarker(direction, marker);
+		long key = coordinate.pack();
+		setMarker(key, grid.get(key), direction, marker);
 		return getModifiedZones();
 	}
 
@@ -176,6 +556,7 @@ public class Board {
 	public Collection<Zone> place(Coordinate coordinate, Card tile)
 			throws InvalidPutException {
 		this.put(coordinate, tile);
+		record(TOUCHED_ZONES, 0, 0, touchedZones, null);
 		touchedZones = zonesHandler.update(coordinate, tile);
 		return getModifiedZones();
 	}
@@ -196,13 +577,16 @@ public class Board {
 	public Map<Coordinate, Card> removeMarkers(Zone zone,
 			Collection<Marker> markers) {
 		Map<Coordinate, Card> changedTiles = new HashMap<Coordinate, Card>();
-		markers.addAll(zone.removeMarkers());
+		Collection<Marker> removed = zone.removeMarkers();
+		record(ZONE_MARKERS_REMOVED, 0, 0, zone, removed);
+		markers.addAll(removed);
 		for (Coordinate coordinate : zone.getCoveredCoordinates()) {
-			Card tileToStrip = grid.get(coordinate);
+			long key = coordinate.pack();
+			Card tileToStrip = grid.get(key);
 			try {
 				if (zone.covers(new Position(coordinate, tileToStrip
 						.getMarkerPosition()))) {
-					tileToStrip.removeMarker();
+					setMarker(key, tileToStrip, null, null);
 					changedTiles.put(coordinate, tileToStrip);
 				}
 			} catch (NoMarkerOnCardException e) {
@@ -212,6 +596,47 @@ public class Board {
 		return changedTiles;
 	}
 
+	/**
+	 * Collapses the given {@link Zone} in a compact summary once it has been
+	 * completed and scored, releasing the {@link Position}s it holds. The
+	 * {@link Zone} still answers getScore(), covers() and
+	 * getCoveredCoordinates().
+	 * 
+	 * @param zone
+	 *            - the completed {@link Zone} without markers to compact
+	 * @return true if the {@link Zone} has been compacted
+	 */
+	public boolean compact(Zone zone) {
+		return zonesHandler.compact(zone);
+	}
+
+	/**
+	 * Returns the {@link Zone} covering the given {@link Position}.
+	 * 
+	 * @param position
+	 *            - the {@link Position} to look for
+	 * @return the {@link Zone} covering the {@link Position}
+	 * @throws InvalidPositionException
+	 *             - if no {@link Zone} covers the {@link Position}
+	 */
+	public Zone getZoneHaving(Position position)
+			throws InvalidPositionException {
+		return zonesHandler.getZoneHaving(position);
+	}
+
+	/**
+	 * Returns the points the given {@link Player} would get from the ruled
+	 * {@link Zone}s if the match ended now, in constant time (see
+	 * {@link ZonesHandler#getPendingScore(Player)}).
+	 * 
+	 * @param player
+	 *            - the {@link Player}
+	 * @return the pending points of the {@link Player}
+	 */
+	public int getPendingScore(Player player) {
+		return zonesHandler.getPendingScore(player);
+	}
+
 	/**
 	 * Returns a Collection containing the zones that haven't been closed yet
 	 * 
@@ -1,19 +1,35 @@
 package model;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
 /**
  * This class contains a {@link Card} and a {@link Coordinate} and represents an
- * element of a {@link Board}
+ * element of a {@link Board}. The {@link Card} is not referenced: the class
+ * keeps a {@link CardUpdate} of it, so the sender is free to keep on modifying
+ * the {@link Card}.
+ * 
+ * An update is serialized as its {@link Card} (see
+ * {@link Card#writeExternal(ObjectOutput)}) followed by the coordinates as
+ * zigzag varints: a placement without marker near the center takes 5 bytes.
  * 
  * @author Guido Gerosa
  * 
  */
-public class BoardUpdate implements Serializable {
+public class BoardUpdate implements Externalizable {
 
 	private static final long serialVersionUID = 5318332397461518337L;
-	private final Card updatedCard;
-	private final Coordinate where;
+	private CardUpdate card;
+	private Coordinate where;
+
+	/**
+	 * Construct an empty update, to be filled by readExternal(). It's only
+	 * used by deserialization.
+	 */
+	public BoardUpdate() {
+	}
 
 	/**
 	 * Since this class has a {@link Card} and a {@link Coordinate} those
@@ -25,17 +41,17 @@ public class BoardUpdate implements Serializable {
 	 *            - the {@link Coordinate} to register
 	 */
 	public BoardUpdate(Card updatedCard, Coordinate where) {
-		this.updatedCard = updatedCard;
+		this.card = new CardUpdate(updatedCard);
 		this.where = where;
 	}
 
 	/**
-	 * Returns the registered {@link Card}
+	 * Returns a new {@link Card} equal to the registered one
 	 * 
 	 * @return the registered {@link Card}
 	 */
 	public Card getUpdatedCard() {
-		return updatedCard;
+		return card.getUpdatedCard();
 	}
 
 	/**
@@ -46,4 +62,25 @@ public class BoardUpdate implements Serializable {
 	public Coordinate getWhere() {
 		return where;
 	}
-}
+
+	/**
+	 * Writes the {@link Card} and the {@link Coordinate}.
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		card.writeExternal(out);
+		MatchJournal.writeSigned(out, where.getX());
+		MatchJournal.writeSigned(out, where.getY());
+	}
+
+	/**
+	 * Reads an update written by writeExternal().
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		card = new CardUpdate();
+		card.readExternal(in);
+		where = new Coordinate(MatchJournal.readSigned(in),
+				MatchJournal.readSigned(in));
+	}
+}
\ No newline at end of file
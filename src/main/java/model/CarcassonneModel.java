@@ -4,10 +4,9 @@ import java.util.*;
 
 /**
  * The CarcassonneModel class represents the state of a single Carcassonne
- * match. The state of the class consists in the references to the board, to the
- * deck, to the current card, to the current player, to the last placed card
- * coordinate and to the last touched zones, in a List of the players of the
- * match and in a list of the markers.
+ * match. The state is kept by a {@link GameEngine}, that applies the rules,
+ * while this class tells its observers every change and reports the moves that
+ * are not allowed.
  * 
  * The class allows to get the match state, to add a player to the match, to
  * change the current player with the next one, to get a maker, to rotate the
@@ -15,22 +14,18 @@ import java.util.*;
  * the last placed card, to change the current card with the next one and to get
  * the first card of the game.
  * 
+ * If a {@link MatchJournal} is set, every move accepted is recorded in it, so
+ * that the match can be rebuilt after a crash, together with a snapshot of
+ * the match as often as the journal asks.
+ * 
  * @author Edoardo Galimberti, Guido Gerosa
  * 
  */
 
 public class CarcassonneModel extends Observable {
 
-	private Deck deck;
-	private Board board;
-	private Coordinate lastPlacedCardCoordinate = new Coordinate(0, 0);
-	private Card currentCard;
-	private Queue<Player> turns = new LinkedList<Player>();
-	private Player currentPlayer;
-	private List<Marker> markers = new ArrayList<Marker>();
-	private boolean cardIsPlaced;
-	private Collection<Zone> lastTouchedZones = new ArrayList<Zone>();;
-	static final int MARKER_PER_PLAYER = 7;
+	private GameEngine engine;
+	private MatchJournal journal;
 
 	/**
 	 * Construct a Carcassonne model containing all the objects used to play a
@@ -38,9 +33,34 @@ public class CarcassonneModel extends Observable {
 	 * 
 	 */
 	public CarcassonneModel(Deck deck) {
-		this.deck = deck;
-		this.board = new Board();
-		this.cardIsPlaced = true;
+		this.engine = new GameEngine(deck);
+	}
+
+	/**
+	 * Construct a Carcassonne model going on with the match of the given
+	 * {@link GameEngine}, for example one rebuilt from its
+	 * {@link MatchJournal}.
+	 * 
+	 * @param engine
+	 *            - the {@link GameEngine} of the match
+	 */
+	public CarcassonneModel(GameEngine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Sets the {@link MatchJournal} recording the moves of this match from
+	 * now on. If the match has already started, the journal begins with a
+	 * snapshot of it.
+	 * 
+	 * @param journal
+	 *            - the {@link MatchJournal}, or null to stop recording
+	 */
+	public void setJournal(MatchJournal journal) {
+		this.journal = journal;
+		if (journal != null && engine.isStarted()) {
+			journal.recordSnapshot(engine);
+		}
 	}
 
 	/**
@@ -50,19 +70,99 @@ public class CarcassonneModel extends Observable {
 	 * @return a brief report on player's score and markers
 	 */
 	private String getMatchState() {
-		String report = "";
-		for (Player player : turns) {
-			int markerCount = 0;
-			for (Marker marker : markers) {
-				if (marker.getOwner().equals(player)) {
-					markerCount++;
-				}
+		StringBuilder report = new StringBuilder();
+		for (Player player : engine.getPlayers()) {
+			report.append("Player ").append(player).append(": ")
+					.append(player.getScore()).append(" (")
+					.append(engine.getMarkersLeft(player)).append("); ");
+		}
+		report.append("Tiles left: ").append(engine.getTilesLeft());
+		return report.toString();
+	}
+
+	/**
+	 * Returns the score each player would have if the match ended now, in turn
+	 * order, without walking the zones of the board.
+	 * 
+	 * @return the projected scores in turn order
+	 */
+	public int[] getProjectedScores() {
+		return engine.getProjectedScores();
+	}
+
+	/**
+	 * Returns the {@link Player} of the given color, or null if no player of
+	 * the match has it.
+	 * 
+	 * @param color
+	 *            - the {@link PlayerColor} of the player
+	 * @return the {@link Player} of the given color
+	 */
+	public Player getPlayer(PlayerColor color) {
+		for (Player player : engine.getPlayers()) {
+			if (player.getColor() == color) {
+				return player;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of players of the match.
+	 * 
+	 * @return the number of players
+	 */
+	public int getPlayersNumber() {
+		return engine.getPlayers().size();
+	}
+
+	/**
+	 * Returns the current player, or null if the match hasn't started.
+	 * 
+	 * @return the current player
+	 */
+	public Player getCurrentPlayer() {
+		return engine.getCurrentPlayer();
+	}
+
+	/**
+	 * Returns a copy of the first card of the match, as it is now on the
+	 * board, or null if the match hasn't started.
+	 * 
+	 * @return the first card of the match
+	 */
+	public Card getFirstCard() {
+		Iterator<Card> first = engine.getPlacedTiles().values().iterator();
+		return first.hasNext() ? first.next().clone() : null;
+	}
+
+	/**
+	 * Sends the given observer what it has missed of the match going on: the
+	 * tiles following the first one in the order they were placed, the score
+	 * and markers of the players, the current player and the current card.
+	 * It's meant for a view taking a seat in the match after it started.
+	 * 
+	 * @param observer
+	 *            - the {@link Observer} to bring up to date
+	 */
+	public void catchUp(Observer observer) {
+		if (!engine.isStarted()) {
+			return;
+		}
+		boolean first = true;
+		for (Map.Entry<Coordinate, Card> entry : engine.getPlacedTiles()
+				.entrySet()) {
+			if (!first) {
+				observer.update(this,
+						new BoardUpdate(entry.getValue(), entry.getKey()));
 			}
-			report = report.concat("Player " + player + ": "
-					+ player.getScore() + " (" + markerCount + ")" + "; ");
+			first = false;
+		}
+		observer.update(this, getMatchState());
+		if (!engine.isOver()) {
+			observer.update(this, engine.getCurrentPlayer().clone());
+			observer.update(this, new CardUpdate(engine.getCurrentCard()));
 		}
-		report = report.concat("Tiles left: " + deck.size());
-		return report;
 	}
 
 	/**
@@ -73,19 +173,7 @@ public class CarcassonneModel extends Observable {
 	 *             if this model can't take any other player
 	 */
 	public Player addPlayer() throws FullMatchException {
-		Player newPlayer;
-		if (turns.size() < PlayerColor.values().length) {
-			newPlayer = new Player(PlayerColor.values()[turns.size()]);
-		} else {
-			throw new FullMatchException();
-		}
-		if (!turns.offer(newPlayer)) {
-			throw new FullMatchException();
-		}
-		for (int j = 0; j < MARKER_PER_PLAYER; j++) {
-			this.markers.add(new Marker(newPlayer));
-		}
-		return newPlayer;
+		return engine.addPlayer();
 	}
 
 	/**
@@ -94,95 +182,49 @@ public class CarcassonneModel extends Observable {
 	 * end of the same list.
 	 */
 	public Player nextTurn() {
-		if (cardIsPlaced) {
-			assignLastTurnScores();
-			// reset the touched zones
-			lastTouchedZones = new ArrayList<Zone>();
-			// pick the next card
-			try {
-				nextCard();
-				// if the deck was not empty:
-				// change the current player
-				this.currentPlayer = this.turns.remove();
-				this.turns.add(currentPlayer);
+		if (engine.isCardPlaced()) {
+			boolean started = engine.nextTurn();
+			if (journal != null) {
+				journal.recordPass();
+				if (started) {
+					journal.recordDraw(engine.getCurrentCard());
+					if (journal.isSnapshotDue()) {
+						journal.recordSnapshot(engine);
+					}
+				} else {
+					journal.recordEnd();
+				}
+			}
+			for (Map.Entry<Coordinate, Card> entry : engine.getStrippedTiles()
+					.entrySet()) {
+				setChanged();
+				notifyObservers(new BoardUpdate(entry.getValue(), entry
+						.getKey()));
+			}
+			if (started) {
 				// send scores and markers.
 				setChanged();
 				notifyObservers(getMatchState());
 				// notify the new turn by sending the next player.
 				setChanged();
-				notifyObservers(this.currentPlayer.clone());
+				notifyObservers(engine.getCurrentPlayer().clone());
 				// send the currentCard.
 				setChanged();
-				notifyObservers(currentCard.clone());
-			} catch (IndexOutOfBoundsException e) {
+				notifyObservers(new CardUpdate(engine.getCurrentCard()));
+			} else {
 				// The game is over
-				assignScoresUncompletedZones();
 				setChanged();
 				notifyObservers("Game Over!");
 				// send scores and markers.
 				setChanged();
 				notifyObservers(getMatchState());
-				return this.currentPlayer;
 			}
-			this.cardIsPlaced = false;
 		} else {
 			setChanged();
-			notifyObservers(currentPlayer + ": you must place the tile first.");
-		}
-		return this.currentPlayer;
-	}
-
-	private void assignLastTurnScores() {
-		for (Zone zone : lastTouchedZones) {
-			if (zone.isCompleted() && zone.isRuled()) {
-				for (Player ruler : zone.getRulers()) {
-					ruler.addScore(zone.getScore());
-				}
-				Map<Coordinate, Card> changedTiles = board.removeMarkers(zone,
-						markers);
-				for (Map.Entry<Coordinate, Card> entry : changedTiles
-						.entrySet()) {
-					BoardUpdate update = new BoardUpdate(entry.getValue()
-							.clone(), entry.getKey());
-					setChanged();
-					notifyObservers(update);
-				}
-			}
-		}
-	}
-
-	private void assignScoresUncompletedZones() {
-		for (Zone zone : board.getUncompletedZones()) {
-			if (zone.isRuled()) {
-				for (Player ruler : zone.getRulers()) {
-					if (zone.getPlace() == Place.STREET) {
-						ruler.addScore(zone.getScore());
-					} else {
-						ruler.addScore(zone.getScore() / 2);
-					}
-				}
-			}
-		}
-	}
-
-	/**
-	 * Get a marker of the specified {@link Player} from the list. This method
-	 * allows to get a marker that belongs to the current player from the list
-	 * of markers.
-	 * 
-	 * @param playerOwner
-	 *            Player owner of the marker
-	 * @return Marker
-	 * @throws NoMoreMarkersException
-	 */
-	private Marker getMarker(Player playerOwner) throws NoMoreMarkersException {
-		Marker toReturn = new Marker(playerOwner);
-		if (markers.remove(toReturn)) {
-			// If the requested marker exists
-			return toReturn;
-		} else {
-			throw new NoMoreMarkersException();
+			notifyObservers(engine.getCurrentPlayer()
+					+ ": you must place the tile first.");
 		}
+		return engine.getCurrentPlayer();
 	}
 
 	/**
@@ -191,11 +233,12 @@ public class CarcassonneModel extends Observable {
 	 */
 	public void rotateCard() {
 		setChanged();
-		if (!cardIsPlaced) {
-			this.currentCard.rotate();
-			notifyObservers(this.currentCard.clone());
+		if (!engine.isCardPlaced()) {
+			engine.rotateCard();
+			notifyObservers(new CardUpdate(engine.getCurrentCard()));
 		} else {
-			notifyObservers(currentPlayer + ": you already placed your tile.");
+			notifyObservers(engine.getCurrentPlayer()
+					+ ": you already placed your tile.");
 		}
 	}
 
@@ -208,20 +251,22 @@ public class CarcassonneModel extends Observable {
 	 */
 	public void placeCurrentCardOnBoard(Coordinate coordinate) {
 		setChanged();
-		if (!this.cardIsPlaced) {
+		if (!engine.isCardPlaced()) {
 			try {
-				lastTouchedZones = this.board.place(coordinate,
-						this.currentCard);
-				this.cardIsPlaced = true;
-				BoardUpdate update = new BoardUpdate(currentCard.clone(),
-						coordinate);
-				this.lastPlacedCardCoordinate = coordinate;
-				notifyObservers(update);
+				engine.placeCurrentCard(coordinate);
+				if (journal != null) {
+					journal.recordPlacement(coordinate, engine.getCurrentCard()
+							.getRotation());
+				}
+				notifyObservers(new BoardUpdate(engine.getCurrentCard(),
+						coordinate));
 			} catch (InvalidPutException e) {
-				notifyObservers(currentPlayer + ": Not valid coordinate.");
+				notifyObservers(engine.getCurrentPlayer()
+						+ ": Not valid coordinate.");
 			}
 		} else {
-			notifyObservers(currentPlayer + ": you cant re-place the card.");
+			notifyObservers(engine.getCurrentPlayer()
+					+ ": you cant re-place the card.");
 		}
 	}
 
@@ -235,49 +280,31 @@ public class CarcassonneModel extends Observable {
 	 */
 	public boolean placeMarkerOnLastPlacedCard(Direction direction) {
 		setChanged();
-		if (cardIsPlaced) {
+		if (engine.isCardPlaced() && engine.getCurrentPlayer() != null) {
 			try {
-				Marker toPlace = this.getMarker(currentPlayer);
-				lastTouchedZones = this.board.place(toPlace,
-						this.lastPlacedCardCoordinate, direction);
-				currentCard.addMarker(direction, toPlace);
-				BoardUpdate update = new BoardUpdate(currentCard,
-						lastPlacedCardCoordinate);
-				notifyObservers(update);
+				engine.placeMarker(direction);
+				if (journal != null) {
+					journal.recordMarker(direction);
+				}
+				notifyObservers(new BoardUpdate(engine.getCurrentCard(),
+						engine.getLastPlacedCardCoordinate()));
 				return true;
 			} catch (InvalidMarkerPositionException e) {
-				markers.add(new Marker(currentPlayer));
-				notifyObservers(currentPlayer + ": Invalid marker postion!");
-				return false;
-			} catch (InvalidPutException e) {
-				// e.printStackTrace();
-				// Very bad stuff happened
+				notifyObservers(engine.getCurrentPlayer()
+						+ ": Invalid marker postion!");
 				return false;
 			} catch (NoMoreMarkersException e) {
-				notifyObservers(currentPlayer
+				notifyObservers(engine.getCurrentPlayer()
 						+ ": it looks like you have no more markers to place.");
 				return false;
 			}
 		} else {
-			notifyObservers(currentPlayer
+			notifyObservers(engine.getCurrentPlayer()
 					+ ": you have to place the card first.");
 			return false;
 		}
 	}
 
-	/**
-	 * Get the next placeable card. This method allows to pick the first
-	 * placeable card from the deck and set it as the current card.
-	 */
-	private void nextCard() {
-		do {
-			currentCard = deck.pick();
-			if (!board.canAccept(currentCard)) {
-				deck.add(currentCard);
-			}
-		} while (!board.canAccept(currentCard));
-	}
-
 	/**
 	 * Places the first card after removing it from the deck and then returns
 	 * it.
@@ -285,14 +312,12 @@ public class CarcassonneModel extends Observable {
 	 * @return the first {@link Card} that is automatically placed on the board
 	 */
 	public Card start() {
-		Card firstCard = deck.pickStarter();
-		try {
-			board.place(new Coordinate(0, 0), firstCard);
-		} catch (InvalidPutException e) {
-			// e.printStackTrace();
-			// Very bad stuff happened
+		Card first = engine.start();
+		if (journal != null) {
+			journal.recordStart(engine.getDeck().getSeed(), engine
+					.getPlayers().size());
 		}
-		return firstCard;
+		return first;
 	}
 
 }
\ No newline at end of file
@@ -1,33 +1,41 @@
 package model;
 
-import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
 /**
  * The Card class represents a single card in the game. The state of the class
- * consists in the four cardinal points which memorize what is found for each
- * side of the card, whose value is a Place, the connections between each side,
- * whose value is a boolean (1 for connection, 0 for no connection), the
- * reference of the possible marker and its position, whose value is a
- * Direction, and the string representation.
+ * consists in the {@link TileType}, shared by all the cards showing the same
+ * tile, which memorizes what is found for each side of the card and the
+ * connections between each side, the current rotation, the reference of the
+ * possible marker and its position, whose value is a Direction.
  * 
  * The class allows to rotate the card of 90 degrees clockwise, to add a marker,
  * to get the marker added and its position, to delete the marker, to get the
  * place of one side, to get the connected sides whit a given side, to clone the
  * card and to get the string representation.
  * 
+ * A card is serialized in three bytes: the definition of its {@link TileType}
+ * and a byte with the rotation, the marker position and the color of the
+ * owner. The owner of a marker read back is only a {@link Player} of that
+ * color: the scores are told by the model, not by the cards.
+ * 
  * @author Edoardo Galimberti
  * 
  */
 
-public class Card implements Cloneable, Serializable {
+public class Card implements Cloneable, Externalizable {
 
 	private static final long serialVersionUID = -1252734291919627633L;
-	private String stringID;
-	private Place n, s, w, e;
+	private static final int ROTATION_BITS = 2;
+	private static final int POSITION_BITS = 3;
+	private static final int OWNER_SHIFT = ROTATION_BITS + POSITION_BITS;
+	private TileType type;
+	private int rotation;
 	private Direction markerPosition;
-	private boolean ns, ne, nw, we, se, sw;
 	private Marker markerOn;
 
 	/**
@@ -58,21 +66,7 @@ public class Card implements Cloneable, Serializable {
 
 	public Card(Place n, Place s, Place w, Place e, boolean ns, boolean ne,
 			boolean nw, boolean we, boolean se, boolean sw) {
-		this.n = n;
-		this.s = s;
-		this.w = w;
-		this.e = e;
-
-		this.ns = ns;
-		this.ne = ne;
-		this.nw = nw;
-		this.we = we;
-		this.se = se;
-		this.sw = sw;
-
-		this.markerPosition = null;
-		this.markerOn = null;
-		this.stringID = null;
+		this(TileType.valueOf(n, s, w, e, ns, ne, nw, we, se, sw));
 	}
 
 	/**
@@ -82,21 +76,59 @@ public class Card implements Cloneable, Serializable {
 	 *            String in the specific format
 	 */
 	public Card(String string) {
-		// String Example with positions:
-		// 000000000011111111112222222222333333333344444
-		// 012345678901234567890123456789012345678901234
-		// N=N S=S W=S E=C NS=0 NE=1 NW=0 WE=0 SE=0 SW=0
-		this.stringID = string;
-		this.n = Place.read(string.charAt(2));
-		this.s = Place.read(string.charAt(6));
-		this.w = Place.read(string.charAt(10));
-		this.e = Place.read(string.charAt(14));
-		this.ns = (string.charAt(19) == '1');
-		this.ne = (string.charAt(24) == '1');
-		this.nw = (string.charAt(29) == '1');
-		this.we = (string.charAt(34) == '1');
-		this.se = (string.charAt(39) == '1');
-		this.sw = (string.charAt(44) == '1');
+		this(TileType.valueOf(string));
+	}
+
+	/**
+	 * Construct a card showing the given {@link TileType}, not rotated and
+	 * without marker.
+	 * 
+	 * @param type
+	 *            TileType of the card
+	 */
+	public Card(TileType type) {
+		this(type, 0);
+	}
+
+	/**
+	 * Construct a card showing the given {@link TileType} rotated the given
+	 * number of times, without marker.
+	 * 
+	 * @param type
+	 *            TileType of the card
+	 * @param rotation
+	 *            Number of clockwise rotations, from 0 to 3
+	 */
+	public Card(TileType type, int rotation) {
+		this.type = type;
+		this.rotation = rotation;
+		this.markerPosition = null;
+		this.markerOn = null;
+	}
+
+	/**
+	 * Construct an empty card, to be filled by readExternal(). It's only used
+	 * by deserialization.
+	 */
+	public Card() {
+	}
+
+	/**
+	 * Get the {@link TileType} shown by the card.
+	 * 
+	 * @return TileType
+	 */
+	public TileType getType() {
+		return type;
+	}
+
+	/**
+	 * Get the number of clockwise rotations applied to the card.
+	 * 
+	 * @return rotation, from 0 to 3
+	 */
+	public int getRotation() {
+		return rotation;
 	}
 
 	/**
@@ -105,7 +137,7 @@ public class Card implements Cloneable, Serializable {
 	 * @return stringID
 	 */
 	public String getStringID() {
-		return stringID;
+		return type.getStringID();
 	}
 
 	/**
@@ -113,24 +145,7 @@ public class Card implements Cloneable, Serializable {
 	 * 90° clockwise and their related connections.
 	 */
 	public void rotate() {
-		Place tempChar;
-		boolean tempBoolean;
-
-		tempChar = n;
-		n = w;
-		w = s;
-		s = e;
-		e = tempChar;
-
-		tempBoolean = ns;
-		ns = we;
-		we = tempBoolean;
-
-		tempBoolean = ne;
-		ne = nw;
-		nw = sw;
-		sw = se;
-		se = tempBoolean;
+		rotation = (rotation + 1) & (TileType.ROTATIONS - 1);
 	}
 
 	/**
@@ -192,116 +207,65 @@ public class Card implements Cloneable, Serializable {
 	 * @return Place
 	 */
 	public Place getPlace(Direction direction) {
-		if (direction == Direction.NORTH) {
-			return n;
-		}
-		if (direction == Direction.SOUTH) {
-			return s;
-		}
-		if (direction == Direction.WEST) {
-			return w;
-		}
-		if (direction == Direction.EAST) {
-			return e;
-		}
-		return null;
+		return type.getPlace(rotation, direction);
 	}
 
 	/**
 	 * Get the connection between a given direction and the others. This method
-	 * allows to get the possible connections between a direction given and all
-	 * the others.
+	 * returns the mask of the directions connected to the given one, where
+	 * each direction is represented by {@link Direction#mask()}. A side whose
+	 * place is NOTHING is connected to nothing.
 	 * 
 	 * @param in
 	 *            Given direction
-	 * @return Connected directions
-	 * @throws NoCrossInCardException
+	 * @return Mask of the connected directions
 	 */
-	public List<Direction> cross(Direction in) {
-		// ArrayList initialization
-		ArrayList<Direction> outs = new ArrayList<Direction>();
-		// case NORTH
-		if (in == Direction.NORTH) {
-			// case N
-			if (this.n == Place.NOTHING) {
-				return outs;
-			}
-			// case C or S
-			else {
-				if (this.ns) {
-					outs.add(Direction.SOUTH);
-				}
-				if (this.nw) {
-					outs.add(Direction.WEST);
-				}
-				if (this.ne) {
-					outs.add(Direction.EAST);
-				}
-			}
-			return outs;
+	public int cross(Direction in) {
+		return type.cross(rotation, in);
+	}
+
+	/**
+	 * Writes the card as its {@link TileType} definition and a byte with the
+	 * rotation, the marker position and the color of its owner.
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeShort(type.getDefinition());
+		int details = rotation;
+		if (markerOn != null) {
+			details |= (markerPosition.ordinal() + 1) << ROTATION_BITS
+					| markerOn.getOwner().getColor().ordinal() << OWNER_SHIFT;
 		}
-		// case SOUTH
-		if (in == Direction.SOUTH) {
-			// case N
-			if (this.s == Place.NOTHING) {
-				return outs;
-			}
-			// case C or S
-			else {
-				if (this.ns) {
-					outs.add(Direction.NORTH);
-				}
-				if (this.sw) {
-					outs.add(Direction.WEST);
-				}
-				if (this.se) {
-					outs.add(Direction.EAST);
-				}
-			}
-			return outs;
+		out.writeByte(details);
+	}
+
+	/**
+	 * Reads a card written by writeExternal().
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		int definition = in.readUnsignedShort();
+		String wrong = TileType.check(definition);
+		if (wrong != null) {
+			throw new InvalidObjectException(wrong);
 		}
-		// case WEST
-		if (in == Direction.WEST) {
-			// case N
-			if (this.w == Place.NOTHING) {
-				return outs;
-			}
-			// case C or S
-			else {
-				if (this.nw) {
-					outs.add(Direction.NORTH);
-				}
-				if (this.sw) {
-					outs.add(Direction.SOUTH);
-				}
-				if (this.we) {
-					outs.add(Direction.EAST);
-				}
-			}
-			return outs;
+		type = TileType.valueOf(definition);
+		int details = in.readUnsignedByte();
+		rotation = details & (TileType.ROTATIONS - 1);
+		int position = (details >>> ROTATION_BITS) & ((1 << POSITION_BITS) - 1);
+		if (position == 0) {
+			markerPosition = null;
+			markerOn = null;
+			return;
 		}
-		// case EAST
-		if (in == Direction.EAST) {
-			// case N
-			if (this.e == Place.NOTHING) {
-				return outs;
-			}
-			// case C or S
-			else {
-				if (this.ne) {
-					outs.add(Direction.NORTH);
-				}
-				if (this.we) {
-					outs.add(Direction.WEST);
-				}
-				if (this.se) {
-					outs.add(Direction.SOUTH);
-				}
-			}
-			return outs;
+		Direction[] directions = Direction.values();
+		PlayerColor[] colors = PlayerColor.values();
+		int color = details >>> OWNER_SHIFT;
+		if (position > directions.length || color >= colors.length) {
+			throw new InvalidObjectException("Wrong marker: " + details);
 		}
-		// case error
-		return outs;
+		markerPosition = directions[position - 1];
+		markerOn = new Marker(new Player(colors[color]));
 	}
 
 	/**
@@ -325,16 +289,7 @@ public class Card implements Cloneable, Serializable {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((e == null) ? 0 : e.hashCode());
-		result = prime * result + ((n == null) ? 0 : n.hashCode());
-		result = prime * result + (ne ? 1231 : 1237);
-		result = prime * result + (ns ? 1231 : 1237);
-		result = prime * result + (nw ? 1231 : 1237);
-		result = prime * result + ((s == null) ? 0 : s.hashCode());
-		result = prime * result + (se ? 1231 : 1237);
-		result = prime * result + (sw ? 1231 : 1237);
-		result = prime * result + ((w == null) ? 0 : w.hashCode());
-		result = prime * result + (we ? 1231 : 1237);
+		result = prime * result + type.getCode(rotation);
 		result = prime * result
 				+ ((markerOn == null) ? 0 : markerOn.hashCode());
 		result = prime * result
@@ -359,34 +314,7 @@ public class Card implements Cloneable, Serializable {
 			return false;
 		}
 		Card other = (Card) obj;
-		if (e != other.e) {
-			return false;
-		}
-		if (n != other.n) {
-			return false;
-		}
-		if (ne != other.ne) {
-			return false;
-		}
-		if (ns != other.ns) {
-			return false;
-		}
-		if (nw != other.nw) {
-			return false;
-		}
-		if (s != other.s) {
-			return false;
-		}
-		if (se != other.se) {
-			return false;
-		}
-		if (sw != other.sw) {
-			return false;
-		}
-		if (w != other.w) {
-			return false;
-		}
-		if (we != other.we) {
+		if (type.getCode(rotation) != other.type.getCode(other.rotation)) {
 			return false;
 		}
 		if (markerOn == null) {
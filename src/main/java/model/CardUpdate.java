@@ -0,0 +1,109 @@
+package model;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * This class tells the views which {@link Card} is shown, for example the
+ * current card after it has been drawn or rotated. The {@link Card} is not
+ * referenced: the class only keeps its {@link TileType}, rotation and marker
+ * as they were upon construction, so it can't change once it has been sent
+ * and the sender is free to keep on modifying the {@link Card}.
+ * 
+ * An update is serialized as its {@link Card} (see
+ * {@link Card#writeExternal(ObjectOutput)}).
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public class CardUpdate implements Externalizable {
+
+	private static final long serialVersionUID = -2961847095730163574L;
+	private TileType type;
+	private int rotation;
+	private Direction markerPosition;
+	private Marker marker;
+
+	/**
+	 * Construct an empty update, to be filled by readExternal(). It's only
+	 * used by deserialization.
+	 */
+	public CardUpdate() {
+	}
+
+	/**
+	 * Construct an update showing the given {@link Card} as it is now.
+	 * 
+	 * @param card
+	 *            - the {@link Card} to register
+	 */
+	public CardUpdate(Card card) {
+		setCard(card);
+	}
+
+	private void setCard(Card card) {
+		this.type = card.getType();
+		this.rotation = card.getRotation();
+		Direction position = null;
+		Marker on = null;
+		try {
+			on = card.getMarker();
+			position = card.getMarkerPosition();
+		} catch (NoMarkerOnCardException e) {
+			// the card has no marker.
+		}
+		this.marker = on;
+		this.markerPosition = position;
+	}
+
+	/**
+	 * Returns the {@link TileType} of the registered {@link Card}.
+	 * 
+	 * @return the {@link TileType}
+	 */
+	public TileType getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the rotation of the registered {@link Card}.
+	 * 
+	 * @return the number of clockwise rotations, from 0 to 3
+	 */
+	public int getRotation() {
+		return rotation;
+	}
+
+	/**
+	 * Returns a new {@link Card} equal to the registered one
+	 * 
+	 * @return the registered {@link Card}
+	 */
+	public Card getUpdatedCard() {
+		Card card = new Card(type, rotation);
+		if (marker != null) {
+			card.addMarker(markerPosition, marker);
+		}
+		return card;
+	}
+
+	/**
+	 * Writes the registered {@link Card}.
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		getUpdatedCard().writeExternal(out);
+	}
+
+	/**
+	 * Reads an update written by writeExternal().
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		Card card = new Card();
+		card.readExternal(in);
+		setCard(card);
+	}
+}
@@ -73,6 +73,89 @@ public final class Coordinate implements Serializable {
 		return contiguous;
 	}
 
+	/**
+	 * Packs this {@link Coordinate} in a long: x in the high 32 bits and y in
+	 * the low 32 bits.
+	 * 
+	 * @return the packed {@link Coordinate}
+	 */
+	public long pack() {
+		return pack(x, y);
+	}
+
+	/**
+	 * Packs the given values in a long: x in the high 32 bits and y in the low
+	 * 32 bits.
+	 * 
+	 * @param x
+	 * @param y
+	 * @return the packed values
+	 */
+	public static long pack(int x, int y) {
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Same as go(), but working on a {@link Coordinate} packed by pack(), so
+	 * that nothing is allocated.
+	 * 
+	 * @param packed
+	 *            - the packed {@link Coordinate} to start from
+	 * @param direction
+	 *            - {@link Direction} to go towards
+	 * @return the next packed {@link Coordinate} when going in the given
+	 *         {@link Direction}
+	 */
+	public static long go(long packed, Direction direction) {
+		int x = unpackX(packed);
+		int y = unpackY(packed);
+		switch (direction) {
+		case NORTH:
+			return pack(x, y + 1);
+		case SOUTH:
+			return pack(x, y - 1);
+		case WEST:
+			return pack(x - 1, y);
+		case EAST:
+			return pack(x + 1, y);
+		default:
+			return packed;
+		}
+	}
+
+	/**
+	 * Returns the {@link Coordinate} packed in the given long by pack().
+	 * 
+	 * @param packed
+	 *            - the packed {@link Coordinate}
+	 * @return the unpacked {@link Coordinate}
+	 */
+	public static Coordinate unpack(long packed) {
+		return new Coordinate(unpackX(packed), unpackY(packed));
+	}
+
+	/**
+	 * Returns the x of a {@link Coordinate} packed by pack().
+	 * 
+	 * @param packed
+	 *            - the packed {@link Coordinate}
+	 * @return the x value
+	 */
+	public static int unpackX(long packed) {
+		return (int) (packed >> 32);
+	}
+
+	/**
+	 * Returns the y of a {@link Coordinate} packed by pack().
+	 * 
+	 * @param packed
+	 *            - the packed {@link Coordinate}
+	 * @return the y value
+	 */
+	public static int unpackY(long packed) {
+		return (int) packed;
+	}
+
 	public int getX() {
 		return x;
 	}
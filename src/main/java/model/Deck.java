@@ -1,55 +1,106 @@
 package model;
 
-import java.io.*;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 /**
- * The Deck class represents the deck of cards used during the game. The state
- * of this class consists in an ArrayList of cards.
+ * The Deck class represents the deck of cards used during the game. The cards
+ * of a {@link DeckTemplate} are drawn in random order by a lazy Fisher-Yates
+ * shuffle: each pick() takes a random card among those not drawn yet and moves
+ * the first of them in its place, so nothing is shuffled in advance and a deck
+ * of any size is set up at once. Cards put back are kept in an array used as a
+ * circular buffer and picked, in the order they were put back, after the cards
+ * of the template.
+ * 
+ * The order of the cards depends only on the seed, that is recorded, so that
+ * the same deck can be built again or reset() to give the same cards in the
+ * same order. The moves of the shuffle are written on an overlay of the
+ * template whose entries are stamped with the number of resets, hence reset()
+ * doesn't depend on the size of the deck and allocates nothing.
  * 
  * The class allows to pick the specific first card of the game, to get the size
  * of the deck, to pick a card and to put a card in the deck.
  * 
+ * The number of cards left of each {@link TileType} is kept up to date by
+ * pick() and add(), so that the composition of the deck and the chance that
+ * the next card fits an opening are known in time proportional to the number
+ * of different tiles, whatever the size of the deck.
+ * 
  * @author Edoardo Galimberti
  * 
  */
 
 public class Deck {
 
-	private List<Card> cards;
+	private static final TileType STARTER = TileType
+			.valueOf("N=N S=C W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0");
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	private final DeckTemplate template;
+	private final long seed;
+	private long state;
+	// template indexes moved by the shuffle, valid where stamped by the epoch
+	private final int[] overlay;
+	private final int[] stamps;
+	private int epoch = 1;
+	private int drawn = 0;
+	// the cards put back, picked after the template is over
+	private Card[] cards = new Card[8];
+	private int head = 0;
+	private int queued = 0;
+	// cards left by TileType id, and the different types ever counted
+	private int[] remaining = new int[0];
+	private TileType[] types = new TileType[0];
+	private int typesCount = 0;
 
 	/**
-	 * Construct the deck reading the file "carcassone.txt" and constructing
-	 * each card.
-	 * 
-	 * @throws IOException
+	 * Construct the deck from the standard {@link DeckTemplate}, read from
+	 * "carcassonne.txt" only the first time.
 	 */
 	public Deck() {
-		// variables and input file initialization
-		this.cards = new LinkedList<Card>();
-		BufferedReader input = null;
-		try {
-			input = new BufferedReader(new FileReader(
-					"src/main/resources/carcassonne.txt"));
-			String newLine;
-			newLine = input.readLine();
-			while (newLine != null) {
-				this.cards.add(new Card(newLine));
-				newLine = input.readLine();
-			}
-			input.close();
-		} catch (FileNotFoundException e) {
-			System.err.println("File can't be red.");
-		} catch (IOException e) {
-			System.err.println("File error.");
-		} finally {
-			try {
-				input.close();
-			} catch (IOException e) {
-				System.err.println("File can't be closed.");
-			}
-		}
-		this.shuffle();
+		this(DeckTemplate.getStandard());
+	}
+
+	/**
+	 * Construct a deck drawing the tiles of the given {@link DeckTemplate} in
+	 * a random order. Cards showing the same tile share the same
+	 * {@link TileType}. The seed is chosen at random and can be read with
+	 * getSeed().
+	 * 
+	 * @param template
+	 *            - the {@link DeckTemplate} to draw from
+	 */
+	public Deck(DeckTemplate template) {
+		this(template, new Random().nextLong());
+	}
+
+	/**
+	 * Construct a deck like {@link #Deck(DeckTemplate)} whose order is given
+	 * by the given seed, so that the same seed always gives the same order.
+	 * 
+	 * @param template
+	 *            - the {@link DeckTemplate} to draw from
+	 * @param seed
+	 *            - the seed of the shuffle
+	 */
+	public Deck(DeckTemplate template, long seed) {
+		this.template = template;
+		this.seed = seed;
+		this.overlay = new int[template.size()];
+		this.stamps = new int[template.size()];
+		reset();
+	}
+
+	/**
+	 * Returns the {@link DeckTemplate} this deck draws from.
+	 * 
+	 * @return the {@link DeckTemplate} of the deck
+	 */
+	public DeckTemplate getTemplate() {
+		return template;
 	}
 
 	/**
@@ -59,28 +110,149 @@ public class Deck {
 	 * @return First card of the game
 	 */
 	public Card pickStarter() {
-		return new Card("N=N S=C W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0");
+		return new Card(STARTER);
 	}
 
 	/**
-	 * Shuffle the deck.
+	 * Brings the deck back to the state it had when it was built: every card
+	 * of the template is in again, those put back are dropped, and the cards
+	 * will be picked in the same order as the first time.
 	 */
-	private void shuffle() {
-		Collections.shuffle(this.cards);
+	public void reset() {
+		epoch++;
+		if (epoch == 0) {
+			// the stamps have wrapped around: none of them is valid anymore
+			Arrays.fill(stamps, 0);
+			epoch = 1;
+		}
+		drawn = 0;
+		state = seed;
+		for (int i = 0; i < queued; i++) {
+			cards[(head + i) % cards.length] = null;
+		}
+		head = 0;
+		queued = 0;
+		int[] counts = template.getCounts();
+		if (remaining.length < counts.length) {
+			remaining = new int[counts.length];
+		} else {
+			Arrays.fill(remaining, 0);
+		}
+		System.arraycopy(counts, 0, remaining, 0, counts.length);
+		TileType[] templateTypes = template.getTypes();
+		if (types.length < templateTypes.length) {
+			types = new TileType[templateTypes.length];
+		}
+		System.arraycopy(templateTypes, 0, types, 0, templateTypes.length);
+		typesCount = templateTypes.length;
 	}
 
 	/**
-	 * Pick a card from the deck. Pick the first card of the deck and delete
-	 * that card from the deck.
+	 * Returns the seed the order of this deck depends on.
+	 * 
+	 * @return the seed of the shuffle
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns a random int from 0 (included) to the given bound (excluded),
+	 * advancing the SplitMix64 generator.
+	 */
+	private int nextInt(int bound) {
+		state += GOLDEN_GAMMA;
+		long z = state;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		return (int) (((z >>> 32) * bound) >>> 32);
+	}
+
+	/**
+	 * Returns the index in the template of the card in the given place of the
+	 * shuffled template.
+	 */
+	private int at(int index) {
+		return stamps[index] == epoch ? overlay[index] : index;
+	}
+
+	/**
+	 * Pick a card from the deck: a random card of the template not drawn yet
+	 * or, once they are over, the first card put back.
 	 * 
 	 * @return Card picked
+	 * @throws IndexOutOfBoundsException
+	 *             - if the deck is empty
 	 */
 	public Card pick() {
-		Card temp = this.cards.get(0);
-		this.cards.remove(0);
+		Card temp;
+		if (drawn < overlay.length) {
+			temp = new Card(template.get(step()));
+		} else if (queued > 0) {
+			temp = cards[head];
+			cards[head] = null;
+			head = (head + 1) % cards.length;
+			queued--;
+		} else {
+			throw new IndexOutOfBoundsException("The deck is empty.");
+		}
+		count(temp.getType(), -1);
 		return temp;
 	}
 
+	/**
+	 * Draws the next card of the template by a step of the shuffle and
+	 * returns its index in the template.
+	 */
+	private int step() {
+		int swap = drawn + nextInt(overlay.length - drawn);
+		int picked = at(swap);
+		// the first card not drawn yet takes the place of the picked one
+		overlay[swap] = at(drawn);
+		stamps[swap] = epoch;
+		drawn++;
+		return picked;
+	}
+
+	/**
+	 * Returns the number of cards of the template drawn so far.
+	 */
+	int getDrawn() {
+		return drawn;
+	}
+
+	/**
+	 * Returns the cards put back, in the order they will be picked.
+	 */
+	List<Card> getQueued() {
+		List<Card> result = new ArrayList<Card>(queued);
+		for (int i = 0; i < queued; i++) {
+			result.add(cards[(head + i) % cards.length]);
+		}
+		return result;
+	}
+
+	/**
+	 * Brings the deck to the state it had after the given number of cards of
+	 * the template were drawn and the given cards were put back, without
+	 * creating the cards drawn.
+	 * 
+	 * @param drawnCards
+	 *            - the number of cards of the template drawn
+	 * @param putBack
+	 *            - the cards put back, in the order they will be picked
+	 */
+	void restore(int drawnCards, List<Card> putBack) {
+		reset();
+		while (drawn < drawnCards) {
+			count(template.get(step()), -1);
+		}
+		for (Card card : putBack) {
+			add(card);
+		}
+	}
+
 	/**
 	 * Add a card to the deck. Add a card to the deck at the last place.
 	 * 
@@ -88,7 +260,150 @@ public class Deck {
 	 *            Card added to the deck
 	 */
 	public void add(Card discarded) {
-		this.cards.add(discarded);
+		if (queued == cards.length) {
+			Card[] grown = new Card[cards.length * 2];
+			for (int i = 0; i < queued; i++) {
+				grown[i] = cards[(head + i) % cards.length];
+			}
+			cards = grown;
+			head = 0;
+		}
+		cards[(head + queued) % cards.length] = discarded;
+		queued++;
+		count(discarded.getType(), 1);
+	}
+
+	/**
+	 * Adds the given amount to the cards left of the given {@link TileType}.
+	 */
+	private void count(TileType type, int amount) {
+		int id = type.getId();
+		if (id >= remaining.length) {
+			int[] grown = new int[Math.max(id + 1, remaining.length * 2)];
+			System.arraycopy(remaining, 0, grown, 0, remaining.length);
+			remaining = grown;
+		}
+		if (remaining[id] == 0 && amount > 0 && !isCounted(type)) {
+			if (typesCount == types.length) {
+				TileType[] grown = new TileType[Math.max(8, typesCount * 2)];
+				System.arraycopy(types, 0, grown, 0, typesCount);
+				types = grown;
+			}
+			types[typesCount++] = type;
+		}
+		remaining[id] += amount;
+	}
+
+	private boolean isCounted(TileType type) {
+		for (int i = 0; i < typesCount; i++) {
+			if (types[i] == type) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of cards of the given {@link TileType} left in this
+	 * deck.
+	 * 
+	 * @param type
+	 *            - the {@link TileType}
+	 * @return the number of cards of that type left
+	 */
+	public int getRemaining(TileType type) {
+		return type.getId() < remaining.length ? remaining[type.getId()] : 0;
+	}
+
+	/**
+	 * Returns the number of cards left of each {@link TileType} still in this
+	 * deck.
+	 * 
+	 * @return a new {@link Map} from each {@link TileType} left to its count
+	 */
+	public Map<TileType, Integer> getComposition() {
+		Map<TileType, Integer> composition = new LinkedHashMap<TileType, Integer>();
+		for (int i = 0; i < typesCount; i++) {
+			int left = remaining[types[i].getId()];
+			if (left > 0) {
+				composition.put(types[i], left);
+			}
+		}
+		return composition;
+	}
+
+	/**
+	 * Returns true if some card left is of a {@link TileType} having an
+	 * opening on the given {@link Board}, by looking at the counters of the
+	 * deck and of the board only.
+	 * 
+	 * @param board
+	 *            - the {@link Board} the cards should be placed on
+	 * @return false if no card left can be placed anywhere
+	 */
+	boolean hasPlaceable(Board board) {
+		for (int i = 0; i < typesCount; i++) {
+			if (remaining[types[i].getId()] > 0
+					&& board.getFittingOpenings(types[i]) > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of cards left that fit, with some rotation, an
+	 * opening having the given signature (see {@link Board#getSignature}).
+	 * 
+	 * @param signature
+	 *            - the signature of the opening
+	 * @return the number of cards left fitting the opening
+	 */
+	public int countFitting(int signature) {
+		int fitting = 0;
+		for (int i = 0; i < typesCount; i++) {
+			if (types[i].getRotations(signature) != 0) {
+				fitting += remaining[types[i].getId()];
+			}
+		}
+		return fitting;
+	}
+
+	/**
+	 * Returns the probability that the next card picked fits, with some
+	 * rotation, an opening having the given signature.
+	 * 
+	 * @param signature
+	 *            - the signature of the opening
+	 * @return the probability, from 0 to 1, or 0 if the deck is empty
+	 */
+	public double getFitProbability(int signature) {
+		int size = size();
+		return size == 0 ? 0 : (double) countFitting(signature) / size;
+	}
+
+	/**
+	 * Returns the cards left, in the order they would be picked, without
+	 * changing the deck.
+	 */
+	private List<Card> getRemainingCards() {
+		List<Card> result = new ArrayList<Card>(size());
+		int left = overlay.length - drawn;
+		int[] order = new int[left];
+		for (int i = 0; i < left; i++) {
+			order[i] = at(drawn + i);
+		}
+		long saved = state;
+		for (int i = 0; i < left; i++) {
+			int swap = i + nextInt(left - i);
+			result.add(new Card(template.get(order[swap])));
+			order[swap] = order[i];
+		}
+		state = saved;
+		for (int i = 0; i < queued; i++) {
+			result.add(cards[(head + i) % cards.length]);
+		}
+		return result;
 	}
 
 	/**
@@ -98,10 +413,7 @@ public class Deck {
 	 */
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + ((cards == null) ? 0 : cards.hashCode());
-		return result;
+		return getRemainingCards().hashCode();
 	}
 
 	/**
@@ -110,11 +422,12 @@ public class Deck {
 	 * @return the number of cards left in this deck
 	 */
 	public int size() {
-		return cards.size();
+		return overlay.length - drawn + queued;
 	}
 
 	/**
-	 * Indicates whether some other object is "equal to" this one.
+	 * Indicates whether some other object is "equal to" this one, that is
+	 * whether the same cards are left in the same order.
 	 * 
 	 * @return Equality
 	 */
@@ -130,13 +443,9 @@ public class Deck {
 			return false;
 		}
 		Deck other = (Deck) obj;
-		if (cards == null) {
-			if (other.cards != null) {
-				return false;
-			}
-		} else if (!cards.equals(other.cards)) {
+		if (size() != other.size()) {
 			return false;
 		}
-		return true;
+		return getRemainingCards().equals(other.getRemainingCards());
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,441 @@
+package model;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * The immutable DeckTemplate class holds the {@link TileType}s of a deck as
+ * read from its definition, one kind of tile for each line in the format
+ * "3 N=N S=S W=S E=C NS=0 NE=1 NW=0 WE=0 SE=0 SW=0": the number of tiles of
+ * that kind, that can be left out when it's 1, followed by the description of
+ * the tile (see {@link TileType#valueOf(String)}). Each kind is declared once
+ * and a deck has at most {@link #MAX_TILES} tiles. Empty lines and lines
+ * starting with '#' are skipped. The definition is read once and every
+ * {@link Deck} is then built by copying the template.
+ * 
+ * Every line is checked while reading, so that a wrong definition is reported
+ * with its line instead of giving tiles that can't exist. Once read, a
+ * definition can be saved in a binary form (the packed definition and the
+ * count of each kind of tile) that later loads map in memory instead of
+ * parsing the text again: see {@link #load(File, File)}. The binary form
+ * records the length and the modification time of the definition it was
+ * made from, and it's used only as long as they don't change.
+ * 
+ * @author Edoardo Galimberti
+ * 
+ */
+public final class DeckTemplate {
+
+	private static final String RESOURCE = "/carcassonne.txt";
+	private static final String FILE = "src/main/resources/carcassonne.txt";
+	// "CDK2": the binary form, then the number of kinds, the length and the
+	// modification time of the definition (-1 and 0 if unknown) and a pair
+	// of ints (definition, count) for each kind
+	private static final int MAGIC = 0x43444B32;
+	private static final int HEADER = 24;
+	/**
+	 * The greatest number of tiles of a template.
+	 */
+	public static final int MAX_TILES = 1 << 16;
+	private static DeckTemplate standard = null;
+	private final TileType[] tiles;
+	// the different types, in order of appearance, and the tiles by type id
+	private final TileType[] types;
+	private final int[] counts;
+
+	private DeckTemplate(TileType[] tiles) {
+		this.tiles = tiles;
+		List<TileType> different = new ArrayList<TileType>();
+		int maxId = -1;
+		for (TileType tile : tiles) {
+			maxId = Math.max(maxId, tile.getId());
+		}
+		this.counts = new int[maxId + 1];
+		for (TileType tile : tiles) {
+			if (counts[tile.getId()]++ == 0) {
+				different.add(tile);
+			}
+		}
+		this.types = different.toArray(new TileType[different.size()]);
+	}
+
+	/**
+	 * Construct the template having the given number of tiles of each of the
+	 * given {@link TileType}s, in that order.
+	 */
+	private DeckTemplate(List<TileType> kinds, List<Integer> amounts) {
+		this(expand(kinds, amounts));
+	}
+
+	private static TileType[] expand(List<TileType> kinds, List<Integer> amounts) {
+		// the readers check that the amounts add up to at most MAX_TILES
+		int size = 0;
+		for (int amount : amounts) {
+			size += amount;
+		}
+		TileType[] tiles = new TileType[size];
+		int next = 0;
+		for (int i = 0; i < kinds.size(); i++) {
+			for (int j = amounts.get(i); j > 0; j--) {
+				tiles[next++] = kinds.get(i);
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * Returns the template of the standard deck, read from "carcassonne.txt"
+	 * on the classpath the first time it's requested. If it's not on the
+	 * classpath the file is looked for in the sources folder.
+	 * 
+	 * @return the template of the standard deck
+	 */
+	public static synchronized DeckTemplate getStandard() {
+		if (standard == null) {
+			try {
+				File file = getStandardFile();
+				if (file != null) {
+					standard = load(file);
+				} else {
+					standard = read(DeckTemplate.class
+							.getResourceAsStream(RESOURCE));
+				}
+			} catch (FileNotFoundException e) {
+				System.err.println("File can't be red.");
+				standard = new DeckTemplate(new TileType[0]);
+			} catch (IOException e) {
+				System.err.println("File error.");
+				standard = new DeckTemplate(new TileType[0]);
+			}
+		}
+		return standard;
+	}
+
+	/**
+	 * Returns the file of the standard definition, or null if it's on the
+	 * classpath but not in a file (for example in a jar).
+	 */
+	private static File getStandardFile() throws FileNotFoundException {
+		URL resource = DeckTemplate.class.getResource(RESOURCE);
+		if (resource == null) {
+			File file = new File(FILE);
+			if (!file.isFile()) {
+				throw new FileNotFoundException(FILE);
+			}
+			return file;
+		}
+		if (!"file".equals(resource.getProtocol())) {
+			return null;
+		}
+		try {
+			return new File(resource.toURI());
+		} catch (URISyntaxException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Loads the template defined in the given file using its binary form
+	 * saved in the given cache file, if it was made from the definition as it
+	 * is now, having the same length and modification time. Otherwise the
+	 * definition is read and its binary form is saved in the cache file for
+	 * the next time; if the cache can't be written the template is returned
+	 * anyway.
+	 * 
+	 * @param definition
+	 *            - the file of the definition
+	 * @param cache
+	 *            - the file of the binary form
+	 * @return the template loaded
+	 * @throws IOException
+	 *             - if the definition can't be read or is not well formed
+	 */
+	public static DeckTemplate load(File definition, File cache)
+			throws IOException {
+		// taken before reading, so that a change while reading is noticed
+		long length = definition.length();
+		long modified = definition.lastModified();
+		if (cache.isFile()) {
+			try {
+				return readBinary(cache, length, modified);
+			} catch (IOException e) {
+				// the cache is broken or stale: it's written again.
+			}
+		}
+		DeckTemplate template = read(new FileInputStream(definition));
+		try {
+			template.writeBinary(cache, length, modified);
+		} catch (IOException e) {
+			System.err.println("Deck cache can't be written: " + e.getMessage());
+		}
+		return template;
+	}
+
+	/**
+	 * Loads the template defined in the given file like
+	 * {@link #load(File, File)}, keeping its binary form next to it, in a file
+	 * having the same name followed by ".bin".
+	 * 
+	 * @param definition
+	 *            - the file of the definition
+	 * @return the template loaded
+	 * @throws IOException
+	 *             - if the definition can't be read or is not well formed
+	 */
+	public static DeckTemplate load(File definition) throws IOException {
+		return load(definition, new File(definition.getPath() + ".bin"));
+	}
+
+	/**
+	 * Saves the binary form of this template in the given file, not tied to
+	 * any definition: {@link #load(File, File)} never uses it.
+	 * 
+	 * @param file
+	 *            - the file to write
+	 * @throws IOException
+	 *             - if the file can't be written
+	 */
+	public void writeBinary(File file) throws IOException {
+		writeBinary(file, -1, 0);
+	}
+
+	/**
+	 * Saves the binary form of this template in the given file, as made from
+	 * the given definition as it is now, so that {@link #load(File, File)}
+	 * uses it until the definition changes.
+	 * 
+	 * @param file
+	 *            - the file to write
+	 * @param definition
+	 *            - the file of the definition of this template
+	 * @throws IOException
+	 *             - if the file can't be written
+	 */
+	public void writeBinary(File file, File definition) throws IOException {
+		writeBinary(file, definition.length(), definition.lastModified());
+	}
+
+	/**
+	 * Saves the binary form in the given file. The file is written aside,
+	 * with a name no other writer uses, and then renamed, so that a broken
+	 * file is never left in its place.
+	 */
+	private void writeBinary(File file, long length, long modified)
+			throws IOException {
+		File temporary = File.createTempFile(file.getName(), ".tmp", file
+				.getAbsoluteFile().getParentFile());
+		try {
+			DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temporary)));
+			try {
+				output.writeInt(MAGIC);
+				output.writeInt(types.length);
+				output.writeLong(length);
+				output.writeLong(modified);
+				for (TileType type : types) {
+					output.writeInt(type.getDefinition());
+					output.writeInt(counts[type.getId()]);
+				}
+			} finally {
+				output.close();
+			}
+		} catch (IOException e) {
+			temporary.delete();
+			throw e;
+		}
+		if (!temporary.renameTo(file)) {
+			// on some systems an existing file is not replaced
+			file.delete();
+			if (!temporary.renameTo(file)) {
+				temporary.delete();
+				throw new IOException("Can't rename " + temporary);
+			}
+		}
+	}
+
+	/**
+	 * Reads a template from its binary form, mapping the file in memory,
+	 * whatever definition it was made from.
+	 * 
+	 * @param file
+	 *            - the file written by writeBinary()
+	 * @return the template read
+	 * @throws IOException
+	 *             - if the file can't be read or is not a binary form of a
+	 *             template
+	 */
+	public static DeckTemplate readBinary(File file) throws IOException {
+		return readBinary(file, -1, 0);
+	}
+
+	/**
+	 * Reads a template from its binary form, that has to be made from a
+	 * definition having the given length and modification time unless the
+	 * length is -1.
+	 */
+	private static DeckTemplate readBinary(File file, long sourceLength,
+			long sourceModified) throws IOException {
+		FileInputStream input = new FileInputStream(file);
+		try {
+			FileChannel channel = input.getChannel();
+			long length = channel.size();
+			if (length < HEADER || length % 8 != 0) {
+				throw new IOException("Not a deck: " + file);
+			}
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					length);
+			int kinds = buffer.getInt(4);
+			if (buffer.getInt(0) != MAGIC
+					|| kinds != (length - HEADER) / 8) {
+				throw new IOException("Not a deck: " + file);
+			}
+			if (sourceLength != -1
+					&& (buffer.getLong(8) != sourceLength || buffer
+							.getLong(16) != sourceModified)) {
+				throw new IOException("Stale deck: " + file);
+			}
+			List<TileType> read = new ArrayList<TileType>(kinds);
+			List<Integer> amounts = new ArrayList<Integer>(kinds);
+			Set<TileType> seen = new HashSet<TileType>();
+			long total = 0;
+			for (int i = 0; i < kinds; i++) {
+				int definition = buffer.getInt(HEADER + i * 8);
+				int amount = buffer.getInt(HEADER + i * 8 + 4);
+				total += amount;
+				if (amount <= 0 || total > MAX_TILES
+						|| TileType.check(definition) != null) {
+					throw new IOException("Not a deck: " + file);
+				}
+				TileType type = TileType.valueOf(definition);
+				if (!seen.add(type)) {
+					throw new IOException("Not a deck: " + file);
+				}
+				read.add(type);
+				amounts.add(amount);
+			}
+			return new DeckTemplate(read, amounts);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Reads a template from the given stream, one kind of tile for each line,
+	 * optionally preceded by its count. Empty lines and comments are skipped.
+	 * The stream is closed.
+	 * 
+	 * @param stream
+	 *            - the stream to read
+	 * @return the template read
+	 * @throws InvalidDeckException
+	 *             - if a line is not well formed, declares a kind of tile
+	 *             again or makes the deck too large
+	 * @throws IOException
+	 *             - if the stream can't be read
+	 */
+	public static DeckTemplate read(InputStream stream) throws IOException {
+		List<TileType> read = new ArrayList<TileType>();
+		List<Integer> amounts = new ArrayList<Integer>();
+		Map<TileType, Integer> declared = new HashMap<TileType, Integer>();
+		long total = 0;
+		BufferedReader input = new BufferedReader(new InputStreamReader(
+				stream, "UTF-8"));
+		try {
+			int number = 0;
+			String newLine = input.readLine();
+			while (newLine != null) {
+				number++;
+				String line = newLine.trim();
+				if (line.length() > 0 && line.charAt(0) != '#') {
+					int amount = 1;
+					if (Character.isDigit(line.charAt(0))) {
+						int blank = 0;
+						while (blank < line.length()
+								&& !Character.isWhitespace(line.charAt(blank))) {
+							blank++;
+						}
+						try {
+							amount = Integer.parseInt(line.substring(0, blank));
+						} catch (NumberFormatException e) {
+							throw new InvalidDeckException(number, "bad count");
+						}
+						if (amount <= 0) {
+							throw new InvalidDeckException(number,
+									"the count must be positive");
+						}
+						line = line.substring(blank);
+					}
+					int definition;
+					try {
+						definition = TileType.parseDefinition(line);
+					} catch (IllegalArgumentException e) {
+						throw new InvalidDeckException(number, e.getMessage());
+					}
+					String wrong = TileType.check(definition);
+					if (wrong != null) {
+						throw new InvalidDeckException(number, wrong);
+					}
+					TileType type = TileType.valueOf(definition);
+					Integer previous = declared.put(type, number);
+					if (previous != null) {
+						throw new InvalidDeckException(number,
+								"the tile is already declared on line "
+										+ previous);
+					}
+					total += amount;
+					if (total > MAX_TILES) {
+						throw new InvalidDeckException(number,
+								"the deck has more than " + MAX_TILES
+										+ " tiles");
+					}
+					read.add(type);
+					amounts.add(amount);
+				}
+				newLine = input.readLine();
+			}
+		} finally {
+			input.close();
+		}
+		return new DeckTemplate(read, amounts);
+	}
+
+	/**
+	 * Returns the number of tiles of the template.
+	 * 
+	 * @return the number of tiles of the template
+	 */
+	public int size() {
+		return tiles.length;
+	}
+
+	/**
+	 * Returns the {@link TileType} of the tile at the given index.
+	 * 
+	 * @param index
+	 *            - the index, from 0 to size()
+	 * @return the {@link TileType} of the tile
+	 */
+	public TileType get(int index) {
+		return tiles[index];
+	}
+
+	/**
+	 * Returns the different {@link TileType}s of the template, in order of
+	 * first appearance. The array is shared and must not be changed.
+	 */
+	TileType[] getTypes() {
+		return types;
+	}
+
+	/**
+	 * Returns the number of tiles of each {@link TileType}, by id. The array
+	 * is shared and must not be changed.
+	 */
+	int[] getCounts() {
+		return counts;
+	}
+}
@@ -13,6 +13,9 @@ import java.util.*;
  */
 public enum Direction {
 	NORTH, SOUTH, EAST, WEST;
+
+	private static final Direction[] BY_ORDINAL = values();
+
 	/**
 	 * Get the enum representing the opposite Direction of the current instance.
 	 * 
@@ -54,6 +57,28 @@ public enum Direction {
 		}
 	}
 
+	/**
+	 * Returns the bit representing this {@link Direction} in the direction
+	 * masks used by {@link Card#cross(Direction)}.
+	 * 
+	 * @return an int having only the bit of this {@link Direction} set
+	 */
+	public int mask() {
+		return 1 << ordinal();
+	}
+
+	/**
+	 * Returns the {@link Direction} having the given ordinal without copying
+	 * the values array as values() does.
+	 * 
+	 * @param ordinal
+	 *            - the ordinal of the {@link Direction}
+	 * @return the {@link Direction} having the given ordinal
+	 */
+	public static Direction fromOrdinal(int ordinal) {
+		return BY_ORDINAL[ordinal];
+	}
+
 	/**
 	 * This method checks whether the current {@link Direction} is NORTH or
 	 * SOUTH
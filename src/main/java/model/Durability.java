@@ -0,0 +1,26 @@
+package model;
+
+/**
+ * The Durability enumeration tells when the records of a {@link MatchJournal}
+ * have to be forced to the disk. Forcing is always done by the
+ * {@link JournalWriter}, away from the thread playing the match, so a stricter
+ * durability makes the acknowledgements slower, not the turns.
+ * 
+ * @author Edoardo Galimberti
+ * 
+ */
+public enum Durability {
+	/**
+	 * The records are written but never forced: the system decides when they
+	 * reach the disk.
+	 */
+	NONE,
+	/**
+	 * The records are forced at the end of each turn and of the match.
+	 */
+	TURN,
+	/**
+	 * Every record is forced.
+	 */
+	RECORD;
+}
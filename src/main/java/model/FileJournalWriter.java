@@ -0,0 +1,220 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The FileJournalWriter class appends the records of a {@link MatchJournal}
+ * to a file. The records submitted are copied in a buffer and a thread of the
+ * writer swaps it with a second one, writes it through a {@link FileChannel}
+ * and forces the file if any of its records asked so; then the journal is
+ * acknowledged. While a buffer is being written the other one takes the new
+ * records, so submit() never waits for the disk. The snapshots are kept aside
+ * with their place in the buffer and encoded by the thread of the writer.
+ * 
+ * The file holds the records of a single {@link MatchJournal}: submitting the
+ * records of another one raises an IllegalStateException.
+ * 
+ * If the file can't be written the error is reported once and the writer
+ * stops: the records submitted afterwards are dropped and never acknowledged,
+ * so whoever waits for them times out, but the match goes on.
+ * 
+ * @author Edoardo Galimberti
+ * 
+ */
+public class FileJournalWriter implements JournalWriter, Runnable {
+
+	private static final int BUFFER = 4096;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final Thread thread;
+	private ByteBuffer pending = ByteBuffer.allocate(BUFFER);
+	private ByteBuffer writing = ByteBuffer.allocate(BUFFER);
+	// the snapshots to encode and where they go in the buffers
+	private List<Deferred> pendingSnapshots = new ArrayList<Deferred>();
+	private List<Deferred> writingSnapshots = new ArrayList<Deferred>();
+	private MatchJournal journal;
+	private long sequence;
+	private boolean force = false;
+	private boolean closed = false;
+	private IOException failure;
+
+	/**
+	 * A snapshot to encode, and the position in the buffer where it goes.
+	 */
+	private static final class Deferred {
+		private final int position;
+		private final MatchSnapshot snapshot;
+
+		private Deferred(int position, MatchSnapshot snapshot) {
+			this.position = position;
+			this.snapshot = snapshot;
+		}
+	}
+
+	/**
+	 * Creates a writer appending to the given file, that is created if it
+	 * doesn't exist.
+	 * 
+	 * @param path
+	 *            - the file of the journal
+	 * @throws IOException
+	 *             - if the file can't be opened
+	 */
+	public FileJournalWriter(File path) throws IOException {
+		this.file = new RandomAccessFile(path, "rw");
+		this.channel = file.getChannel();
+		channel.position(channel.size());
+		this.thread = new Thread(this, "carcassonne-journal");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public synchronized void submit(MatchJournal journal, byte[] records,
+			int length, long sequence, int flags) {
+		if (!accept(journal)) {
+			return;
+		}
+		if (pending.remaining() < length) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(
+					pending.capacity() * 2, pending.position() + length));
+			pending.flip();
+			grown.put(pending);
+			pending = grown;
+		}
+		pending.put(records, 0, length);
+		taken(sequence, flags);
+	}
+
+	@Override
+	public synchronized void submit(MatchJournal journal,
+			MatchSnapshot snapshot, long sequence, int flags) {
+		if (!accept(journal)) {
+			return;
+		}
+		pendingSnapshots.add(new Deferred(pending.position(), snapshot));
+		taken(sequence, flags);
+	}
+
+	/**
+	 * Returns true if the records of the given journal have to be taken,
+	 * false if they are dropped since the writer has failed.
+	 */
+	private boolean accept(MatchJournal journal) {
+		if (closed) {
+			throw new IllegalStateException("The journal is closed.");
+		}
+		if (this.journal != null && this.journal != journal) {
+			throw new IllegalStateException(
+					"The file already holds another journal.");
+		}
+		this.journal = journal;
+		// when it fails, it has already been reported by the writing thread.
+		return failure == null;
+	}
+
+	private void taken(long sequence, int flags) {
+		this.sequence = sequence;
+		// the file of a single match is small enough to be kept whole, so
+		// snapshots don't let anything be dropped.
+		this.force |= (flags & FORCE) != 0;
+		notifyAll();
+	}
+
+	/**
+	 * Writes the records as they come, until the writer is closed.
+	 */
+	public void run() {
+		while (true) {
+			MatchJournal written;
+			long writtenSequence;
+			boolean forced;
+			synchronized (this) {
+				while (isEmpty() && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						closed = true;
+					}
+				}
+				if (isEmpty()) {
+					return;
+				}
+				ByteBuffer swap = writing;
+				writing = pending;
+				pending = swap;
+				List<Deferred> snapshots = writingSnapshots;
+				writingSnapshots = pendingSnapshots;
+				pendingSnapshots = snapshots;
+				written = journal;
+				writtenSequence = sequence;
+				forced = force;
+				force = false;
+			}
+			try {
+				writing.flip();
+				for (Deferred deferred : writingSnapshots) {
+					ByteBuffer before = writing.duplicate();
+					before.limit(deferred.position);
+					write(before);
+					writing.position(deferred.position);
+					write(ByteBuffer.wrap(deferred.snapshot.toRecord()));
+				}
+				write(writing);
+				if (forced) {
+					channel.force(false);
+				}
+			} catch (IOException e) {
+				synchronized (this) {
+					failure = e;
+					pending.clear();
+					pendingSnapshots.clear();
+				}
+				System.err.println("Journal error: " + e.getMessage());
+				return;
+			} finally {
+				writing.clear();
+				writingSnapshots.clear();
+			}
+			// acknowledged out of the lock: the journal may be submitting.
+			written.acknowledge(writtenSequence);
+		}
+	}
+
+	private boolean isEmpty() {
+		return pending.position() == 0 && pendingSnapshots.isEmpty();
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			if (failure != null) {
+				throw failure;
+			}
+			channel.force(false);
+		} finally {
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,583 @@
+package model;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.*;
+
+/**
+ * The GameEngine class applies the rules of a Carcassonne match over a
+ * {@link Board} and a {@link Deck} without notifying anybody: it's meant to be
+ * driven directly by simulations and bots, while {@link CarcassonneModel}
+ * wraps it to tell its observers what happens.
+ * 
+ * Players take turns in the order they have been added. Each turn the current
+ * player gets a {@link Card} that surely fits somewhere on the {@link Board},
+ * places it and then may place a {@link Marker} on it. The markers left to
+ * each player are counted by {@link PlayerColor} ordinal.
+ * 
+ * Calling a method when the rules don't allow it (e.g. placing the card twice)
+ * raises an IllegalStateException.
+ * 
+ * The whole state of a match can be written as a snapshot and read back (see
+ * {@link MatchJournal}). The {@link Zone}s are not part of the snapshot: the
+ * tiles are kept in the order they were placed, and placing them again in
+ * that order, each with the marker it still has, rebuilds the same zones.
+ * 
+ * @author Edoardo Galimberti, Guido Gerosa
+ * 
+ */
+public class GameEngine {
+
+	static final int MARKER_PER_PLAYER = 7;
+	private final Deck deck;
+	private final Board board;
+	private final List<Player> players = new ArrayList<Player>();
+	private final int[] markersLeft = new int[PlayerColor.values().length];
+	private int current = -1;
+	private Card currentCard;
+	private Coordinate lastPlacedCardCoordinate = new Coordinate(0, 0);
+	private boolean cardIsPlaced = true;
+	private boolean over = false;
+	private Collection<Zone> lastTouchedZones = Collections.emptyList();
+	private final Collection<Marker> returnedMarkers = new ArrayList<Marker>();
+	private final Map<Coordinate, Card> strippedTiles = new LinkedHashMap<Coordinate, Card>();
+	// the tiles in the order they were placed
+	private final Map<Coordinate, Card> placed = new LinkedHashMap<Coordinate, Card>();
+	// flags of the turn byte of a snapshot
+	private static final int TURN_CARD_PLACED = 1;
+	private static final int TURN_OVER = 2;
+	private static final int TURN_CARD_DRAWN = 4;
+	// fields of the byte of each tile of a snapshot, after the rotation
+	private static final int TILE_HAS_MARKER = 4;
+	private static final int TILE_MARKER_SIDE_SHIFT = 3;
+	private static final int TILE_MARKER_OWNER_SHIFT = 5;
+
+	/**
+	 * Creates an engine for a new match played with the given {@link Deck}.
+	 * 
+	 * @param deck
+	 *            - the {@link Deck} to pick the cards from
+	 */
+	public GameEngine(Deck deck) {
+		this.deck = deck;
+		this.board = new Board();
+	}
+
+	/**
+	 * Adds a new player to the match and returns it.
+	 * 
+	 * @return - the Player that has been added
+	 * @throws FullMatchException
+	 *             if this engine can't take any other player
+	 */
+	public Player addPlayer() throws FullMatchException {
+		if (players.size() >= PlayerColor.values().length) {
+			throw new FullMatchException();
+		}
+		Player newPlayer = new Player(PlayerColor.values()[players.size()]);
+		players.add(newPlayer);
+		markersLeft[newPlayer.getColor().ordinal()] = MARKER_PER_PLAYER;
+		return newPlayer;
+	}
+
+	/**
+	 * Places the first card on the board and returns it.
+	 * 
+	 * @return the first {@link Card}, put in (0,0)
+	 */
+	public Card start() {
+		Card firstCard = deck.pickStarter();
+		try {
+			board.place(new Coordinate(0, 0), firstCard);
+			placed.put(new Coordinate(0, 0), firstCard);
+		} catch (InvalidPutException e) {
+			// the board is empty: the first card is always accepted.
+		}
+		return firstCard;
+	}
+
+	/**
+	 * Closes the turn and starts the next one. The zones completed during the
+	 * turn are paid out and their markers given back (see getStrippedTiles()),
+	 * then the next player gets the next placeable {@link Card}. If the deck
+	 * is over, or none of the cards left can be placed anywhere, the
+	 * uncompleted zones are paid out and the match ends.
+	 * 
+	 * @return true if a new turn started, false if the match is over
+	 * @throws IllegalStateException
+	 *             - if the current card has not been placed yet
+	 */
+	public boolean nextTurn() {
+		if (over) {
+			return false;
+		}
+		if (!cardIsPlaced) {
+			throw new IllegalStateException("The card must be placed first.");
+		}
+		strippedTiles.clear();
+		assignLastTurnScores();
+		lastTouchedZones = Collections.emptyList();
+		if (!nextCard()) {
+			assignScoresUncompletedZones();
+			over = true;
+			return false;
+		}
+		current = (current + 1) % players.size();
+		cardIsPlaced = false;
+		return true;
+	}
+
+	private void assignLastTurnScores() {
+		for (Zone zone : lastTouchedZones) {
+			if (zone.isCompleted() && zone.isRuled()) {
+				for (Player ruler : zone.getRulers()) {
+					ruler.addScore(zone.getScore());
+				}
+				strippedTiles.putAll(board.removeMarkers(zone, returnedMarkers));
+				for (Marker marker : returnedMarkers) {
+					markersLeft[marker.getOwner().getColor().ordinal()]++;
+				}
+				returnedMarkers.clear();
+			}
+			// the zone has been paid out and won't change anymore.
+			board.compact(zone);
+		}
+	}
+
+	private void assignScoresUncompletedZones() {
+		// the completed zones have already been paid out and stripped, hence
+		// the pending points come from the uncompleted ones only.
+		for (Player player : players) {
+			player.addScore(board.getPendingScore(player));
+		}
+	}
+
+	/**
+	 * Picks the first placeable card from the deck and sets it as the current
+	 * card, rotated so that it fits somewhere. The cards that can't be placed
+	 * are put back at the end of the deck. Whether the deck is dead is told
+	 * beforehand by the cards left of each type and the openings fitting it,
+	 * so a placeable card is always found.
+	 * 
+	 * @return false if the deck is over or no card left can be placed
+	 */
+	private boolean nextCard() {
+		if (!deck.hasPlaceable(board)) {
+			return false;
+		}
+		while (true) {
+			Card card = deck.pick();
+			// the board counts the openings fitting each type
+			if (board.getFittingOpenings(card.getType()) > 0) {
+				board.canAccept(card);
+				currentCard = card;
+				return true;
+			}
+			deck.add(card);
+		}
+	}
+
+	/**
+	 * Rotates the current card by 90 degrees clockwise.
+	 * 
+	 * @throws IllegalStateException
+	 *             - if the current card has already been placed
+	 */
+	public void rotateCard() {
+		if (cardIsPlaced) {
+			throw new IllegalStateException("The card is already placed.");
+		}
+		currentCard.rotate();
+	}
+
+	/**
+	 * Places the current card on the board at the given {@link Coordinate}.
+	 * 
+	 * @param coordinate
+	 *            - where the current card is placed
+	 * @throws InvalidPutException
+	 *             - if the card doesn't fit there
+	 * @throws IllegalStateException
+	 *             - if the current card has already been placed
+	 */
+	public void placeCurrentCard(Coordinate coordinate)
+			throws InvalidPutException {
+		if (cardIsPlaced) {
+			throw new IllegalStateException("The card is already placed.");
+		}
+		lastTouchedZones = board.place(coordinate, currentCard);
+		placed.put(coordinate, currentCard);
+		lastPlacedCardCoordinate = coordinate;
+		cardIsPlaced = true;
+	}
+
+	/**
+	 * Places a marker of the current player on the given side of the last
+	 * placed card.
+	 * 
+	 * @param direction
+	 *            - the side of the card where the marker is placed
+	 * @throws InvalidMarkerPositionException
+	 *             - if the zone on that side is already ruled or there's none
+	 * @throws NoMoreMarkersException
+	 *             - if the current player has no more markers
+	 * @throws IllegalStateException
+	 *             - if the current card has not been placed yet
+	 */
+	public void placeMarker(Direction direction)
+			throws InvalidMarkerPositionException, NoMoreMarkersException {
+		if (!cardIsPlaced || current < 0) {
+			throw new IllegalStateException("The card must be placed first.");
+		}
+		Player player = players.get(current);
+		int index = player.getColor().ordinal();
+		if (markersLeft[index] == 0) {
+			throw new NoMoreMarkersException();
+		}
+		Marker toPlace = new Marker(player);
+		try {
+			lastTouchedZones = board.place(toPlace, lastPlacedCardCoordinate,
+					direction);
+		} catch (InvalidPutException e) {
+			throw new InvalidMarkerPositionException();
+		}
+		markersLeft[index]--;
+	}
+
+	/**
+	 * Returns the tiles whose markers have been given back at the beginning of
+	 * the current turn, by {@link Coordinate}.
+	 * 
+	 * @return the tiles stripped of their markers by the last nextTurn()
+	 */
+	public Map<Coordinate, Card> getStrippedTiles() {
+		return Collections.unmodifiableMap(strippedTiles);
+	}
+
+	/**
+	 * Returns the tiles on the board in the order they were placed, the first
+	 * card first, by {@link Coordinate}.
+	 * 
+	 * @return the tiles on the board
+	 */
+	public Map<Coordinate, Card> getPlacedTiles() {
+		return Collections.unmodifiableMap(placed);
+	}
+
+	/**
+	 * Returns the number of markers the given player can still place.
+	 * 
+	 * @param player
+	 *            - the {@link Player}
+	 * @return the number of markers left to the player
+	 */
+	public int getMarkersLeft(Player player) {
+		return markersLeft[player.getColor().ordinal()];
+	}
+
+	/**
+	 * Returns the score the given player would have if the match ended now:
+	 * the current score plus the points of the ruled zones, completed or not.
+	 * Once the match is over it's the final score.
+	 * 
+	 * @param player
+	 *            - the {@link Player}
+	 * @return the projected score of the player
+	 */
+	public int getProjectedScore(Player player) {
+		if (over) {
+			return player.getScore();
+		}
+		return player.getScore() + board.getPendingScore(player);
+	}
+
+	/**
+	 * Returns the projected score of each player, in turn order (see
+	 * getProjectedScore()).
+	 * 
+	 * @return the projected scores in turn order
+	 */
+	public int[] getProjectedScores() {
+		int[] result = new int[players.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = getProjectedScore(players.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns true if a card of the given {@link TileType} can be placed
+	 * somewhere on the board, in constant time.
+	 * 
+	 * @param type
+	 *            - the {@link TileType}
+	 * @return true if the type can be placed somewhere
+	 */
+	public boolean isPlaceable(TileType type) {
+		return board.getFittingOpenings(type) > 0;
+	}
+
+	/**
+	 * Returns the players in turn order.
+	 * 
+	 * @return the players in turn order
+	 */
+	public List<Player> getPlayers() {
+		return Collections.unmodifiableList(players);
+	}
+
+	/**
+	 * Returns the player of the current turn, or null before the first one.
+	 * 
+	 * @return the current player
+	 */
+	public Player getCurrentPlayer() {
+		return current < 0 ? null : players.get(current);
+	}
+
+	/**
+	 * Returns the card to be placed in the current turn.
+	 * 
+	 * @return the current card
+	 */
+	public Card getCurrentCard() {
+		return currentCard;
+	}
+
+	/**
+	 * Returns the {@link Coordinate} of the last placed card.
+	 * 
+	 * @return the {@link Coordinate} of the last placed card
+	 */
+	public Coordinate getLastPlacedCardCoordinate() {
+		return lastPlacedCardCoordinate;
+	}
+
+	/**
+	 * Returns true if the current card has been placed.
+	 * 
+	 * @return true if the current card has been placed
+	 */
+	public boolean isCardPlaced() {
+		return cardIsPlaced;
+	}
+
+	/**
+	 * Returns true if the deck is over and the final scores have been given.
+	 * 
+	 * @return true if the match is over
+	 */
+	public boolean isOver() {
+		return over;
+	}
+
+	/**
+	 * Returns the number of cards left in the deck.
+	 * 
+	 * @return the number of cards left in the deck
+	 */
+	public int getTilesLeft() {
+		return deck.size();
+	}
+
+	/**
+	 * Returns the {@link DeckTemplate} the deck of the match draws from.
+	 * 
+	 * @return the {@link DeckTemplate} of the match
+	 */
+	public DeckTemplate getTemplate() {
+		return deck.getTemplate();
+	}
+
+	/**
+	 * Returns the {@link Deck} of the match.
+	 */
+	Deck getDeck() {
+		return deck;
+	}
+
+	/**
+	 * Returns true if the first card has been placed.
+	 */
+	boolean isStarted() {
+		return !placed.isEmpty();
+	}
+
+	/**
+	 * Takes a snapshot of the match, that can be encoded later while the
+	 * match goes on.
+	 * 
+	 * @return the {@link MatchSnapshot} of the match as it is now
+	 */
+	MatchSnapshot snapshot() {
+		List<Card> queuedCards = deck.getQueued();
+		int[] queued = new int[queuedCards.size()];
+		for (int i = 0; i < queued.length; i++) {
+			queued[i] = queuedCards.get(i).getType().getDefinition();
+		}
+		int[] scores = new int[players.size()];
+		int[] markers = new int[players.size()];
+		for (int i = 0; i < scores.length; i++) {
+			scores[i] = players.get(i).getScore();
+			markers[i] = getMarkersLeft(players.get(i));
+		}
+		boolean drawn = currentCard != null && !cardIsPlaced;
+		int flags = (cardIsPlaced ? TURN_CARD_PLACED : 0)
+				| (over ? TURN_OVER : 0) | (drawn ? TURN_CARD_DRAWN : 0);
+		int[] tiles = new int[placed.size() * 4];
+		int next = 0;
+		for (Map.Entry<Coordinate, Card> tile : placed.entrySet()) {
+			Card card = tile.getValue();
+			int details = card.getRotation();
+			try {
+				int side = card.getMarkerPosition().ordinal();
+				int owner = card.getMarker().getOwner().getColor().ordinal();
+				details |= TILE_HAS_MARKER | side << TILE_MARKER_SIDE_SHIFT
+						| owner << TILE_MARKER_OWNER_SHIFT;
+			} catch (NoMarkerOnCardException e) {
+				// the tile has no marker.
+			}
+			tiles[next++] = card.getType().getDefinition();
+			tiles[next++] = details;
+			tiles[next++] = tile.getKey().getX();
+			tiles[next++] = tile.getKey().getY();
+		}
+		return new MatchSnapshot(deck.getSeed(), deck.getDrawn(), queued,
+				scores, markers, current, flags, drawn ? currentCard.getType()
+						.getDefinition() : -1, drawn ? currentCard
+						.getRotation() : 0, tiles);
+	}
+
+	/**
+	 * Rebuilds a match from a snapshot encoded by
+	 * {@link MatchSnapshot#toRecord()}, with a {@link Deck} of the given
+	 * template.
+	 * 
+	 * @param input
+	 *            - where the snapshot is read
+	 * @param template
+	 *            - the {@link DeckTemplate} of the match
+	 * @return the rebuilt match
+	 * @throws IOException
+	 *             - if the snapshot can't be read or doesn't describe a match
+	 *             of the template, an {@link InvalidObjectException} if the
+	 *             markers of a player aren't all either left or on the board
+	 */
+	static GameEngine read(DataInput input, DeckTemplate template)
+			throws IOException {
+		Deck deck = new Deck(template, input.readLong());
+		int drawn = MatchJournal.readSigned(input);
+		int queuedNumber = MatchJournal.readSigned(input);
+		if (drawn < 0 || drawn > template.size() || queuedNumber < 0
+				|| queuedNumber > drawn) {
+			throw new IOException("The deck doesn't match the template.");
+		}
+		List<Card> queued = new ArrayList<Card>(queuedNumber);
+		for (int i = 0; i < queuedNumber; i++) {
+			queued.add(new Card(readType(input)));
+		}
+		deck.restore(drawn, queued);
+		GameEngine engine = new GameEngine(deck);
+		int playersNumber = input.readUnsignedByte();
+		try {
+			for (int i = 0; i < playersNumber; i++) {
+				Player player = engine.addPlayer();
+				player.addScore(MatchJournal.readSigned(input));
+				int markers = input.readUnsignedByte();
+				if (markers > MARKER_PER_PLAYER) {
+					throw new InvalidObjectException("Player " + i + " has "
+							+ markers + " markers left.");
+				}
+				engine.markersLeft[i] = markers;
+			}
+		} catch (FullMatchException e) {
+			throw new IOException("Too many players: " + playersNumber);
+		}
+		engine.current = input.readByte();
+		int flags = input.readUnsignedByte();
+		engine.cardIsPlaced = (flags & TURN_CARD_PLACED) != 0;
+		engine.over = (flags & TURN_OVER) != 0;
+		if ((flags & TURN_CARD_DRAWN) != 0) {
+			TileType type = readType(input);
+			int rotation = input.readUnsignedByte();
+			if (rotation >= TileType.ROTATIONS) {
+				throw new IOException("Wrong rotation: " + rotation);
+			}
+			engine.currentCard = new Card(type, rotation);
+		}
+		if (engine.current < -1 || engine.current >= playersNumber) {
+			throw new IOException("No player " + engine.current);
+		}
+		int tiles = MatchJournal.readSigned(input);
+		Collection<Zone> touched = Collections.emptyList();
+		int[] onBoard = new int[playersNumber];
+		try {
+			for (int i = 0; i < tiles; i++) {
+				TileType type = readType(input);
+				int details = input.readUnsignedByte();
+				Coordinate coordinate = new Coordinate(
+						MatchJournal.readSigned(input),
+						MatchJournal.readSigned(input));
+				Card card = new Card(type, details & (TileType.ROTATIONS - 1));
+				touched = engine.board.place(coordinate, card);
+				if ((details & TILE_HAS_MARKER) != 0) {
+					int owner = details >>> TILE_MARKER_OWNER_SHIFT;
+					if (owner >= playersNumber) {
+						throw new IOException("No player " + owner);
+					}
+					int side = (details >>> TILE_MARKER_SIDE_SHIFT)
+							& (TileType.ROTATIONS - 1);
+					touched = engine.board.place(
+							new Marker(engine.players.get(owner)), coordinate,
+							Direction.fromOrdinal(side));
+					onBoard[owner]++;
+				}
+				engine.placed.put(coordinate, card);
+				engine.lastPlacedCardCoordinate = coordinate;
+				if (engine.cardIsPlaced && engine.current >= 0) {
+					// the card of the current turn is the last one placed
+					engine.currentCard = card;
+				}
+			}
+		} catch (InvalidPutException e) {
+			throw new IOException("The tiles don't fit each other.");
+		} catch (InvalidMarkerPositionException e) {
+			throw new IOException("The markers don't fit the tiles.");
+		}
+		for (int i = 0; i < playersNumber; i++) {
+			// a marker is either left to its player or on the board
+			if (engine.markersLeft[i] + onBoard[i] != MARKER_PER_PLAYER) {
+				throw new InvalidObjectException("Player " + i + " has "
+						+ engine.markersLeft[i] + " markers left and "
+						+ onBoard[i] + " on the board.");
+			}
+		}
+		if (engine.cardIsPlaced && engine.current >= 0) {
+			// the zones of the current turn are paid out by nextTurn()
+			engine.lastTouchedZones = touched;
+		}
+		return engine;
+	}
+
+	/**
+	 * Reads the definition of a {@link TileType}, checking that it's valid.
+	 */
+	private static TileType readType(DataInput input) throws IOException {
+		int definition = input.readUnsignedShort();
+		String wrong = TileType.check(definition);
+		if (wrong != null) {
+			throw new IOException(wrong);
+		}
+		return TileType.valueOf(definition);
+	}
+
+	/**
+	 * Returns the {@link Board} of the match.
+	 * 
+	 * @return the {@link Board} of the match
+	 */
+	public Board getBoard() {
+		return board;
+	}
+}
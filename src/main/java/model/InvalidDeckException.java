@@ -0,0 +1,38 @@
+package model;
+
+import java.io.IOException;
+
+/**
+ * This exception is thrown when the definition of a deck is not well formed:
+ * a line doesn't describe a tile, the tile can't exist or its count is wrong.
+ * 
+ * @author Edoardo Galimberti
+ * 
+ */
+public class InvalidDeckException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+	private final int line;
+
+	/**
+	 * Construct the exception for the given line of the definition.
+	 * 
+	 * @param line
+	 *            - the number of the wrong line, starting from 1
+	 * @param reason
+	 *            - what is wrong with the line
+	 */
+	public InvalidDeckException(int line, String reason) {
+		super("Line " + line + ": " + reason);
+		this.line = line;
+	}
+
+	/**
+	 * Returns the number of the wrong line, starting from 1.
+	 * 
+	 * @return the number of the wrong line
+	 */
+	public int getLine() {
+		return line;
+	}
+}
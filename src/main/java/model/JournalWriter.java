@@ -0,0 +1,84 @@
+package model;
+
+import java.io.IOException;
+
+/**
+ * This Interface is implemented by whoever stores the records of one or more
+ * {@link MatchJournal}s. submit() is called while a match is being played, so
+ * it must only take the records and return: writing and forcing them is done
+ * later, on another thread, after which the writer tells the journal how many
+ * of its records are safe by {@link MatchJournal#acknowledge(long)}. Only
+ * a writer far behind the disk may make submit() wait for room, and it must
+ * never do so while acknowledging.
+ * 
+ * Snapshots are submitted as {@link MatchSnapshot}s, that the writer encodes
+ * by {@link MatchSnapshot#toRecord()} on its own thread, so that the match
+ * doesn't wait for the encoding either.
+ * 
+ * Each submission comes with flags telling whether its records must be
+ * forced, whether they are a snapshot of the whole match or its start (so
+ * that the records submitted before by the same journal are no longer needed
+ * and the writer may drop them) or the end of the match (so that none of them
+ * is needed).
+ * 
+ * @author Edoardo Galimberti
+ * 
+ */
+public interface JournalWriter {
+
+	/**
+	 * The records must be forced to the disk before being acknowledged.
+	 */
+	int FORCE = 1;
+	/**
+	 * The records are a snapshot of the match, or its start.
+	 */
+	int SNAPSHOT = 2;
+	/**
+	 * The records are the end of the match.
+	 */
+	int OVER = 4;
+
+	/**
+	 * Takes the given records of the given journal, to be written after those
+	 * submitted before. The array can be reused as soon as the method returns.
+	 * 
+	 * @param journal
+	 *            - the {@link MatchJournal} the records come from
+	 * @param records
+	 *            - the encoded records
+	 * @param length
+	 *            - the number of bytes of the records
+	 * @param sequence
+	 *            - the number of records of the journal up to these ones
+	 * @param flags
+	 *            - FORCE, SNAPSHOT and OVER, or-ed together
+	 */
+	void submit(MatchJournal journal, byte[] records, int length,
+			long sequence, int flags);
+
+	/**
+	 * Takes the given snapshot of the given journal, to be encoded and
+	 * written after the records submitted before.
+	 * 
+	 * @param journal
+	 *            - the {@link MatchJournal} the snapshot comes from
+	 * @param snapshot
+	 *            - the {@link MatchSnapshot} to encode
+	 * @param sequence
+	 *            - the number of records of the journal up to this one
+	 * @param flags
+	 *            - FORCE, SNAPSHOT and OVER, or-ed together
+	 */
+	void submit(MatchJournal journal, MatchSnapshot snapshot, long sequence,
+			int flags);
+
+	/**
+	 * Writes and forces the records submitted so far, then releases the
+	 * resources of the writer.
+	 * 
+	 * @throws IOException
+	 *             - if some records couldn't be written
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,204 @@
+package model;
+
+/**
+ * The LongIntMap class is an open addressing hash map from primitive long keys
+ * to primitive int values, the same way {@link LongMap} is for object values.
+ * 
+ * Entries can be visited by looping on the slots from 0 to capacity() and
+ * skipping those that are not isUsed().
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+final class LongIntMap {
+
+	private static final int MIN_CAPACITY = 16;
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int mask;
+	private int size;
+
+	/**
+	 * Creates an empty map.
+	 */
+	LongIntMap() {
+		keys = new long[MIN_CAPACITY];
+		values = new int[MIN_CAPACITY];
+		used = new boolean[MIN_CAPACITY];
+		mask = MIN_CAPACITY - 1;
+		size = 0;
+	}
+
+	private int slotOf(long key) {
+		int slot = LongMap.hash(key) & mask;
+		while (used[slot] && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the value mapped to the given key, or the given default value if
+	 * there's none.
+	 * 
+	 * @param key
+	 *            - the key to look for
+	 * @param defaultValue
+	 *            - the value to return if the key is not mapped
+	 * @return the value mapped to the key or defaultValue
+	 */
+	int get(long key, int defaultValue) {
+		int slot = slotOf(key);
+		return used[slot] ? values[slot] : defaultValue;
+	}
+
+	/**
+	 * Returns true if the given key is mapped to a value.
+	 * 
+	 * @param key
+	 *            - the key to look for
+	 * @return true if the key is mapped to a value
+	 */
+	boolean containsKey(long key) {
+		return used[slotOf(key)];
+	}
+
+	/**
+	 * Maps the given key to the given value.
+	 * 
+	 * @param key
+	 *            - the key
+	 * @param value
+	 *            - the value
+	 */
+	void put(long key, int value) {
+		int slot = slotOf(key);
+		keys[slot] = key;
+		values[slot] = value;
+		if (!used[slot]) {
+			used[slot] = true;
+			if (++size > (mask + 1) / 2) {
+				resize();
+			}
+		}
+	}
+
+	/**
+	 * Adds the given amount to the value mapped to the given key, mapping it to
+	 * the amount if it's not mapped yet.
+	 * 
+	 * @param key
+	 *            - the key
+	 * @param amount
+	 *            - the amount to add
+	 * @return the new value
+	 */
+	int add(long key, int amount) {
+		int slot = slotOf(key);
+		if (used[slot]) {
+			values[slot] += amount;
+			return values[slot];
+		}
+		put(key, amount);
+		return amount;
+	}
+
+	/**
+	 * Removes the mapping of the given key.
+	 * 
+	 * @param key
+	 *            - the key to remove
+	 * @return true if the key was mapped
+	 */
+	boolean remove(long key) {
+		int hole = slotOf(key);
+		if (!used[hole]) {
+			return false;
+		}
+		used[hole] = false;
+		size--;
+		int next = (hole + 1) & mask;
+		while (used[next]) {
+			int ideal = LongMap.hash(keys[next]) & mask;
+			if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				values[hole] = values[next];
+				used[hole] = true;
+				used[next] = false;
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		return true;
+	}
+
+	private void resize() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldValues.length * 2];
+		used = new boolean[oldUsed.length * 2];
+		mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i]) {
+				int slot = slotOf(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+				used[slot] = true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of mappings.
+	 * 
+	 * @return the number of mappings
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of slots of the table.
+	 * 
+	 * @return the number of slots of the table
+	 */
+	int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Returns true if the given slot holds a mapping.
+	 * 
+	 * @param slot
+	 *            - the slot, from 0 to capacity()
+	 * @return true if the slot holds a mapping
+	 */
+	boolean isUsed(int slot) {
+		return used[slot];
+	}
+
+	/**
+	 * Returns the key stored in the given slot. Meaningful only if isUsed().
+	 * 
+	 * @param slot
+	 *            - the slot, from 0 to capacity()
+	 * @return the key stored in the slot
+	 */
+	long keyAt(int slot) {
+		return keys[slot];
+	}
+
+	/**
+	 * Returns the value stored in the given slot. Meaningful only if isUsed().
+	 * 
+	 * @param slot
+	 *            - the slot, from 0 to capacity()
+	 * @return the value stored in the slot
+	 */
+	int valueAt(int slot) {
+		return values[slot];
+	}
+}
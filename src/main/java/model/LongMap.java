@@ -0,0 +1,188 @@
+package model;
+
+/**
+ * The LongMap class is an open addressing hash map having primitive long keys,
+ * usually {@link Coordinate}s packed by {@link Coordinate#pack()}, so that
+ * lookups don't need to allocate or box anything. Collisions are solved by
+ * linear probing and removals shift back the following entries, hence no
+ * tombstone is ever left in the table. Null values are not allowed.
+ * 
+ * Entries can be visited by looping on the slots from 0 to capacity() and
+ * skipping those whose valueAt() is null.
+ * 
+ * @author Guido Gerosa
+ * 
+ * @param <V>
+ *            the type of the values
+ */
+final class LongMap<V> {
+
+	private static final int MIN_CAPACITY = 16;
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+
+	/**
+	 * Creates an empty map.
+	 */
+	LongMap() {
+		keys = new long[MIN_CAPACITY];
+		values = new Object[MIN_CAPACITY];
+		mask = MIN_CAPACITY - 1;
+		size = 0;
+	}
+
+	/**
+	 * Spreads the bits of the key so that close {@link Coordinate}s don't
+	 * cluster in the table.
+	 */
+	static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private int slotOf(long key) {
+		int slot = hash(key) & mask;
+		while (values[slot] != null && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the value mapped to the given key, or null if there's none.
+	 * 
+	 * @param key
+	 *            - the key to look for
+	 * @return the value mapped to the key or null
+	 */
+	@SuppressWarnings("unchecked")
+	V get(long key) {
+		return (V) values[slotOf(key)];
+	}
+
+	/**
+	 * Returns true if the given key is mapped to a value.
+	 * 
+	 * @param key
+	 *            - the key to look for
+	 * @return true if the key is mapped to a value
+	 */
+	boolean containsKey(long key) {
+		return values[slotOf(key)] != null;
+	}
+
+	/**
+	 * Maps the given key to the given value.
+	 * 
+	 * @param key
+	 *            - the key
+	 * @param value
+	 *            - the value, not null
+	 * @return the value previously mapped to the key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	V put(long key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException();
+		}
+		int slot = slotOf(key);
+		V previous = (V) values[slot];
+		keys[slot] = key;
+		values[slot] = value;
+		if (previous == null && ++size > (mask + 1) / 2) {
+			resize();
+		}
+		return previous;
+	}
+
+	/**
+	 * Removes the mapping of the given key.
+	 * 
+	 * @param key
+	 *            - the key to remove
+	 * @return the value that was mapped to the key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	V remove(long key) {
+		int hole = slotOf(key);
+		V previous = (V) values[hole];
+		if (previous == null) {
+			return null;
+		}
+		values[hole] = null;
+		size--;
+		int next = (hole + 1) & mask;
+		while (values[next] != null) {
+			int ideal = hash(keys[next]) & mask;
+			// the entry can fill the hole if the hole lies between its ideal
+			// slot and the slot it's in.
+			if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				values[hole] = values[next];
+				values[next] = null;
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		return previous;
+	}
+
+	private void resize() {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new Object[oldValues.length * 2];
+		mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				int slot = slotOf(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of mappings.
+	 * 
+	 * @return the number of mappings
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of slots of the table.
+	 * 
+	 * @return the number of slots of the table
+	 */
+	int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Returns the key stored in the given slot. Meaningful only if valueAt()
+	 * isn't null.
+	 * 
+	 * @param slot
+	 *            - the slot, from 0 to capacity()
+	 * @return the key stored in the slot
+	 */
+	long keyAt(int slot) {
+		return keys[slot];
+	}
+
+	/**
+	 * Returns the value stored in the given slot, or null if the slot is empty.
+	 * 
+	 * @param slot
+	 *            - the slot, from 0 to capacity()
+	 * @return the value stored in the slot or null
+	 */
+	@SuppressWarnings("unchecked")
+	V valueAt(int slot) {
+		return (V) values[slot];
+	}
+}
@@ -0,0 +1,473 @@
+package model;
+
+import java.io.*;
+
+/**
+ * The MatchJournal class keeps the append-only record of the moves of a match,
+ * so that the match can be rebuilt by restore() after the process running it
+ * has been lost. The records are written by {@link CarcassonneModel} as the
+ * match goes on: the start of the match (seed of the {@link Deck} and number
+ * of players), each card drawn, each placement with the rotation of the card,
+ * each marker, each passed turn and the end of the match.
+ * 
+ * Every given number of moves the model writes a snapshot of the whole match
+ * (see {@link GameEngine}), after which the writer is told that the records
+ * before it are no longer needed and can be dropped. restore() starts from the
+ * last snapshot, or from the start of the match if there's none, and plays
+ * only the records following it.
+ * 
+ * Records are a few bytes each: a header byte with the kind of the record in
+ * the low four bits and, for placements, markers and draws, a rotation or a
+ * {@link Direction} ordinal in the high ones, followed by the payload
+ * (coordinates are zigzag varints, so they usually take a byte each). They
+ * are encoded in a small array and handed to a {@link JournalWriter}, that
+ * writes them on its own thread: the thread playing the match never waits for
+ * the disk. Snapshots are only taken as a {@link MatchSnapshot} and encoded by
+ * the writer too. The writer acknowledges the records once they are as safe as the
+ * {@link Durability} of the journal asks.
+ * 
+ * @author Edoardo Galimberti, Guido Gerosa
+ * 
+ */
+public class MatchJournal {
+
+	static final int START = 0;
+	static final int DRAW = 1;
+	static final int PLACE = 2;
+	static final int MARKER = 3;
+	static final int PASS = 4;
+	static final int END = 5;
+	static final int SNAPSHOT = 6;
+	private static final int KIND_MASK = 0xF;
+	private static final int ARGUMENT_SHIFT = 4;
+	private static final int MAX_RECORD = 16;
+	private final JournalWriter writer;
+	private final Durability durability;
+	private final int id;
+	private final byte[] record = new byte[MAX_RECORD];
+	private long appended = 0;
+	// guarded by acks, not by the journal: the writer acknowledges while a
+	// record may be waiting in submit() for the writer to make room
+	private final Object acks = new Object();
+	private long acknowledged = 0;
+	private int snapshotInterval = 0;
+	private int moves = 0;
+
+	/**
+	 * Creates a journal handing its records to the given
+	 * {@link JournalWriter}.
+	 * 
+	 * @param writer
+	 *            - the {@link JournalWriter} storing the records
+	 * @param durability
+	 *            - when the records have to be forced to the disk
+	 */
+	public MatchJournal(JournalWriter writer, Durability durability) {
+		this(writer, durability, 0);
+	}
+
+	/**
+	 * Creates a journal handing its records to the given
+	 * {@link JournalWriter}, that may be shared with other journals telling
+	 * them apart by their ids.
+	 * 
+	 * @param writer
+	 *            - the {@link JournalWriter} storing the records
+	 * @param durability
+	 *            - when the records have to be forced to the disk
+	 * @param id
+	 *            - the id of the match, unique among those of the writer
+	 */
+	public MatchJournal(JournalWriter writer, Durability durability, int id) {
+		this.writer = writer;
+		this.durability = durability;
+		this.id = id;
+	}
+
+	/**
+	 * Sets the number of moves after which a snapshot of the match is taken,
+	 * or 0 to never take one.
+	 * 
+	 * @param moves
+	 *            - the number of moves between two snapshots
+	 */
+	public synchronized void setSnapshotInterval(int moves) {
+		this.snapshotInterval = moves;
+	}
+
+	/**
+	 * Returns true if enough moves have been played since the last snapshot
+	 * for a new one to be taken.
+	 */
+	synchronized boolean isSnapshotDue() {
+		return snapshotInterval > 0 && moves >= snapshotInterval;
+	}
+
+	/**
+	 * Returns the id of the match of this journal.
+	 * 
+	 * @return the id of the match
+	 */
+	public int getId() {
+		return id;
+	}
+
+	synchronized void recordStart(long seed, int playersNumber) {
+		record[0] = START;
+		for (int i = 0; i < 8; i++) {
+			record[1 + i] = (byte) (seed >>> (56 - 8 * i));
+		}
+		record[9] = (byte) playersNumber;
+		moves = 0;
+		// like a snapshot, the start makes whatever came before useless.
+		append(record, 10, JournalWriter.SNAPSHOT
+				| forceFrom(Durability.TURN));
+	}
+
+	synchronized void recordDraw(Card card) {
+		int definition = card.getType().getDefinition();
+		record[0] = (byte) (DRAW | card.getRotation() << ARGUMENT_SHIFT);
+		record[1] = (byte) (definition >>> 8);
+		record[2] = (byte) definition;
+		append(record, 3, forceFrom(Durability.RECORD));
+	}
+
+	synchronized void recordPlacement(Coordinate coordinate, int rotation) {
+		record[0] = (byte) (PLACE | rotation << ARGUMENT_SHIFT);
+		int length = putSigned(1, coordinate.getX());
+		length = putSigned(length, coordinate.getY());
+		moves++;
+		append(record, length, forceFrom(Durability.RECORD));
+	}
+
+	synchronized void recordMarker(Direction direction) {
+		record[0] = (byte) (MARKER | direction.ordinal() << ARGUMENT_SHIFT);
+		append(record, 1, forceFrom(Durability.RECORD));
+	}
+
+	synchronized void recordPass() {
+		record[0] = PASS;
+		append(record, 1, forceFrom(Durability.TURN));
+	}
+
+	synchronized void recordEnd() {
+		record[0] = END;
+		append(record, 1, JournalWriter.OVER | forceFrom(Durability.TURN));
+	}
+
+	synchronized void recordSnapshot(GameEngine engine) {
+		moves = 0;
+		appended++;
+		// only taken here: the writer encodes it on its own thread.
+		writer.submit(this, engine.snapshot(), appended,
+				JournalWriter.SNAPSHOT | forceFrom(Durability.TURN));
+	}
+
+	/**
+	 * Returns FORCE if the durability of this journal is at least the given
+	 * one, 0 otherwise.
+	 */
+	private int forceFrom(Durability least) {
+		return durability.compareTo(least) >= 0 ? JournalWriter.FORCE : 0;
+	}
+
+	private synchronized void append(byte[] records, int length, int flags) {
+		appended++;
+		writer.submit(this, records, length, appended, flags);
+	}
+
+	/**
+	 * Writes the given value as a zigzag varint in the record, from the given
+	 * index, and returns the index following it.
+	 */
+	private int putSigned(int index, int value) {
+		int left = (value << 1) ^ (value >> 31);
+		while ((left & ~0x7F) != 0) {
+			record[index++] = (byte) ((left & 0x7F) | 0x80);
+			left >>>= 7;
+		}
+		record[index++] = (byte) left;
+		return index;
+	}
+
+	/**
+	 * Writes the given value as a zigzag varint in the given output.
+	 */
+	static void writeSigned(DataOutput output, int value) throws IOException {
+		int left = (value << 1) ^ (value >> 31);
+		while ((left & ~0x7F) != 0) {
+			output.writeByte((left & 0x7F) | 0x80);
+			left >>>= 7;
+		}
+		output.writeByte(left);
+	}
+
+	/**
+	 * Reads a zigzag varint from the given input.
+	 */
+	static int readSigned(DataInput input) throws IOException {
+		int value = 0;
+		int shift = 0;
+		int read;
+		do {
+			read = input.readUnsignedByte();
+			value |= (read & 0x7F) << shift;
+			shift += 7;
+		} while ((read & 0x80) != 0 && shift < 35);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Tells the journal that its first records, up to the given number, are
+	 * safe. It's called by the {@link JournalWriter}.
+	 * 
+	 * @param sequence
+	 *            - the number of records acknowledged
+	 */
+	public void acknowledge(long sequence) {
+		synchronized (acks) {
+			if (sequence > acknowledged) {
+				acknowledged = sequence;
+				acks.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of records appended to this journal.
+	 * 
+	 * @return the number of records appended
+	 */
+	public synchronized long getAppended() {
+		return appended;
+	}
+
+	/**
+	 * Returns the number of records acknowledged by the
+	 * {@link JournalWriter}.
+	 * 
+	 * @return the number of records acknowledged
+	 */
+	public long getAcknowledged() {
+		synchronized (acks) {
+			return acknowledged;
+		}
+	}
+
+	/**
+	 * Waits until every record appended so far has been acknowledged, or the
+	 * given time is over.
+	 * 
+	 * @param timeout
+	 *            - the milliseconds to wait at most
+	 * @return true if every record has been acknowledged
+	 * @throws InterruptedException
+	 *             - if the thread is interrupted while waiting
+	 */
+	public boolean awaitAcknowledged(long timeout)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		long target = getAppended();
+		synchronized (acks) {
+			while (acknowledged < target) {
+				long left = deadline - System.currentTimeMillis();
+				if (left <= 0) {
+					return false;
+				}
+				acks.wait(left);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Rebuilds a match from its journal, starting from its last snapshot (or
+	 * from its start if there's none) and playing again the moves following
+	 * it on a {@link GameEngine} with a {@link Deck} of the given template. A
+	 * record cut by a crash at the end of the journal is ignored.
+	 * 
+	 * @param input
+	 *            - the records of the journal, closed at the end
+	 * @param template
+	 *            - the {@link DeckTemplate} of the match
+	 * @return the rebuilt {@link GameEngine}, or null if the journal has
+	 *         neither the start of the match nor a snapshot
+	 * @throws IOException
+	 *             - if the journal can't be read or doesn't match the template
+	 */
+	public static GameEngine restore(InputStream input, DeckTemplate template)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[4096];
+			int read = input.read(buffer);
+			while (read >= 0) {
+				bytes.write(buffer, 0, read);
+				read = input.read(buffer);
+			}
+		} finally {
+			input.close();
+		}
+		byte[] journal = bytes.toByteArray();
+		int origin = findOrigin(journal);
+		if (origin < 0) {
+			return null;
+		}
+		DataInputStream records = new DataInputStream(new ByteArrayInputStream(
+				journal, origin, journal.length - origin));
+		GameEngine engine = null;
+		try {
+			int header = records.read();
+			while (header >= 0) {
+				engine = apply(engine, header, records, template);
+				header = records.read();
+			}
+		} catch (EOFException e) {
+			// the last record was being written: it's dropped.
+		}
+		return engine;
+	}
+
+	/**
+	 * Returns the index of the last whole record starting the match or
+	 * holding a snapshot of it, or -1 if there's none. The records are only
+	 * skipped, not played.
+	 */
+	private static int findOrigin(byte[] journal) throws IOException {
+		ByteArrayInputStream bytes = new ByteArrayInputStream(journal);
+		DataInputStream records = new DataInputStream(bytes);
+		int origin = -1;
+		try {
+			while (bytes.available() > 0) {
+				int index = journal.length - bytes.available();
+				int kind = records.readUnsignedByte() & KIND_MASK;
+				switch (kind) {
+				case START:
+					skip(records, 9);
+					break;
+				case DRAW:
+					skip(records, 2);
+					break;
+				case PLACE:
+					readSigned(records);
+					readSigned(records);
+					break;
+				case MARKER:
+				case PASS:
+				case END:
+					break;
+				case SNAPSHOT:
+					skip(records, readSigned(records));
+					break;
+				default:
+					throw new IOException("Unknown record: " + kind);
+				}
+				if (kind == START || kind == SNAPSHOT) {
+					origin = index;
+				}
+			}
+		} catch (EOFException e) {
+			// the last record was being written: it's dropped.
+		}
+		return origin;
+	}
+
+	private static void skip(DataInput input, int length) throws IOException {
+		if (length < 0) {
+			throw new IOException("Negative length: " + length);
+		}
+		if (input.skipBytes(length) < length) {
+			throw new EOFException();
+		}
+	}
+
+	/**
+	 * Reads the payload of the record having the given header and plays it on
+	 * the given engine, or on a new one if it's the start of the match.
+	 */
+	private static GameEngine apply(GameEngine engine, int header,
+			DataInput input, DeckTemplate template) throws IOException {
+		int kind = header & KIND_MASK;
+		int argument = header >>> ARGUMENT_SHIFT;
+		if (kind == SNAPSHOT) {
+			int length = readSigned(input);
+			if (length < 0) {
+				throw new IOException("Negative snapshot length: " + length);
+			}
+			byte[] snapshot = new byte[length];
+			input.readFully(snapshot);
+			return GameEngine.read(new DataInputStream(new ByteArrayInputStream(
+					snapshot)), template);
+		}
+		if (kind == START) {
+			long seed = input.readLong();
+			int playersNumber = input.readUnsignedByte();
+			GameEngine started = new GameEngine(new Deck(template, seed));
+			try {
+				for (int i = 0; i < playersNumber; i++) {
+					started.addPlayer();
+				}
+			} catch (FullMatchException e) {
+				throw new IOException("Too many players: " + playersNumber);
+			}
+			started.start();
+			return started;
+		}
+		if (engine == null) {
+			throw new IOException("The journal doesn't begin with the match.");
+		}
+		try {
+			switch (kind) {
+			case DRAW:
+				int definition = input.readUnsignedShort();
+				Card card = engine.getCurrentCard();
+				if (card == null || engine.isCardPlaced()
+						|| card.getType().getDefinition() != definition
+						|| card.getRotation() != argument) {
+					throw new IOException("Drawn " + TileType.valueOf(definition)
+							+ " instead of " + card);
+				}
+				break;
+			case PLACE:
+				int x = readSigned(input);
+				int y = readSigned(input);
+				if (engine.getCurrentCard() == null || engine.isCardPlaced()) {
+					throw new IOException("No card to place.");
+				}
+				if (argument >= TileType.ROTATIONS) {
+					throw new IOException("Wrong rotation: " + argument);
+				}
+				while (engine.getCurrentCard().getRotation() != argument) {
+					engine.rotateCard();
+				}
+				engine.placeCurrentCard(new Coordinate(x, y));
+				break;
+			case MARKER:
+				if (argument >= Direction.values().length) {
+					throw new IOException("Wrong marker side: " + argument);
+				}
+				engine.placeMarker(Direction.fromOrdinal(argument));
+				break;
+			case PASS:
+				engine.nextTurn();
+				break;
+			case END:
+				if (!engine.isOver()) {
+					throw new IOException("The match is not over.");
+				}
+				break;
+			default:
+				throw new IOException("Unknown record: " + header);
+			}
+		} catch (InvalidPutException e) {
+			throw new IOException("The placement doesn't fit the board.");
+		} catch (InvalidMarkerPositionException e) {
+			throw new IOException("The marker doesn't fit the board.");
+		} catch (NoMoreMarkersException e) {
+			throw new IOException("The player has no more markers.");
+		} catch (IllegalStateException e) {
+			throw new IOException(e.getMessage());
+		}
+		return engine;
+	}
+}
@@ -0,0 +1,100 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The immutable MatchSnapshot class holds the whole state of a match at a
+ * given moment, taken by {@link GameEngine} in plain numbers: the seed and
+ * position of the {@link Deck}, the score and markers of each player, the
+ * current turn and the tiles in the order they were placed, with their
+ * markers. Taking it only copies those numbers, so that the match can go on
+ * at once: the snapshot is encoded later, as a record of a
+ * {@link MatchJournal}, by the thread of the {@link JournalWriter}.
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public final class MatchSnapshot {
+
+	private final long seed;
+	private final int drawn;
+	private final int[] queued;
+	private final int[] scores;
+	private final int[] markers;
+	private final int current;
+	private final int flags;
+	private final int card;
+	private final int rotation;
+	// definition, details, x and y of each tile
+	private final int[] tiles;
+
+	MatchSnapshot(long seed, int drawn, int[] queued, int[] scores,
+			int[] markers, int current, int flags, int card, int rotation,
+			int[] tiles) {
+		this.seed = seed;
+		this.drawn = drawn;
+		this.queued = queued;
+		this.scores = scores;
+		this.markers = markers;
+		this.current = current;
+		this.flags = flags;
+		this.card = card;
+		this.rotation = rotation;
+		this.tiles = tiles;
+	}
+
+	/**
+	 * Writes the snapshot in the form read by
+	 * {@link GameEngine#read(java.io.DataInput, DeckTemplate)}.
+	 */
+	void write(DataOutput output) throws IOException {
+		output.writeLong(seed);
+		MatchJournal.writeSigned(output, drawn);
+		MatchJournal.writeSigned(output, queued.length);
+		for (int definition : queued) {
+			output.writeShort(definition);
+		}
+		output.writeByte(scores.length);
+		for (int i = 0; i < scores.length; i++) {
+			MatchJournal.writeSigned(output, scores[i]);
+			output.writeByte(markers[i]);
+		}
+		output.writeByte(current);
+		output.writeByte(flags);
+		if (card >= 0) {
+			output.writeShort(card);
+			output.writeByte(rotation);
+		}
+		MatchJournal.writeSigned(output, tiles.length / 4);
+		for (int i = 0; i < tiles.length; i += 4) {
+			output.writeShort(tiles[i]);
+			output.writeByte(tiles[i + 1]);
+			MatchJournal.writeSigned(output, tiles[i + 2]);
+			MatchJournal.writeSigned(output, tiles[i + 3]);
+		}
+	}
+
+	/**
+	 * Encodes the snapshot as a record of a {@link MatchJournal}.
+	 * 
+	 * @return the encoded record
+	 */
+	public byte[] toRecord() {
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			write(new DataOutputStream(payload));
+			DataOutputStream output = new DataOutputStream(bytes);
+			output.writeByte(MatchJournal.SNAPSHOT);
+			MatchJournal.writeSigned(output, payload.size());
+			payload.writeTo(output);
+		} catch (IOException e) {
+			// the streams are in memory: it's never thrown.
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+}
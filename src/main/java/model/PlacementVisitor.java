@@ -0,0 +1,29 @@
+package model;
+
+/**
+ * This Interface is implemented by whoever wants to be told every legal
+ * placement of a tile by {@link Board#forEachPlacement(TileType, PlacementVisitor)}.
+ * Placements are given as plain values so that no object is allocated for
+ * each of them.
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public interface PlacementVisitor {
+
+	/**
+	 * This method is called once for each legal placement of the tile.
+	 * 
+	 * @param x
+	 *            - the x of the {@link Coordinate} where the tile can be put
+	 * @param y
+	 *            - the y of the {@link Coordinate} where the tile can be put
+	 * @param rotation
+	 *            - the number of clockwise rotations of the tile, from 0 to 3
+	 * @param markerDirections
+	 *            - the mask of the sides where a {@link Marker} could be put
+	 *            after the placement (see {@link Direction#mask()})
+	 * @return true to go on with the enumeration, false to stop it
+	 */
+	boolean visit(int x, int y, int rotation, int markerDirections);
+}
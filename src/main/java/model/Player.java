@@ -1,6 +1,10 @@
 package model;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
 /**
  * The Player class represents one player of the game. The state of the class
@@ -10,14 +14,16 @@ import java.io.Serializable;
  * The class allows to get player's color and score, to add points to the score,
  * to clone the player and to get the color throw a string.
  * 
+ * A player is serialized as the ordinal of its color and its score.
+ * 
  * @author Edoardo Galimberti
  * 
  */
 
-public class Player implements Cloneable, Serializable {
+public class Player implements Cloneable, Externalizable {
 
 	private static final long serialVersionUID = -8918866125874629136L;
-	private final PlayerColor color;
+	private PlayerColor color;
 	private int score;
 
 	/**
@@ -33,6 +39,13 @@ public class Player implements Cloneable, Serializable {
 		this.score = 0;
 	}
 
+	/**
+	 * Construct a player without color, to be filled by readExternal(). It's
+	 * only used by deserialization.
+	 */
+	public Player() {
+	}
+
 	/**
 	 * Get player's color.
 	 * 
@@ -61,6 +74,28 @@ public class Player implements Cloneable, Serializable {
 		this.score += add;
 	}
 
+	/**
+	 * Writes the ordinal of the color and the score.
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeByte(color.ordinal());
+		MatchJournal.writeSigned(out, score);
+	}
+
+	/**
+	 * Reads a player written by writeExternal().
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		int ordinal = in.readUnsignedByte();
+		if (ordinal >= PlayerColor.values().length) {
+			throw new InvalidObjectException("Unknown color: " + ordinal);
+		}
+		color = PlayerColor.values()[ordinal];
+		score = MatchJournal.readSigned(in);
+	}
+
 	/**
 	 * Creates and returns a copy of this object.
 	 */
@@ -1,6 +1,9 @@
 package model;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
 /**
  * This class is used to tell to the views in which match they are playing,
@@ -10,15 +13,25 @@ import java.io.Serializable;
  * This class allows to get the player, to get the first card, to get the match
  * name and to get the players number.
  * 
+ * A signal is serialized as its {@link Card}, the game name, its
+ * {@link Player} if any and a byte for the number of players.
+ * 
  * @author Edoardo Galimberti, Guido Gerosa
  */
-public class StartSignal implements Serializable {
+public class StartSignal implements Externalizable {
 
 	private static final long serialVersionUID = -4521739900514859003L;
-	private final Card starterCard;
-	private final String gameName;
-	private final Player player;
-	private final int playersNumber;
+	private Card starterCard;
+	private String gameName;
+	private Player player;
+	private int playersNumber;
+
+	/**
+	 * Construct an empty signal, to be filled by readExternal(). It's only
+	 * used by deserialization.
+	 */
+	public StartSignal() {
+	}
 
 	/**
 	 * 
@@ -75,4 +88,34 @@ public class StartSignal implements Serializable {
 		return playersNumber;
 	}
 
+	/**
+	 * Writes the {@link Card}, the game name, the {@link Player} and the number
+	 * of players.
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		starterCard.writeExternal(out);
+		out.writeUTF(gameName);
+		out.writeBoolean(player != null);
+		if (player != null) {
+			player.writeExternal(out);
+		}
+		out.writeByte(playersNumber);
+	}
+
+	/**
+	 * Reads a signal written by writeExternal().
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		starterCard = new Card();
+		starterCard.readExternal(in);
+		gameName = in.readUTF();
+		if (in.readBoolean()) {
+			player = new Player();
+			player.readExternal(in);
+		}
+		playersNumber = in.readUnsignedByte();
+	}
+
 }
@@ -0,0 +1,465 @@
+package model;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The immutable TileType class represents a kind of tile, that is a
+ * combination of places on the four sides and connections between them.
+ * TileTypes are interned: there's only one instance for each combination, so
+ * every {@link Card} (of every match) showing the same tile shares it. Each
+ * instance has a small int id, assigned in order of creation, that can be used
+ * to index arrays.
+ * 
+ * The definition of a TileType is packed in an int: two bits for the ordinal
+ * of the {@link Place} of each side (by {@link Direction} ordinal) followed by
+ * the six connection flags NS, NE, NW, WE, SE, SW. The class also holds a
+ * lookup table with a code for each of the four rotations: the places of the
+ * sides and, starting from bit 8, four bits for each side with the mask of the
+ * sides connected to it (see {@link Direction#mask()}).
+ * 
+ * Openings of a {@link Board} are described by a signature telling, for each
+ * side, which {@link Place} a tile must have there to match its neighbour: two
+ * bits by {@link Direction} ordinal, 0 if there's no neighbour on that side or
+ * the ordinal of the {@link Place} plus one otherwise. Each TileType computes,
+ * when it's created, the mask of its rotations fitting each signature, so that
+ * checking a placement is a single lookup.
+ * 
+ * @author Edoardo Galimberti, Guido Gerosa
+ * 
+ */
+public final class TileType implements Serializable {
+
+	private static final long serialVersionUID = 2962310740236563839L;
+	private static final Place[] PLACES = Place.values();
+	private static final int PLACE_BITS = 2;
+	private static final int PLACE_MASK = 0x3;
+	private static final int CONNECTIONS_SHIFT = 8;
+	private static final int CROSS_SHIFT = 8;
+	private static final int CROSS_BITS = 4;
+	private static final int CROSS_MASK = 0xF;
+	static final int ROTATIONS = 4;
+	static final int SIGNATURES = 1 << (ROTATIONS * PLACE_BITS);
+	private static final int ALL_ROTATIONS = (1 << ROTATIONS) - 1;
+	private static final Direction[][] CONNECTIONS = {
+			{ Direction.NORTH, Direction.SOUTH },
+			{ Direction.NORTH, Direction.EAST },
+			{ Direction.NORTH, Direction.WEST },
+			{ Direction.WEST, Direction.EAST },
+			{ Direction.SOUTH, Direction.EAST },
+			{ Direction.SOUTH, Direction.WEST } };
+	private static final String[] CONNECTION_NAMES = { "NS", "NE", "NW", "WE",
+			"SE", "SW" };
+
+	private static final Map<Integer, TileType> BY_DEFINITION = new HashMap<Integer, TileType>();
+	private static volatile TileType[] byId = new TileType[0];
+
+	private final transient int id;
+	private final int definition;
+	private final transient int[] codes;
+	private final transient String stringID;
+	// for each signature, the fitting rotations in the low nibble and the
+	// fitting rotations not repeating a lower one in the high nibble
+	private final transient byte[] rotations;
+
+	private TileType(int id, int definition) {
+		this.id = id;
+		this.definition = definition;
+		this.codes = new int[ROTATIONS];
+		this.codes[0] = encode(definition);
+		for (int i = 1; i < ROTATIONS; i++) {
+			this.codes[i] = rotate(this.codes[i - 1]);
+		}
+		this.stringID = format(definition);
+		this.rotations = new byte[SIGNATURES];
+		int distinct = 0;
+		for (int i = 0; i < ROTATIONS; i++) {
+			boolean repeated = false;
+			for (int j = 0; j < i; j++) {
+				repeated |= codes[j] == codes[i];
+			}
+			if (!repeated) {
+				distinct |= 1 << i;
+			}
+		}
+		for (int signature = 0; signature < SIGNATURES; signature++) {
+			int fitting = 0;
+			for (int i = 0; i < ROTATIONS; i++) {
+				if (matches(codes[i], signature)) {
+					fitting |= 1 << i;
+				}
+			}
+			this.rotations[signature] = (byte) (fitting
+					| ((fitting & distinct) << ROTATIONS));
+		}
+	}
+
+	/**
+	 * Returns true if the places of the given code are those required by the
+	 * given signature.
+	 */
+	private static boolean matches(int code, int signature) {
+		for (int i = 0; i < ROTATIONS; i++) {
+			int required = (signature >>> (i * PLACE_BITS)) & PLACE_MASK;
+			if (required != 0
+					&& ((code >>> (i * PLACE_BITS)) & PLACE_MASK) != required - 1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the TileType having the given definition, creating it the first
+	 * time it's requested.
+	 * 
+	 * @param definition
+	 *            - the packed definition of the tile
+	 * @return the only TileType having the given definition
+	 */
+	public static synchronized TileType valueOf(int definition) {
+		TileType type = BY_DEFINITION.get(definition);
+		if (type == null) {
+			TileType[] types = new TileType[byId.length + 1];
+			System.arraycopy(byId, 0, types, 0, byId.length);
+			type = new TileType(byId.length, definition);
+			types[type.id] = type;
+			BY_DEFINITION.put(definition, type);
+			byId = types;
+		}
+		return type;
+	}
+
+	/**
+	 * Returns the TileType described by a string in the format
+	 * "N=N S=S W=S E=C NS=0 NE=1 NW=0 WE=0 SE=0 SW=0".
+	 * 
+	 * @param string
+	 *            - the string describing the tile
+	 * @return the only TileType having the given description
+	 * @throws IllegalArgumentException
+	 *             - if the string is not a description of a tile
+	 */
+	public static TileType valueOf(String string) {
+		return valueOf(parseDefinition(string));
+	}
+
+	/**
+	 * Reads the packed definition of a tile from a string made of "KEY=VALUE"
+	 * items separated by blanks, in any order: each side (N, S, W, E) must be
+	 * given once with the first letter of its {@link Place}, while each
+	 * connection (NS, NE, NW, WE, SE, SW) may be given once as 0 or 1 and is 0
+	 * if missing.
+	 * 
+	 * @param string
+	 *            - the string describing the tile
+	 * @return the packed definition of the tile
+	 * @throws IllegalArgumentException
+	 *             - if the string is not a description of a tile
+	 */
+	static int parseDefinition(String string) {
+		Direction[] sides = { Direction.NORTH, Direction.SOUTH,
+				Direction.WEST, Direction.EAST };
+		int definition = 0;
+		int given = 0;
+		for (String item : string.trim().split("\\s+")) {
+			int equals = item.indexOf('=');
+			if (equals < 0 || equals != item.length() - 2) {
+				throw new IllegalArgumentException("Bad item: " + item);
+			}
+			String key = item.substring(0, equals);
+			char value = item.charAt(equals + 1);
+			int bit = -1;
+			for (Direction side : sides) {
+				if (key.equals(side.toString())) {
+					bit = side.ordinal();
+					definition |= Place.read(value).ordinal() << (bit * PLACE_BITS);
+				}
+			}
+			for (int i = 0; i < CONNECTION_NAMES.length && bit < 0; i++) {
+				if (key.equals(CONNECTION_NAMES[i])) {
+					bit = ROTATIONS + i;
+					if (value == '1') {
+						definition |= 1 << (CONNECTIONS_SHIFT + i);
+					} else if (value != '0') {
+						throw new IllegalArgumentException("Bad item: " + item);
+					}
+				}
+			}
+			if (bit < 0 || (given & (1 << bit)) != 0) {
+				throw new IllegalArgumentException("Unknown or repeated item: "
+						+ item);
+			}
+			given |= 1 << bit;
+		}
+		if ((given & ((1 << ROTATIONS) - 1)) != (1 << ROTATIONS) - 1) {
+			throw new IllegalArgumentException("Missing side: " + string);
+		}
+		return definition;
+	}
+
+	/**
+	 * Returns why the given packed definition doesn't describe a real tile,
+	 * or null if it does: connected sides must show the same {@link Place},
+	 * which can't be NOTHING, and the sides connected to the same side must be
+	 * connected to each other.
+	 * 
+	 * @param definition
+	 *            - the packed definition of a tile
+	 * @return the reason the definition is wrong, or null
+	 */
+	static String check(int definition) {
+		if ((definition & ~((1 << (CONNECTIONS_SHIFT + CONNECTIONS.length)) - 1)) != 0) {
+			return "unknown bits in the definition";
+		}
+		boolean[][] connected = new boolean[ROTATIONS][ROTATIONS];
+		for (int i = 0; i < CONNECTIONS.length; i++) {
+			if ((definition & (1 << (CONNECTIONS_SHIFT + i))) != 0) {
+				int a = CONNECTIONS[i][0].ordinal();
+				int b = CONNECTIONS[i][1].ordinal();
+				Place place = PLACES[(definition >>> (a * PLACE_BITS))
+						& PLACE_MASK];
+				if (place == Place.NOTHING
+						|| place != PLACES[(definition >>> (b * PLACE_BITS))
+								& PLACE_MASK]) {
+					return CONNECTION_NAMES[i]
+							+ " connects sides not showing the same place";
+				}
+				connected[a][b] = true;
+				connected[b][a] = true;
+			}
+		}
+		for (int a = 0; a < ROTATIONS; a++) {
+			for (int b = 0; b < ROTATIONS; b++) {
+				for (int c = 0; c < ROTATIONS; c++) {
+					if (a != c && connected[a][b] && connected[b][c]
+							&& !connected[a][c]) {
+						return Direction.fromOrdinal(a) + " and "
+								+ Direction.fromOrdinal(c)
+								+ " are connected through "
+								+ Direction.fromOrdinal(b) + " but not directly";
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the TileType having the given places and connections.
+	 * 
+	 * @param n
+	 *            Place in North
+	 * @param s
+	 *            Place in South
+	 * @param w
+	 *            Place in West
+	 * @param e
+	 *            Place in East
+	 * @param connections
+	 *            the NS, NE, NW, WE, SE, SW connection flags
+	 * @return the only TileType having the given places and connections
+	 */
+	public static TileType valueOf(Place n, Place s, Place w, Place e,
+			boolean... connections) {
+		int definition = (n.ordinal() << (Direction.NORTH.ordinal() * PLACE_BITS))
+				| (s.ordinal() << (Direction.SOUTH.ordinal() * PLACE_BITS))
+				| (w.ordinal() << (Direction.WEST.ordinal() * PLACE_BITS))
+				| (e.ordinal() << (Direction.EAST.ordinal() * PLACE_BITS));
+		for (int i = 0; i < CONNECTIONS.length; i++) {
+			if (connections[i]) {
+				definition |= 1 << (CONNECTIONS_SHIFT + i);
+			}
+		}
+		return valueOf(definition);
+	}
+
+	/**
+	 * Returns the TileType having the given id.
+	 * 
+	 * @param id
+	 *            - the id of the TileType
+	 * @return the TileType having the given id
+	 */
+	public static TileType get(int id) {
+		return byId[id];
+	}
+
+	/**
+	 * Returns the number of TileTypes created so far. Every id is lower than
+	 * this number.
+	 * 
+	 * @return the number of TileTypes created so far
+	 */
+	public static int count() {
+		return byId.length;
+	}
+
+	private static int encode(int definition) {
+		int code = definition & ((1 << CONNECTIONS_SHIFT) - 1);
+		for (int i = 0; i < CONNECTIONS.length; i++) {
+			if ((definition & (1 << (CONNECTIONS_SHIFT + i))) != 0) {
+				Direction a = CONNECTIONS[i][0];
+				Direction b = CONNECTIONS[i][1];
+				code |= b.mask() << (CROSS_SHIFT + a.ordinal() * CROSS_BITS);
+				code |= a.mask() << (CROSS_SHIFT + b.ordinal() * CROSS_BITS);
+			}
+		}
+		// nothing is never connected to anything.
+		for (int i = 0; i < ROTATIONS; i++) {
+			if (PLACES[(code >>> (i * PLACE_BITS)) & PLACE_MASK] == Place.NOTHING) {
+				code &= ~(CROSS_MASK << (CROSS_SHIFT + i * CROSS_BITS));
+			}
+		}
+		return code;
+	}
+
+	/**
+	 * Returns the code of the tile rotated by 90 degrees clockwise.
+	 */
+	private static int rotate(int code) {
+		int rotated = 0;
+		for (int i = 0; i < ROTATIONS; i++) {
+			int to = Direction.fromOrdinal(i).clockWise().ordinal();
+			rotated |= ((code >>> (i * PLACE_BITS)) & PLACE_MASK) << (to * PLACE_BITS);
+			int cross = (code >>> (CROSS_SHIFT + i * CROSS_BITS)) & CROSS_MASK;
+			int rotatedCross = 0;
+			for (int j = 0; j < ROTATIONS; j++) {
+				if ((cross & (1 << j)) != 0) {
+					rotatedCross |= Direction.fromOrdinal(j).clockWise().mask();
+				}
+			}
+			rotated |= rotatedCross << (CROSS_SHIFT + to * CROSS_BITS);
+		}
+		return rotated;
+	}
+
+	private static String format(int definition) {
+		StringBuilder builder = new StringBuilder();
+		Direction[] sides = { Direction.NORTH, Direction.SOUTH,
+				Direction.WEST, Direction.EAST };
+		for (Direction side : sides) {
+			builder.append(side).append('=')
+					.append(PLACES[(definition >>> (side.ordinal() * PLACE_BITS))
+							& PLACE_MASK].firstLetter()).append(' ');
+		}
+		for (int i = 0; i < CONNECTIONS.length; i++) {
+			builder.append(CONNECTION_NAMES[i]).append('=')
+					.append((definition >>> (CONNECTIONS_SHIFT + i)) & 1);
+			if (i < CONNECTIONS.length - 1) {
+				builder.append(' ');
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Returns the id of this TileType.
+	 * 
+	 * @return the id of this TileType
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the packed definition of this TileType.
+	 * 
+	 * @return the packed definition of this TileType
+	 */
+	public int getDefinition() {
+		return definition;
+	}
+
+	/**
+	 * Returns the code of this TileType when rotated the given number of times.
+	 * 
+	 * @param rotation
+	 *            - the number of clockwise rotations, from 0 to 3
+	 * @return the code of the rotated tile
+	 */
+	public int getCode(int rotation) {
+		return codes[rotation];
+	}
+
+	/**
+	 * Returns the {@link Place} on the given side of the tile rotated the given
+	 * number of times.
+	 * 
+	 * @param rotation
+	 *            - the number of clockwise rotations, from 0 to 3
+	 * @param direction
+	 *            - the side of the tile
+	 * @return the {@link Place} on the given side
+	 */
+	public Place getPlace(int rotation, Direction direction) {
+		return PLACES[(codes[rotation] >>> (direction.ordinal() * PLACE_BITS))
+				& PLACE_MASK];
+	}
+
+	/**
+	 * Returns the mask of the sides connected to the given one when the tile
+	 * is rotated the given number of times.
+	 * 
+	 * @param rotation
+	 *            - the number of clockwise rotations, from 0 to 3
+	 * @param direction
+	 *            - the side of the tile
+	 * @return the mask of the connected sides
+	 */
+	public int cross(int rotation, Direction direction) {
+		return (codes[rotation] >>> (CROSS_SHIFT + direction.ordinal()
+				* CROSS_BITS))
+				& CROSS_MASK;
+	}
+
+	/**
+	 * Returns true if this TileType, rotated the given number of times, can be
+	 * put in an opening having the given signature.
+	 * 
+	 * @param rotation
+	 *            - the number of clockwise rotations, from 0 to 3
+	 * @param signature
+	 *            - the signature of the opening
+	 * @return true if the rotated tile matches the neighbours of the opening
+	 */
+	public boolean fits(int rotation, int signature) {
+		return (rotations[signature] & (1 << rotation)) != 0;
+	}
+
+	/**
+	 * Returns the mask of the rotations of this TileType that can be put in an
+	 * opening having the given signature. Rotations showing the same tile as a
+	 * lower one are left out, so symmetric tiles give no duplicates.
+	 * 
+	 * @param signature
+	 *            - the signature of the opening
+	 * @return the mask of the fitting rotations, bit i for i rotations
+	 */
+	public int getRotations(int signature) {
+		return (rotations[signature] >>> ROTATIONS) & ALL_ROTATIONS;
+	}
+
+	/**
+	 * Get the string representation of the tile, in the same format read by
+	 * valueOf(String).
+	 * 
+	 * @return stringID
+	 */
+	public String getStringID() {
+		return stringID;
+	}
+
+	/**
+	 * Replaces a deserialized TileType with the interned one.
+	 */
+	private Object readResolve() {
+		return valueOf(definition);
+	}
+
+	@Override
+	public String toString() {
+		return stringID;
+	}
+}
@@ -0,0 +1,109 @@
+package model;
+
+/**
+ * The TranspositionTable class stores a value for each position reached, keyed
+ * by the hash of its {@link Board} (see {@link Board#getHash()}), so that
+ * positions reached by different orders of the same moves are evaluated only
+ * once. The table has a fixed number of slots and a new entry replaces the one
+ * in its slot, hence a lookup may miss a position stored long before but never
+ * returns the value of another position unless their hashes are equal.
+ * 
+ * @author Guido Gerosa
+ * 
+ * @param <V>
+ *            the type of the values
+ */
+public final class TranspositionTable<V> {
+
+	private final long[] keys;
+	private final Object[] values;
+	private final int mask;
+	private int size = 0;
+
+	/**
+	 * Creates a table having at least the given number of slots, rounded up to
+	 * a power of two.
+	 * 
+	 * @param capacity
+	 *            - the minimum number of slots
+	 */
+	public TranspositionTable(int capacity) {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		int slots = Integer.highestOneBit(capacity);
+		if (slots < capacity) {
+			slots <<= 1;
+		}
+		keys = new long[slots];
+		values = new Object[slots];
+		mask = slots - 1;
+	}
+
+	private int slotOf(long hash) {
+		// the low bits of a Zobrist hash are already random
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	/**
+	 * Returns the value stored for the given hash, or null if there's none.
+	 * 
+	 * @param hash
+	 *            - the hash of the position
+	 * @return the value stored or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long hash) {
+		int slot = slotOf(hash);
+		return keys[slot] == hash ? (V) values[slot] : null;
+	}
+
+	/**
+	 * Stores the given value for the given hash, replacing whatever was in its
+	 * slot.
+	 * 
+	 * @param hash
+	 *            - the hash of the position
+	 * @param value
+	 *            - the value to store, not null
+	 */
+	public void put(long hash, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not allowed.");
+		}
+		int slot = slotOf(hash);
+		if (values[slot] == null) {
+			size++;
+		}
+		keys[slot] = hash;
+		values[slot] = value;
+	}
+
+	/**
+	 * Returns the number of slots in use.
+	 * 
+	 * @return the number of slots in use
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of slots.
+	 * 
+	 * @return the number of slots
+	 */
+	public int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Empties the table.
+	 */
+	public void clear() {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = null;
+		}
+		size = 0;
+	}
+}
@@ -0,0 +1,130 @@
+package model;
+
+/**
+ * The UndoLog class records the changes made to a {@link Board} and its
+ * {@link ZonesHandler} so that they can be reverted, last first, down to a
+ * given mark. Each change is stored as an operation code with a long, an int
+ * and two object operands in parallel arrays, and is reverted by the
+ * {@link Undoer} that recorded it.
+ *
+ * Nothing is recorded while a rollback is in progress, so the undoers can
+ * use the same methods that record the changes.
+ *
+ * @author Guido Gerosa
+ *
+ */
+final class UndoLog {
+
+	/**
+	 * This Interface is implemented by the classes whose changes are recorded
+	 * in an {@link UndoLog}.
+	 */
+	interface Undoer {
+
+		/**
+		 * Reverts a change recorded with the given operands.
+		 */
+		void undo(int operation, long key, int value, Object first,
+				Object second);
+	}
+
+	private static final int MIN_CAPACITY = 64;
+	private Undoer[] undoers = new Undoer[MIN_CAPACITY];
+	private int[] operations = new int[MIN_CAPACITY];
+	private long[] keys = new long[MIN_CAPACITY];
+	private int[] values = new int[MIN_CAPACITY];
+	private Object[] firsts = new Object[MIN_CAPACITY];
+	private Object[] seconds = new Object[MIN_CAPACITY];
+	private int size = 0;
+	private boolean rollingBack = false;
+
+	/**
+	 * Records a change that the given {@link Undoer} will revert.
+	 *
+	 * @param undoer
+	 *            - the {@link Undoer} reverting the change
+	 * @param operation
+	 *            - the kind of change, as defined by the undoer
+	 * @param key
+	 *            - a long operand
+	 * @param value
+	 *            - an int operand
+	 * @param first
+	 *            - an object operand, or null
+	 * @param second
+	 *            - an object operand, or null
+	 */
+	void record(Undoer undoer, int operation, long key, int value,
+			Object first, Object second) {
+		if (rollingBack) {
+			return;
+		}
+		if (size == operations.length) {
+			grow();
+		}
+		undoers[size] = undoer;
+		operations[size] = operation;
+		keys[size] = key;
+		values[size] = value;
+		firsts[size] = first;
+		seconds[size] = second;
+		size++;
+	}
+
+	private void grow() {
+		int capacity = operations.length * 2;
+		Undoer[] newUndoers = new Undoer[capacity];
+		int[] newOperations = new int[capacity];
+		long[] newKeys = new long[capacity];
+		int[] newValues = new int[capacity];
+		Object[] newFirsts = new Object[capacity];
+		Object[] newSeconds = new Object[capacity];
+		System.arraycopy(undoers, 0, newUndoers, 0, size);
+		System.arraycopy(operations, 0, newOperations, 0, size);
+		System.arraycopy(keys, 0, newKeys, 0, size);
+		System.arraycopy(values, 0, newValues, 0, size);
+		System.arraycopy(firsts, 0, newFirsts, 0, size);
+		System.arraycopy(seconds, 0, newSeconds, 0, size);
+		undoers = newUndoers;
+		operations = newOperations;
+		keys = newKeys;
+		values = newValues;
+		firsts = newFirsts;
+		seconds = newSeconds;
+	}
+
+	/**
+	 * Returns the number of changes recorded, to be used as a mark for
+	 * rollback().
+	 *
+	 * @return the number of changes recorded
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Reverts the changes recorded after the given mark, last first.
+	 *
+	 * @param mark
+	 *            - the size() of the log when the mark was taken
+	 */
+	void rollback(int mark) {
+		if (mark < 0 || mark > size) {
+			throw new IllegalArgumentException("Unknown mark: " + mark);
+		}
+		rollingBack = true;
+		try {
+			while (size > mark) {
+				size--;
+				undoers[size].undo(operations[size], keys[size], values[size],
+						firsts[size], seconds[size]);
+				undoers[size] = null;
+				firsts[size] = null;
+				seconds[size] = null;
+			}
+		} finally {
+			rollingBack = false;
+		}
+	}
+}
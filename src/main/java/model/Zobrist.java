@@ -0,0 +1,52 @@
+package model;
+
+/**
+ * The Zobrist class gives the 64 bit keys whose exclusive or is the hash of a
+ * {@link Board}: one key for each tile put and one for each {@link Marker} on
+ * it. Since the {@link Board} has no bounds the keys are not drawn from a
+ * table but computed by a strong mix of what they stand for, which spreads
+ * them as well as random numbers would.
+ * 
+ * A tile is keyed by the sides and connections it shows (see
+ * {@link TileType#getCode(int)}), so symmetric rotations of the same tile give
+ * the same key, as do equal tiles read from different lines of the deck.
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+final class Zobrist {
+
+	private static final long TILE = 0x3C6EF372FE94F82BL;
+	private static final long MARKER = 0xA54FF53A5F1D36F1L;
+
+	private Zobrist() {
+	}
+
+	/**
+	 * Returns the key of a tile showing the given code in the given packed
+	 * {@link Coordinate}.
+	 */
+	static long tile(long coordinate, int code) {
+		return mix(mix(coordinate ^ TILE) + code);
+	}
+
+	/**
+	 * Returns the key of a {@link Marker} of the given color put on the given
+	 * side of the tile in the given packed {@link Coordinate}.
+	 */
+	static long marker(long coordinate, PlayerColor color, Direction side) {
+		return mix(mix(coordinate ^ MARKER)
+				+ (color.ordinal() * Direction.values().length + side
+						.ordinal()));
+	}
+
+	/**
+	 * The finalizer of SplitMix64: a bijection whose output bits depend on
+	 * every input bit.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
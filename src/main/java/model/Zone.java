@@ -9,6 +9,16 @@ import java.util.*;
  * {@link Zone} can be expanded. It provides methods to allow merging of Zones
  * and calculate the score of the zone.
  * 
+ * The number of elements on each tile and the number of {@link Marker}s of
+ * each player are kept up to date at each change, so that getScore() and
+ * getRulers() don't need to walk the elements or the markers.
+ * 
+ * A {@link Zone} may also be given a ledger of pending points by
+ * {@link PlayerColor} ordinal, shared with the other {@link Zone}s of the
+ * same {@link Board}: after each change the {@link Zone} takes back from it
+ * what it gave before and gives its rulers what they would get if the match
+ * ended now (see settle()).
+ * 
  * @author Guido Gerosa
  * 
  */
@@ -17,8 +27,21 @@ public class Zone {
 
 	private Set<Position> elements = new HashSet<Position>();
 	private Set<Position> perimeter = new HashSet<Position>();
-	private Collection<Marker> markers = new ArrayList<Marker>();
+	private List<Marker> markers = new ArrayList<Marker>();
+	// packed coordinates of the covered tiles mapped to their elements
+	private LongIntMap tileCounts = new LongIntMap();
+	// markers and their owner by color ordinal, and the highest count
+	private final int[] markerCounts = new int[PlayerColor.values().length];
+	private final Player[] owners = new Player[PlayerColor.values().length];
+	private int maxMarkerCount = 0;
+	// the ledger and what this zone gives to each of the rulers in the mask
+	private int[] ledger = null;
+	private int pendingValue = 0;
+	private int pendingRulers = 0;
 	private Place landType;
+	private Zone parent = this;
+	private long[] compactedTiles = null;
+	private byte[] compactedSides = null;
 
 	/**
 	 * Creates a new {@link Zone} by passing a {@link Set} of {@link Position}
@@ -33,7 +56,9 @@ public class Zone {
 	 *            - a {@link Place} representing the landType
 	 */
 	public Zone(Set<Position> perimeter, Place landType) {
-		this.elements.addAll(perimeter);
+		for (Position position : perimeter) {
+			addElement(position);
+		}
 		this.perimeter.addAll(perimeter);
 		this.landType = landType;
 	}
@@ -77,11 +102,20 @@ public class Zone {
 	 * @return the actual score given by this {@link Zone}
 	 */
 	public Integer getScore() {
-		Set<Coordinate> touchedTiles = new HashSet<Coordinate>();
-		for (Position element : elements) {
-			touchedTiles.add(element.getCoordinate());
+		return getTilesCount() * landType.value();
+	}
+
+	/**
+	 * Returns the number of different {@link Coordinate}s covered by this
+	 * {@link Zone} (also the partially covered ones).
+	 * 
+	 * @return the number of tiles covered by this {@link Zone}
+	 */
+	public int getTilesCount() {
+		if (compactedTiles != null) {
+			return compactedTiles.length;
 		}
-		return touchedTiles.size() * landType.value();
+		return tileCounts.size();
 	}
 
 	/**
@@ -92,8 +126,16 @@ public class Zone {
 	 */
 	public Set<Coordinate> getCoveredCoordinates() {
 		Set<Coordinate> touched = new HashSet<Coordinate>();
-		for (Position position : elements) {
-			touched.add(position.getCoordinate());
+		if (compactedTiles != null) {
+			for (long tile : compactedTiles) {
+				touched.add(Coordinate.unpack(tile));
+			}
+			return touched;
+		}
+		for (int slot = 0; slot < tileCounts.capacity(); slot++) {
+			if (tileCounts.isUsed(slot)) {
+				touched.add(Coordinate.unpack(tileCounts.keyAt(slot)));
+			}
 		}
 		return touched;
 	}
@@ -105,27 +147,141 @@ public class Zone {
 	 * @return the {@link Player}s that rules the {@link Zone}
 	 */
 	public Collection<Player> getRulers() {
-		Map<Player, Integer> counters = new HashMap<Player, Integer>();
-		Integer maxMarkerCount = 0;
-		for (Marker marker : markers) {
-			Player player = marker.getOwner();
-			if (counters.containsKey(player)) {
-				Integer incrementedCount = counters.get(player) + 1;
-				counters.put(player, incrementedCount);
-				if (incrementedCount > maxMarkerCount) {
-					maxMarkerCount = incrementedCount;
+		Collection<Player> rulers = new ArrayList<Player>();
+		if (maxMarkerCount > 0) {
+			for (int i = 0; i < markerCounts.length; i++) {
+				if (markerCounts[i] == maxMarkerCount) {
+					rulers.add(owners[i]);
 				}
-			} else {
-				counters.put(player, 0);
 			}
 		}
-		Collection<Player> rulers = new ArrayList<Player>();
-		for (Map.Entry<Player, Integer> counter : counters.entrySet()) {
-			if (counter.getValue() == maxMarkerCount) {
-				rulers.add(counter.getKey());
+		return rulers;
+	}
+
+	/**
+	 * Returns the number of {@link Marker}s the given {@link Player} has on
+	 * this {@link Zone}.
+	 * 
+	 * @param player
+	 *            - the {@link Player}
+	 * @return the number of {@link Marker}s of the {@link Player}
+	 */
+	public int getMarkerCount(Player player) {
+		return markerCounts[player.getColor().ordinal()];
+	}
+
+	/**
+	 * Sets the ledger of pending points this {@link Zone} contributes to.
+	 * 
+	 * @param ledger
+	 *            - the pending points by {@link PlayerColor} ordinal
+	 */
+	void setLedger(int[] ledger) {
+		this.ledger = ledger;
+		settle();
+	}
+
+	/**
+	 * Updates the ledger with the points this {@link Zone} would give to its
+	 * rulers if the match ended now: its whole score if it's a street or it's
+	 * completed, half of it otherwise, and nothing if it's not ruled or it has
+	 * been merged into another {@link Zone}. A completed {@link Zone} stops
+	 * giving points when its markers are removed, that is when the points
+	 * have been added to the scores.
+	 */
+	private void settle() {
+		if (ledger == null || (maxMarkerCount == 0 && pendingRulers == 0)) {
+			return;
+		}
+		int value = 0;
+		int rulers = 0;
+		if (parent == this && maxMarkerCount > 0) {
+			value = getScore();
+			if (!isCompleted() && landType != Place.STREET) {
+				value /= 2;
+			}
+			for (int i = 0; i < markerCounts.length; i++) {
+				if (markerCounts[i] == maxMarkerCount) {
+					rulers |= 1 << i;
+				}
 			}
 		}
-		return rulers;
+		if (value == pendingValue && rulers == pendingRulers) {
+			return;
+		}
+		for (int i = 0; i < markerCounts.length; i++) {
+			if ((pendingRulers & 1 << i) != 0) {
+				ledger[i] -= pendingValue;
+			}
+			if ((rulers & 1 << i) != 0) {
+				ledger[i] += value;
+			}
+		}
+		pendingValue = value;
+		pendingRulers = rulers;
+	}
+
+	/**
+	 * Adds the given {@link Position} to the elements, counting it on its
+	 * tile.
+	 */
+	private boolean addElement(Position position) {
+		if (elements.add(position)) {
+			tileCounts.add(position.getCoordinate().pack(), 1);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes the given {@link Position} from the elements, forgetting its
+	 * tile when it was the last element there.
+	 */
+	private boolean removeElement(Position position) {
+		if (elements.remove(position)) {
+			long tile = position.getCoordinate().pack();
+			if (tileCounts.add(tile, -1) == 0) {
+				tileCounts.remove(tile);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the given {@link Marker} to the list, counting it for its owner.
+	 */
+	private void addToMarkers(Marker marker) {
+		markers.add(marker);
+		int color = marker.getOwner().getColor().ordinal();
+		owners[color] = marker.getOwner();
+		markerCounts[color]++;
+		if (markerCounts[color] > maxMarkerCount) {
+			maxMarkerCount = markerCounts[color];
+		}
+	}
+
+	/**
+	 * Empties the list of {@link Marker}s and their counts.
+	 */
+	private void clearMarkers() {
+		markers = new ArrayList<Marker>();
+		Arrays.fill(markerCounts, 0);
+		Arrays.fill(owners, null);
+		maxMarkerCount = 0;
+	}
+
+	/**
+	 * Removes the last {@link Marker} of the list and its count, looking for
+	 * the new highest count among the players.
+	 */
+	private void removeLastFromMarkers() {
+		Marker removed = markers.remove(markers.size() - 1);
+		markerCounts[removed.getOwner().getColor().ordinal()]--;
+		maxMarkerCount = 0;
+		for (int count : markerCounts) {
+			maxMarkerCount = Math.max(maxMarkerCount, count);
+		}
 	}
 
 	/**
@@ -146,10 +302,167 @@ public class Zone {
 	 */
 	public void merge(Zone zone) {
 		if (zone != this) {
-			this.elements.addAll(zone.elements);
+			for (Position element : zone.elements) {
+				addElement(element);
+			}
 			this.perimeter.addAll(zone.perimeter);
-			this.markers.addAll(zone.markers);
+			for (Marker marker : zone.markers) {
+				addToMarkers(marker);
+			}
+			settle();
+		}
+	}
+
+	/**
+	 * Returns the {@link Zone} representing the set this {@link Zone} belongs
+	 * to, that is this {@link Zone} itself unless it has been merged into
+	 * another one by absorb(). The path followed is compressed so that next
+	 * lookups are faster.
+	 * 
+	 * @return the {@link Zone} this one has been merged into, if any, or this
+	 */
+	Zone find() {
+		Zone root = root();
+		Zone node = this;
+		while (node.parent != root) {
+			Zone next = node.parent;
+			node.parent = root;
+			node = next;
 		}
+		return root;
+	}
+
+	/**
+	 * Returns the {@link Zone} representing the set this {@link Zone} belongs
+	 * to like find(), without compressing the path followed. Links between
+	 * {@link Zone}s are left as they are, so that they can be undone.
+	 * 
+	 * @return the {@link Zone} this one has been merged into, if any, or this
+	 */
+	Zone root() {
+		Zone root = this;
+		while (root.parent != root) {
+			root = root.parent;
+		}
+		return root;
+	}
+
+	/**
+	 * Merges the given {@link Zone} in this one and links it to this, so that
+	 * its find() returns this {@link Zone}. The sets of the absorbed
+	 * {@link Zone} are released since this one holds a copy of them, unless
+	 * they are needed to undo the merge.
+	 * 
+	 * @param zone
+	 *            - the {@link Zone} to absorb, that must be a root
+	 * @param release
+	 *            - false to keep the sets of the absorbed {@link Zone} for
+	 *            unabsorb()
+	 */
+	void absorb(Zone zone, boolean release) {
+		if (zone != this) {
+			merge(zone);
+			zone.parent = this;
+			if (release) {
+				zone.elements = Collections.emptySet();
+				zone.perimeter = Collections.emptySet();
+				zone.tileCounts = new LongIntMap();
+				zone.clearMarkers();
+			}
+			zone.settle();
+		}
+	}
+
+	/**
+	 * Reverts absorb(zone, false): the elements, perimeter and markers of the
+	 * given {@link Zone} are taken back from this one, that must not have
+	 * changed since, and the {@link Zone} is a root again.
+	 * 
+	 * @param zone
+	 *            - the absorbed {@link Zone}
+	 * @param markerCount
+	 *            - the number of markers of this {@link Zone} before the merge
+	 */
+	void unabsorb(Zone zone, int markerCount) {
+		for (Position element : zone.elements) {
+			removeElement(element);
+		}
+		perimeter.removeAll(zone.perimeter);
+		while (markers.size() > markerCount) {
+			removeLastFromMarkers();
+		}
+		zone.parent = zone;
+		settle();
+		zone.settle();
+	}
+
+	/**
+	 * Returns the number of {@link Marker}s on this {@link Zone}.
+	 * 
+	 * @return the number of {@link Marker}s on this {@link Zone}
+	 */
+	int markerCount() {
+		return markers.size();
+	}
+
+	/**
+	 * Removes the given {@link Position} from the elements of this
+	 * {@link Zone}, undoing add().
+	 * 
+	 * @param position
+	 *            - the {@link Position} to remove
+	 * @return true if the {@link Position} was an element
+	 */
+	boolean remove(Position position) {
+		boolean removed = removeElement(position);
+		settle();
+		return removed;
+	}
+
+	/**
+	 * Adds the given {@link Position}, that must already be an element, to the
+	 * perimeter of this {@link Zone}, undoing perimeterRemove().
+	 * 
+	 * @param position
+	 *            - the {@link Position} to add
+	 * @return true if the perimeter did not already contain the
+	 *         {@link Position}
+	 */
+	boolean perimeterAdd(Position position) {
+		boolean added = perimeter.add(position);
+		settle();
+		return added;
+	}
+
+	/**
+	 * Puts back the given {@link Marker}s, undoing removeMarkers().
+	 * 
+	 * @param removed
+	 *            - the {@link Marker}s returned by removeMarkers()
+	 */
+	void restoreMarkers(Collection<Marker> removed) {
+		clearMarkers();
+		for (Marker marker : removed) {
+			addToMarkers(marker);
+		}
+		settle();
+	}
+
+	/**
+	 * Removes the last {@link Marker} added, undoing addMarker().
+	 */
+	void removeLastMarker() {
+		removeLastFromMarkers();
+		settle();
+	}
+
+	/**
+	 * Returns the number of {@link Position}s covered by this {@link Zone}.
+	 * 
+	 * @return the number of {@link Position}s covered by this {@link Zone}
+	 */
+	int size() {
+		return elements.size();
 	}
 
 	/**
@@ -160,7 +473,8 @@ public class Zone {
 	 *            - the {@link Marker} to be added.
 	 */
 	public void forceMarker(Marker marker) {
-		this.markers.add(marker);
+		addToMarkers(marker);
+		settle();
 	}
 
 	/**
@@ -174,7 +488,8 @@ public class Zone {
 	 */
 	public void addMarker(Marker marker) throws InvalidMarkerPositionException {
 		if (!this.isRuled()) {
-			this.markers.add(marker);
+			addToMarkers(marker);
+			settle();
 		} else {
 			throw new InvalidMarkerPositionException();
 		}
@@ -188,7 +503,9 @@ public class Zone {
 	 * @return true if successful
 	 */
 	public boolean perimeterRemove(Position position) {
-		return perimeter.remove(position);
+		boolean removed = perimeter.remove(position);
+		settle();
+		return removed;
 	}
 
 	/**
@@ -200,7 +517,9 @@ public class Zone {
 	 *         element
 	 */
 	public boolean add(Position position) {
-		return elements.add(position);
+		boolean added = addElement(position);
+		settle();
+		return added;
 	}
 
 	/**
@@ -212,7 +531,9 @@ public class Zone {
 	 *         contain the specified element
 	 */
 	public boolean addToPerimeter(Position position) {
-		return (elements.add(position) && perimeter.add(position));
+		boolean added = addElement(position) && perimeter.add(position);
+		settle();
+		return added;
 
 	}
 
@@ -225,9 +546,54 @@ public class Zone {
 	 * @return true if the given {@link Position} is covered
 	 */
 	public boolean covers(Position position) {
+		if (compactedTiles != null) {
+			int tile = Arrays.binarySearch(compactedTiles, position
+					.getCoordinate().pack());
+			return tile >= 0
+					&& (compactedSides[tile] & position.getDirection().mask()) != 0;
+		}
 		return elements.contains(position);
 	}
 
+	/**
+	 * Collapses this {@link Zone} in a compact summary: the sorted packed
+	 * {@link Coordinate}s of the covered tiles, each with the mask of the
+	 * covered sides. The sets of {@link Position}s are released, so this must
+	 * only be done on completed {@link Zone}s that won't change anymore.
+	 */
+	void compact() {
+		long[] tiles = new long[tileCounts.size()];
+		int count = 0;
+		for (int slot = 0; slot < tileCounts.capacity(); slot++) {
+			if (tileCounts.isUsed(slot)) {
+				tiles[count++] = tileCounts.keyAt(slot);
+			}
+		}
+		Arrays.sort(tiles);
+		compactedTiles = tiles;
+		compactedSides = new byte[count];
+		for (Position element : elements) {
+			int tile = Arrays.binarySearch(compactedTiles, element
+					.getCoordinate().pack());
+			compactedSides[tile] |= element.getDirection().mask();
+		}
+		elements = Collections.emptySet();
+		perimeter = Collections.emptySet();
+		tileCounts = null;
+		clearMarkers();
+		settle();
+	}
+
+	/**
+	 * Returns true if this {@link Zone} has been collapsed in a compact
+	 * summary.
+	 * 
+	 * @return true if this {@link Zone} has been compacted
+	 */
+	public boolean isCompacted() {
+		return compactedTiles != null;
+	}
+
 	/**
 	 * Sets the {@link Place} of this {@link Zone}
 	 * 
@@ -236,6 +602,7 @@ public class Zone {
 	 */
 	public void setPlace(Place landType) {
 		this.landType = landType;
+		settle();
 	}
 
 	/**
@@ -247,7 +614,8 @@ public class Zone {
 	 */
 	public Collection<Marker> removeMarkers() {
 		Collection<Marker> toReturn = markers;
-		markers = new ArrayList<Marker>();
+		clearMarkers();
+		settle();
 		return toReturn;
 	}
 
@@ -256,6 +624,9 @@ public class Zone {
 	 */
 	@Override
 	public String toString() {
+		if (compactedTiles != null) {
+			return "Zone [tiles=" + getCoveredCoordinates() + "]";
+		}
 		return "Zone [elements=" + elements + "]";
 	}
 
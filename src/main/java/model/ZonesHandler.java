@@ -7,13 +7,75 @@ import java.util.*;
  * of the {@link Zone} that are formed by adding new {@link Card}s to the
  * {@link Board}.
  * 
+ * Zones are kept as disjoint sets: merging two {@link Zone}s links the smaller
+ * one to the bigger one (see {@link Zone#find()}), and every {@link Position}
+ * covered by a {@link Zone} is indexed so that the {@link Zone} having it is
+ * found without scanning the others. The index maps each packed
+ * {@link Coordinate} to the {@link Zone}s of its sides, by {@link Direction}
+ * ordinal, so that lookups don't allocate.
+ * 
+ * When an {@link UndoLog} is set every change is recorded in it so that it
+ * can be reverted; meanwhile paths between merged {@link Zone}s are not
+ * compressed and completed {@link Zone}s are not compacted.
+ * 
+ * Every {@link Zone} created here shares a ledger of the points each player
+ * would get from the ruled {@link Zone}s if the match ended now, which the
+ * {@link Zone}s keep up to date as they change (see getPendingScore()).
+ * 
  * @author Guido Gerosa
  * 
  */
 public class ZonesHandler {
 
-	private Collection<Zone> completedZones = new ArrayList<Zone>();
-	private Collection<Zone> uncompletedZones = new ArrayList<Zone>();
+	private Collection<Zone> completedZones = new LinkedHashSet<Zone>();
+	private Collection<Zone> uncompletedZones = new LinkedHashSet<Zone>();
+	private LongMap<Zone[]> index = new LongMap<Zone[]>();
+	private final int[] pendingScores = new int[PlayerColor.values().length];
+	private static final int SIDES = Direction.values().length;
+	private static final int INDEX = 0;
+	private static final int PERIMETER_REMOVE = 1;
+	private static final int ADD = 2;
+	private static final int PERIMETER_ADD = 3;
+	private static final int NEW_ZONE = 4;
+	private static final int ABSORB = 5;
+	private static final int UNCOMPLETED_REMOVE = 6;
+	private static final int COMPLETED = 7;
+	private UndoLog log = null;
+	private final UndoLog.Undoer undoer = new UndoLog.Undoer() {
+		@Override
+		public void undo(int operation, long key, int value, Object first,
+				Object second) {
+			switch (operation) {
+			case INDEX:
+				index.get(key)[value] = (Zone) first;
+				break;
+			case PERIMETER_REMOVE:
+				((Zone) first).perimeterAdd((Position) second);
+				break;
+			case ADD:
+				((Zone) first).remove((Position) second);
+				break;
+			case PERIMETER_ADD:
+				((Zone) first).perimeterRemove((Position) second);
+				break;
+			case NEW_ZONE:
+				uncompletedZones.remove(first);
+				break;
+			case ABSORB:
+				((Zone) first).unabsorb((Zone) second, value);
+				break;
+			case UNCOMPLETED_REMOVE:
+				uncompletedZones.add((Zone) first);
+				break;
+			case COMPLETED:
+				completedZones.remove(first);
+				uncompletedZones.add((Zone) first);
+				break;
+			default:
+				throw new IllegalStateException();
+			}
+		}
+	};
 
 	/**
 	 * This method returns the {@link Zone} containing the {@link Position}
@@ -30,19 +92,88 @@ public class ZonesHandler {
 	 */
 	public Zone getZoneHaving(Position position)
 			throws InvalidPositionException {
-		for (Zone zone : uncompletedZones) {
-			if (zone.covers(position)) {
-				return zone;
-			}
+		Zone zone = getZoneAt(position.getCoordinate().pack(),
+				position.getDirection());
+		if (zone != null) {
+			return zone;
 		}
-		for (Zone zone : completedZones) {
-			if (zone.covers(position)) {
-				return zone;
+		for (Zone completed : completedZones) {
+			if (completed.isCompacted() && completed.covers(position)) {
+				return completed;
 			}
 		}
 		throw new InvalidPositionException();
 	}
 
+	/**
+	 * Returns the {@link Zone} covering the given side of the given packed
+	 * {@link Coordinate}, or null if there's none. Compacted {@link Zone}s are
+	 * not indexed and hence never returned.
+	 * 
+	 * @param coordinate
+	 *            - the packed {@link Coordinate} (see {@link Coordinate#pack()})
+	 * @param direction
+	 *            - the side
+	 * @return the {@link Zone} covering the side or null
+	 */
+	Zone getZoneAt(long coordinate, Direction direction) {
+		Zone[] sides = index.get(coordinate);
+		if (sides == null || sides[direction.ordinal()] == null) {
+			return null;
+		}
+		return find(sides[direction.ordinal()]);
+	}
+
+	/**
+	 * Returns the root of the given {@link Zone}, compressing the path only
+	 * when changes are not being recorded.
+	 */
+	private Zone find(Zone zone) {
+		return log == null ? zone.find() : zone.root();
+	}
+
+	/**
+	 * Starts or stops recording the changes in the given {@link UndoLog}.
+	 * 
+	 * @param log
+	 *            - the {@link UndoLog} to record in, or null to stop
+	 */
+	void setUndoLog(UndoLog log) {
+		this.log = log;
+	}
+
+	private void record(int operation, long key, int value, Object first,
+			Object second) {
+		if (log != null) {
+			log.record(undoer, operation, key, value, first, second);
+		}
+	}
+
+	private void indexPut(Position position, Zone zone) {
+		long key = position.getCoordinate().pack();
+		Zone[] sides = index.get(key);
+		if (sides == null) {
+			sides = new Zone[SIDES];
+			index.put(key, sides);
+		}
+		record(INDEX, key, position.getDirection().ordinal(),
+				sides[position.getDirection().ordinal()], null);
+		sides[position.getDirection().ordinal()] = zone;
+	}
+
+	private void indexRemove(long coordinate, Direction direction) {
+		Zone[] sides = index.get(coordinate);
+		if (sides != null) {
+			sides[direction.ordinal()] = null;
+			for (Zone side : sides) {
+				if (side != null) {
+					return;
+				}
+			}
+			index.remove(coordinate);
+		}
+	}
+
 	/**
 	 * This method updates the state of the zones inside the zoneMonitor by
 	 * adding new elements to touched zones and by adjusting their perimeters.
@@ -58,29 +189,32 @@ public class ZonesHandler {
 	public Map<Direction, Zone> update(Coordinate coordinate, Card tile) {
 		Map<Direction, Zone> touchedZones = new HashMap<Direction, Zone>();
 		for (Position toBeRemoved : coordinate.getContiguousPositions()) {
-			Zone toBeModified;
-			try {
-				toBeModified = getZoneHaving(toBeRemoved);
-				toBeModified.perimeterRemove(toBeRemoved);
-				toBeModified.add(new Position(coordinate, toBeRemoved
-						.getDirection().opposite()));
-				touchedZones.put(toBeRemoved.getDirection().opposite(),
-						toBeModified);
-			} catch (InvalidPositionException e) {
-				Place newZonePlace = tile.getPlace(toBeRemoved.getDirection()
-						.opposite());
+			Direction side = toBeRemoved.getDirection().opposite();
+			Position edge = new Position(coordinate, side);
+			Zone toBeModified = getZoneAt(toBeRemoved.getCoordinate().pack(),
+					toBeRemoved.getDirection());
+			if (toBeModified != null) {
+				if (toBeModified.perimeterRemove(toBeRemoved)) {
+					record(PERIMETER_REMOVE, 0, 0, toBeModified, toBeRemoved);
+				}
+				if (toBeModified.add(edge)) {
+					record(ADD, 0, 0, toBeModified, edge);
+				}
+				indexPut(edge, toBeModified);
+				touchedZones.put(side, toBeModified);
+			} else {
+				Place newZonePlace = tile.getPlace(side);
 				if (newZonePlace != Place.NOTHING) {
 					Set<Position> newZoneElements = new HashSet<Position>();
-					newZoneElements.add(new Position(coordinate, toBeRemoved
-							.getDirection().opposite()));
+					newZoneElements.add(edge);
 					Zone newZone = new Zone(newZoneElements, newZonePlace);
+					newZone.setLedger(pendingScores);
 					uncompletedZones.add(newZone);
-					touchedZones.put(toBeRemoved.getDirection().opposite(),
-							newZone);
+					record(NEW_ZONE, 0, 0, newZone, null);
+					indexPut(edge, newZone);
+					touchedZones.put(side, newZone);
 				}
-
 			}
-
 		}
 
 		// If the zone is over the coordinates it's mapped as NORTH
@@ -92,27 +226,109 @@ public class ZonesHandler {
 		Map<Direction, Zone> modifiedZones = new HashMap<Direction, Zone>();
 		while (!touchedZonesDirections.isEmpty()) {
 			Direction currentDirection = touchedZonesDirections.remove();
-			Zone mergingZone = touchedZones.remove(currentDirection);
-			modifiedZones.put(currentDirection, mergingZone);
-			for (Direction direction : tile.cross(currentDirection)) {
+			Zone mergingZone = find(touchedZones.remove(currentDirection));
+			int crossed = tile.cross(currentDirection);
+			while (crossed != 0) {
+				Direction direction = Direction.fromOrdinal(Integer
+						.numberOfTrailingZeros(crossed));
+				crossed &= crossed - 1;
 				Zone toBeMerged = touchedZones.remove(direction);
 				if (toBeMerged != null) {
-					mergingZone.merge(toBeMerged);// zones merging
+					// zones merging
+					mergingZone = union(mergingZone, toBeMerged);
 					modifiedZones.put(direction, mergingZone);
-					uncompletedZones.remove(toBeMerged);
 					touchedZonesDirections.remove(direction);
 				} else {
-					mergingZone.addToPerimeter(new Position(coordinate,
-							direction));// perimeter adjusting
+					Position edge = new Position(coordinate, direction);
+					// perimeter adjusting
+					if (mergingZone.add(edge)) {
+						record(ADD, 0, 0, mergingZone, edge);
+						if (mergingZone.perimeterAdd(edge)) {
+							record(PERIMETER_ADD, 0, 0, mergingZone, edge);
+						}
+					}
+					indexPut(edge, mergingZone);
 				}
 			}
-			if (mergingZone.isCompleted()) {
-				completedZones.add(mergingZone);
+			modifiedZones.put(currentDirection, mergingZone);
+		}
+		// a zone found earlier may have been merged into another one later.
+		for (Map.Entry<Direction, Zone> entry : modifiedZones.entrySet()) {
+			Zone zone = find(entry.getValue());
+			entry.setValue(zone);
+			if (zone.isCompleted() && completedZones.add(zone)) {
+				uncompletedZones.remove(zone);
+				record(COMPLETED, 0, 0, zone, null);
 			}
 		}
 		return modifiedZones;
 	}
 
+	/**
+	 * Merges the sets the given {@link Zone}s belong to: the bigger one absorbs
+	 * the smaller one, which is no more an uncompleted {@link Zone}.
+	 * 
+	 * @return the {@link Zone} representing the merged set
+	 */
+	private Zone union(Zone first, Zone second) {
+		Zone root = find(first);
+		Zone child = find(second);
+		if (root == child) {
+			return root;
+		}
+		if (root.size() < child.size()) {
+			Zone swap = root;
+			root = child;
+			child = swap;
+		}
+		record(ABSORB, 0, root.markerCount(), root, child);
+		root.absorb(child, log == null);
+		if (uncompletedZones.remove(child)) {
+			record(UNCOMPLETED_REMOVE, 0, 0, child, null);
+		}
+		return root;
+	}
+
+	/**
+	 * Collapses the given completed {@link Zone} in a compact summary (see
+	 * {@link Zone#compact()}) and removes its {@link Position}s from the
+	 * index. Zones that are not completed or still have markers are left as
+	 * they are, as well as every {@link Zone} while changes are recorded.
+	 * 
+	 * @param zone
+	 *            - the {@link Zone} to compact
+	 * @return true if the {@link Zone} has been compacted
+	 */
+	public boolean compact(Zone zone) {
+		if (log != null || !zone.isCompleted() || zone.isRuled()
+				|| zone.isCompacted() || !completedZones.contains(zone)) {
+			return false;
+		}
+		for (Coordinate coordinate : zone.getCoveredCoordinates()) {
+			for (Direction direction : Direction.values()) {
+				if (zone.covers(new Position(coordinate, direction))) {
+					indexRemove(coordinate.pack(), direction);
+				}
+			}
+		}
+		zone.compact();
+		return true;
+	}
+
+	/**
+	 * Returns the points the given {@link Player} would get from the ruled
+	 * {@link Zone}s that still hold their markers if the match ended now: the
+	 * whole score of streets and completed zones and half the score of the
+	 * uncompleted ones.
+	 * 
+	 * @param player
+	 *            - the {@link Player}
+	 * @return the pending points of the {@link Player}
+	 */
+	public int getPendingScore(Player player) {
+		return pendingScores[player.getColor().ordinal()];
+	}
+
 	public Collection<Zone> getUncompletedZones() {
 		return uncompletedZones;
 	}
@@ -0,0 +1,705 @@
+package net;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import model.DeckTemplate;
+import model.GameEngine;
+import model.JournalWriter;
+import model.MatchJournal;
+import model.MatchSnapshot;
+
+/**
+ * The GroupCommitJournal class is a {@link JournalWriter} shared by every
+ * match of a {@link Server}: the records of all the {@link MatchJournal}s go
+ * to the same log, written by a single thread in batches, so that forcing the
+ * log costs the same whatever the number of matches.
+ * 
+ * The log is a directory of numbered segments: a new one is begun when the
+ * current one reaches the segment size. A segment is deleted once every match
+ * having records in it is over or has written a snapshot in a later segment,
+ * since those records are no longer needed to rebuild any match; a match
+ * starting again with the same id counts as a snapshot. When the journal is
+ * opened the segments left by the last run are read and the matches still
+ * going on can be rebuilt by recover(); the new matches should take ids from
+ * getNextId() on, so that they aren't mistaken for the old ones.
+ * 
+ * The records submitted are copied in a buffer, in frames made of the id of
+ * the journal, the length of the records and the records themselves (records
+ * of the same journal following each other share the frame). A batch is
+ * written when the buffer reaches the batch size or when its first record has
+ * waited for the time window; the log is forced once for the whole batch and
+ * then each journal in it is acknowledged. Each batch starts with its length
+ * and the CRC32 of its frames, so a batch torn by a crash is recognized and
+ * dropped by read(). The snapshots are kept aside with their place in the
+ * buffer and encoded, in frames of their own, by the thread of the journal
+ * when their batch is written.
+ * 
+ * The buffer can't grow past the pending limit: when the disk falls behind,
+ * submit() waits for the batch being written to be done before taking other
+ * records, so the memory held by the journal stays bounded.
+ * 
+ * If the log can't be written the error is reported once and the journal
+ * stops: the records submitted afterwards are dropped and never acknowledged,
+ * so the matches waiting for them time out, but no match is broken by it.
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public class GroupCommitJournal implements JournalWriter, Runnable {
+
+	static final int DEFAULT_BATCH = 64 * 1024;
+	static final long DEFAULT_WINDOW = 10;
+	static final long DEFAULT_SEGMENT = 16 * 1024 * 1024;
+	static final int DEFAULT_PENDING = 4 * 1024 * 1024;
+	private static final String PREFIX = "journal-";
+	private static final String SUFFIX = ".log";
+	private static final int RELEASED_ALL = Integer.MAX_VALUE;
+	private static final int BATCH_HEADER = 8;
+	private static final int FRAME_HEADER = 6;
+	private static final int MAX_FRAME = 0xFFFF;
+	private final int batchSize;
+	private final long window;
+	private final long segmentSize;
+	private final int maxPending;
+	private final File directory;
+	private final Thread thread;
+	// the current segment, and the ids having records in each segment
+	private int segment;
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private final SortedMap<Integer, Set<Integer>> segments = new TreeMap<Integer, Set<Integer>>();
+	// the segment of the last snapshot of each id, RELEASED_ALL if it's over
+	// (then forgotten, once the id is taken out of every segment)
+	private final Map<Integer, Integer> released = new HashMap<Integer, Integer>();
+	private volatile int segmentsCount;
+	private Map<Integer, byte[]> recovered;
+	private final int nextId;
+	private final CRC32 checksum = new CRC32();
+	private ByteBuffer pending;
+	private ByteBuffer writing;
+	// the last sequence of each journal in the buffers
+	private Map<MatchJournal, Long> pendingAcks = new HashMap<MatchJournal, Long>();
+	private Map<MatchJournal, Long> writingAcks = new HashMap<MatchJournal, Long>();
+	// the ids having a snapshot (false) or their end (true) in the buffers
+	private Map<Integer, Boolean> pendingReleases = new HashMap<Integer, Boolean>();
+	private Map<Integer, Boolean> writingReleases = new HashMap<Integer, Boolean>();
+	// the snapshots to encode and where they go in the buffers
+	private List<Deferred> pendingSnapshots = new ArrayList<Deferred>();
+	private List<Deferred> writingSnapshots = new ArrayList<Deferred>();
+	private MatchJournal lastJournal;
+	private int lastFrame;
+	private long firstSubmit;
+	private boolean force = false;
+	private boolean closed = false;
+	private IOException failure;
+	private long batches = 0;
+	private long submissions = 0;
+	private long stalls = 0;
+
+	/**
+	 * A snapshot to encode, with the id of its journal and the position in
+	 * the buffer where it goes.
+	 */
+	private static final class Deferred {
+		private final int position;
+		private final int id;
+		private final MatchSnapshot snapshot;
+
+		private Deferred(int position, int id, MatchSnapshot snapshot) {
+			this.position = position;
+			this.id = id;
+			this.snapshot = snapshot;
+		}
+	}
+
+	/**
+	 * Creates a journal logging in the given directory with the default batch
+	 * size (64 KB), time window (10 milliseconds), segment size (16 MB) and
+	 * pending limit (4 MB).
+	 * 
+	 * @param directory
+	 *            - the directory of the log, created if it doesn't exist
+	 * @throws IOException
+	 *             - if the log can't be opened
+	 */
+	public GroupCommitJournal(File directory) throws IOException {
+		this(directory, DEFAULT_BATCH, DEFAULT_WINDOW, DEFAULT_SEGMENT);
+	}
+
+	/**
+	 * Creates a journal logging in the given directory with the default
+	 * pending limit (4 MB, or the batch size if it's larger).
+	 * 
+	 * @param directory
+	 *            - the directory of the log, created if it doesn't exist
+	 * @param batchSize
+	 *            - the bytes after which a batch is written at once
+	 * @param window
+	 *            - the milliseconds a record can wait for its batch to fill
+	 * @param segmentSize
+	 *            - the bytes after which a new segment is begun
+	 * @throws IOException
+	 *             - if the log can't be opened
+	 */
+	public GroupCommitJournal(File directory, int batchSize, long window,
+			long segmentSize) throws IOException {
+		this(directory, batchSize, window, segmentSize, DEFAULT_PENDING);
+	}
+
+	/**
+	 * Creates a journal logging in the given directory. The segments already
+	 * there are read, so that their matches can be recovered.
+	 * 
+	 * @param directory
+	 *            - the directory of the log, created if it doesn't exist
+	 * @param batchSize
+	 *            - the bytes after which a batch is written at once
+	 * @param window
+	 *            - the milliseconds a record can wait for its batch to fill
+	 * @param segmentSize
+	 *            - the bytes after which a new segment is begun
+	 * @param maxPending
+	 *            - the bytes waiting to be written after which submit() waits,
+	 *            never less than the batch size
+	 * @throws IOException
+	 *             - if the log can't be opened
+	 */
+	public GroupCommitJournal(File directory, int batchSize, long window,
+			long segmentSize, int maxPending) throws IOException {
+		this.batchSize = Math.max(batchSize, BATCH_HEADER + FRAME_HEADER);
+		this.window = window;
+		this.segmentSize = segmentSize;
+		this.maxPending = Math.max(maxPending, this.batchSize);
+		this.directory = directory;
+		this.pending = newBuffer(this.batchSize);
+		this.writing = newBuffer(this.batchSize);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't create " + directory);
+		}
+		Map<Integer, ByteArrayOutputStream> journals = new LinkedHashMap<Integer, ByteArrayOutputStream>();
+		int last = 0;
+		for (int number : listSegments(directory)) {
+			segments.put(number, readSegment(segmentFile(directory, number),
+					journals));
+			last = number;
+		}
+		this.recovered = toBytes(journals);
+		int greatest = -1;
+		for (int id : recovered.keySet()) {
+			greatest = Math.max(greatest, id);
+		}
+		this.nextId = greatest + 1;
+		openSegment(last + 1);
+		this.thread = new Thread(this, "carcassonne-group-commit");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static ByteBuffer newBuffer(int capacity) {
+		ByteBuffer buffer = ByteBuffer.allocate(capacity);
+		buffer.position(BATCH_HEADER);
+		return buffer;
+	}
+
+	private static File segmentFile(File directory, int number) {
+		return new File(directory, PREFIX + String.format("%08d", number)
+				+ SUFFIX);
+	}
+
+	/**
+	 * Returns the numbers of the segments in the given directory, in order.
+	 */
+	private static List<Integer> listSegments(File directory) {
+		List<Integer> numbers = new ArrayList<Integer>();
+		String[] names = directory.list();
+		if (names != null) {
+			for (String name : names) {
+				if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+					try {
+						numbers.add(Integer.valueOf(name.substring(
+								PREFIX.length(), name.length() - SUFFIX.length())));
+					} catch (NumberFormatException e) {
+						// not a segment.
+					}
+				}
+			}
+		}
+		Collections.sort(numbers);
+		return numbers;
+	}
+
+	private void openSegment(int number) throws IOException {
+		segment = number;
+		file = new RandomAccessFile(segmentFile(directory, number), "rw");
+		channel = file.getChannel();
+		channel.position(channel.size());
+		segments.put(number, new HashSet<Integer>());
+		segmentsCount = segments.size();
+	}
+
+	/**
+	 * Returns the id following the greatest one found in the segments left by
+	 * the last run, or 0 if there was none.
+	 * 
+	 * @return the first id free for a new match
+	 */
+	public int getNextId() {
+		return nextId;
+	}
+
+	/**
+	 * Rebuilds the matches still going on found in the segments left by the
+	 * last run, by id. The matches that are over, or that can't be rebuilt,
+	 * are released so that their segments can be deleted; the others should
+	 * be given a new {@link MatchJournal} having the same id, that begins
+	 * with a snapshot and so releases them too. It can be called once.
+	 * 
+	 * @param template
+	 *            - the {@link DeckTemplate} of the matches
+	 * @return the rebuilt matches going on, by id
+	 */
+	public Map<Integer, GameEngine> recover(DeckTemplate template) {
+		Map<Integer, byte[]> journals;
+		synchronized (this) {
+			journals = recovered;
+			recovered = Collections.emptyMap();
+		}
+		Map<Integer, GameEngine> result = new LinkedHashMap<Integer, GameEngine>();
+		for (Map.Entry<Integer, byte[]> journal : journals.entrySet()) {
+			GameEngine engine = null;
+			try {
+				engine = MatchJournal.restore(new ByteArrayInputStream(journal
+						.getValue()), template);
+			} catch (IOException e) {
+				System.err.println("Match " + journal.getKey()
+						+ " can't be recovered: " + e.getMessage());
+			}
+			if (engine != null && !engine.isOver()) {
+				result.put(journal.getKey(), engine);
+			} else {
+				synchronized (this) {
+					// applied with the next batch
+					pendingReleases.put(journal.getKey(), true);
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized void submit(MatchJournal journal, byte[] records,
+			int length, long sequence, int flags) {
+		if (!accept()) {
+			return;
+		}
+		boolean empty = isEmpty();
+		for (int offset = 0; offset < length;) {
+			int frameLength = pending.position() - lastFrame - FRAME_HEADER;
+			if (journal != lastJournal || frameLength == MAX_FRAME) {
+				ensure(FRAME_HEADER);
+				lastJournal = journal;
+				lastFrame = pending.position();
+				pending.putInt(journal.getId());
+				pending.putShort((short) 0);
+				frameLength = 0;
+			}
+			int chunk = Math.min(length - offset, MAX_FRAME - frameLength);
+			ensure(chunk);
+			pending.put(records, offset, chunk);
+			pending.putShort(lastFrame + 4, (short) (frameLength + chunk));
+			offset += chunk;
+		}
+		taken(journal, sequence, flags, empty);
+	}
+
+	@Override
+	public synchronized void submit(MatchJournal journal,
+			MatchSnapshot snapshot, long sequence, int flags) {
+		if (!accept()) {
+			return;
+		}
+		boolean empty = isEmpty();
+		pendingSnapshots.add(new Deferred(pending.position(), journal.getId(),
+				snapshot));
+		// the records following the snapshot begin a new frame
+		lastJournal = null;
+		taken(journal, sequence, flags, empty);
+	}
+
+	/**
+	 * Returns true if the records submitted have to be taken, false if they
+	 * are dropped since the journal has failed. If the buffer has reached the
+	 * pending limit, it waits for the writing thread to take it first.
+	 */
+	private boolean accept() {
+		if (closed) {
+			throw new IllegalStateException("The journal is closed.");
+		}
+		if (failure == null && pending.position() >= maxPending) {
+			stalls++;
+			try {
+				while (failure == null && !closed
+						&& pending.position() >= maxPending) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				// taken anyway: dropping them would break the journal.
+				Thread.currentThread().interrupt();
+			}
+			if (closed) {
+				throw new IllegalStateException("The journal is closed.");
+			}
+		}
+		// when it fails, it has already been reported by the writing thread.
+		return failure == null;
+	}
+
+	private void taken(MatchJournal journal, long sequence, int flags,
+			boolean empty) {
+		pendingAcks.put(journal, sequence);
+		if ((flags & (SNAPSHOT | OVER)) != 0) {
+			pendingReleases.put(journal.getId(), (flags & OVER) != 0);
+		}
+		this.force |= (flags & FORCE) != 0;
+		submissions++;
+		if (empty) {
+			firstSubmit = System.currentTimeMillis();
+			notifyAll();
+		} else if (pending.position() >= batchSize) {
+			notifyAll();
+		}
+	}
+
+	private void ensure(int length) {
+		if (pending.remaining() < length) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(
+					pending.capacity() * 2, pending.position() + length));
+			pending.flip();
+			grown.put(pending);
+			pending = grown;
+		}
+	}
+
+	/**
+	 * Writes the batches as they fill or their window expires, until the
+	 * journal is closed.
+	 */
+	public void run() {
+		while (true) {
+			boolean forced;
+			synchronized (this) {
+				try {
+					while (!isReady()) {
+						if (isEmpty()) {
+							wait();
+						} else {
+							wait(Math.max(1, firstSubmit + window
+									- System.currentTimeMillis()));
+						}
+					}
+				} catch (InterruptedException e) {
+					closed = true;
+				}
+				if (isEmpty()) {
+					return;
+				}
+				ByteBuffer swap = writing;
+				writing = pending;
+				pending = swap;
+				List<Deferred> snapshots = writingSnapshots;
+				writingSnapshots = pendingSnapshots;
+				pendingSnapshots = snapshots;
+				Map<MatchJournal, Long> acks = writingAcks;
+				writingAcks = pendingAcks;
+				pendingAcks = acks;
+				Map<Integer, Boolean> releases = writingReleases;
+				writingReleases = pendingReleases;
+				pendingReleases = releases;
+				lastJournal = null;
+				forced = force;
+				force = false;
+				batches++;
+				// the submissions waiting for room can go on
+				notifyAll();
+			}
+			try {
+				writing.flip();
+				ByteBuffer[] parts = splice();
+				checksum.reset();
+				int length = -BATCH_HEADER;
+				for (ByteBuffer part : parts) {
+					// the header is the beginning of the first part
+					int skip = length < 0 ? BATCH_HEADER : 0;
+					checksum.update(part.array(), part.position() + skip,
+							part.remaining() - skip);
+					length += part.remaining();
+				}
+				writing.putInt(0, length);
+				writing.putInt(4, (int) checksum.getValue());
+				for (long left = length + BATCH_HEADER; left > 0;) {
+					left -= channel.write(parts);
+				}
+				if (forced) {
+					channel.force(false);
+				}
+				truncate();
+			} catch (IOException e) {
+				synchronized (this) {
+					failure = e;
+					pending.clear();
+					pending.position(BATCH_HEADER);
+					pendingAcks.clear();
+					pendingReleases.clear();
+					pendingSnapshots.clear();
+					lastJournal = null;
+					notifyAll();
+				}
+				System.err.println("Journal error: " + e.getMessage());
+				return;
+			} finally {
+				writing.clear();
+				writing.position(BATCH_HEADER);
+				writingSnapshots.clear();
+			}
+			// acknowledged out of the lock: the journals may be submitting.
+			for (Map.Entry<MatchJournal, Long> ack : writingAcks.entrySet()) {
+				ack.getKey().acknowledge(ack.getValue());
+			}
+			writingAcks.clear();
+		}
+	}
+
+	/**
+	 * Returns the batch being written as the parts of the buffer between its
+	 * snapshots and the frames of the snapshots, encoded now.
+	 */
+	private ByteBuffer[] splice() {
+		ByteBuffer[] parts = new ByteBuffer[writingSnapshots.size() * 2 + 1];
+		int from = 0;
+		int next = 0;
+		for (Deferred deferred : writingSnapshots) {
+			ByteBuffer before = writing.duplicate();
+			before.position(from);
+			before.limit(deferred.position);
+			parts[next++] = before;
+			byte[] record = deferred.snapshot.toRecord();
+			ByteBuffer frames = ByteBuffer.allocate(record.length
+					+ FRAME_HEADER * (record.length / MAX_FRAME + 1));
+			for (int offset = 0; offset < record.length; offset += MAX_FRAME) {
+				int chunk = Math.min(record.length - offset, MAX_FRAME);
+				frames.putInt(deferred.id);
+				frames.putShort((short) chunk);
+				frames.put(record, offset, chunk);
+			}
+			frames.flip();
+			parts[next++] = frames;
+			from = deferred.position;
+		}
+		ByteBuffer rest = writing.duplicate();
+		rest.position(from);
+		parts[next] = rest;
+		return parts;
+	}
+
+	/**
+	 * Takes note of the ids in the batch just written and of the snapshots in
+	 * it, begins a new segment if the current one is full and deletes the
+	 * segments no longer needed.
+	 */
+	private void truncate() throws IOException {
+		Set<Integer> ids = segments.get(segment);
+		for (MatchJournal journal : writingAcks.keySet()) {
+			ids.add(journal.getId());
+		}
+		for (Map.Entry<Integer, Boolean> release : writingReleases.entrySet()) {
+			released.put(release.getKey(), release.getValue() ? RELEASED_ALL
+					: segment);
+		}
+		writingReleases.clear();
+		if (channel.position() >= segmentSize) {
+			channel.force(false);
+			file.close();
+			openSegment(segment + 1);
+		}
+		Iterator<Map.Entry<Integer, Set<Integer>>> old = segments.entrySet()
+				.iterator();
+		while (old.hasNext()) {
+			Map.Entry<Integer, Set<Integer>> entry = old.next();
+			// forgets the ids whose records here are no longer needed
+			for (Iterator<Integer> id = entry.getValue().iterator(); id
+					.hasNext();) {
+				Integer from = released.get(id.next());
+				if (from != null && from > entry.getKey()) {
+					id.remove();
+				}
+			}
+			if (entry.getKey() != segment && entry.getValue().isEmpty()
+					&& segmentFile(directory, entry.getKey()).delete()) {
+				old.remove();
+			}
+		}
+		// the matches over are in no segment any more
+		released.values().removeAll(Collections.singleton(RELEASED_ALL));
+		segmentsCount = segments.size();
+	}
+
+	/**
+	 * Returns the number of segments of the log.
+	 * 
+	 * @return the number of segments of the log
+	 */
+	public int getSegments() {
+		return segmentsCount;
+	}
+
+	/**
+	 * Returns true if the buffer has to be written now.
+	 */
+	private boolean isReady() {
+		if (isEmpty()) {
+			return closed;
+		}
+		return closed || pending.position() >= batchSize
+				|| System.currentTimeMillis() >= firstSubmit + window;
+	}
+
+	/**
+	 * Returns true if nothing has been submitted since the last batch.
+	 */
+	private boolean isEmpty() {
+		return pending.position() == BATCH_HEADER
+				&& pendingSnapshots.isEmpty();
+	}
+
+	/**
+	 * Returns the number of batches written so far.
+	 * 
+	 * @return the number of batches written
+	 */
+	public synchronized long getBatches() {
+		return batches;
+	}
+
+	/**
+	 * Returns the number of submissions received so far.
+	 * 
+	 * @return the number of submissions received
+	 */
+	public synchronized long getSubmissions() {
+		return submissions;
+	}
+
+	/**
+	 * Returns the number of submissions that had to wait for the buffer to
+	 * be written, since it had reached the pending limit.
+	 * 
+	 * @return the number of submissions that waited
+	 */
+	public synchronized long getStalls() {
+		return stalls;
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			if (failure != null) {
+				throw failure;
+			}
+			channel.force(false);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Reads the log in the given directory and returns the records of each
+	 * journal, by id, in order of first appearance. A batch torn by a crash
+	 * at the end of a segment is dropped.
+	 * 
+	 * @param directory
+	 *            - the directory of the log
+	 * @return the records of each journal found in the log
+	 * @throws IOException
+	 *             - if the log can't be read
+	 */
+	public static Map<Integer, byte[]> read(File directory) throws IOException {
+		Map<Integer, ByteArrayOutputStream> journals = new LinkedHashMap<Integer, ByteArrayOutputStream>();
+		for (int number : listSegments(directory)) {
+			readSegment(segmentFile(directory, number), journals);
+		}
+		return toBytes(journals);
+	}
+
+	private static Map<Integer, byte[]> toBytes(
+			Map<Integer, ByteArrayOutputStream> journals) {
+		Map<Integer, byte[]> result = new LinkedHashMap<Integer, byte[]>();
+		for (Map.Entry<Integer, ByteArrayOutputStream> journal : journals
+				.entrySet()) {
+			result.put(journal.getKey(), journal.getValue().toByteArray());
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the records of the given segment to those of each journal and
+	 * returns the ids found in it.
+	 */
+	private static Set<Integer> readSegment(File segment,
+			Map<Integer, ByteArrayOutputStream> journals) throws IOException {
+		Set<Integer> ids = new HashSet<Integer>();
+		DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(segment)));
+		CRC32 crc = new CRC32();
+		long left = segment.length();
+		try {
+			while (true) {
+				int length = input.readInt();
+				int expected = input.readInt();
+				left -= BATCH_HEADER;
+				if (length < 0 || length > left) {
+					// the length of a torn batch is garbage.
+					break;
+				}
+				left -= length;
+				byte[] batch = new byte[length];
+				input.readFully(batch);
+				crc.reset();
+				crc.update(batch, 0, length);
+				if ((int) crc.getValue() != expected) {
+					break;
+				}
+				ByteBuffer frames = ByteBuffer.wrap(batch);
+				while (frames.remaining() >= FRAME_HEADER) {
+					int id = frames.getInt();
+					int frameLength = frames.getShort() & 0xFFFF;
+					ByteArrayOutputStream records = journals.get(id);
+					if (records == null) {
+						records = new ByteArrayOutputStream();
+						journals.put(id, records);
+					}
+					ids.add(id);
+					records.write(batch, frames.position(), frameLength);
+					frames.position(frames.position() + frameLength);
+				}
+			}
+		} catch (EOFException e) {
+			// the end of the segment, or a batch being written.
+		} finally {
+			input.close();
+		}
+		return ids;
+	}
+}
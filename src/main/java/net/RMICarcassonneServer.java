@@ -1,12 +1,21 @@
 package net;
 
+import java.io.File;
+import java.io.IOException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import model.DeckTemplate;
+import model.GameEngine;
+import model.JournalWriter;
+import model.PlayerColor;
 import net.rmi.*;
+import view.AbstractCarcassonneView;
 
 /**
  * This Class extends {@link Server}. It provides a {@link Server}
@@ -29,7 +38,41 @@ public class RMICarcassonneServer extends Server implements net.rmi.RMIServer {
 	 *            - the timeout in seconds
 	 */
 	public RMICarcassonneServer(int timeout) {
-		super(TimeUnit.MILLISECONDS.convert(timeout, TimeUnit.SECONDS));
+		this(timeout, null);
+	}
+
+	/**
+	 * This constructor creates a {@link Server} that lets a match start after
+	 * the given number of seconds and records the matches with the given
+	 * {@link JournalWriter}.
+	 * 
+	 * @param timeout
+	 *            - the timeout in seconds
+	 * @param journal
+	 *            - the {@link JournalWriter} of the matches, or null
+	 */
+	public RMICarcassonneServer(int timeout, JournalWriter journal) {
+		super(TimeUnit.MILLISECONDS.convert(timeout, TimeUnit.SECONDS), journal);
+	}
+
+	/**
+	 * Same as RMICarcassonneServer(timeout, journal), but the server goes on
+	 * with the given matches, rebuilt from the journal by their index, and
+	 * numbers the new ones from the given index.
+	 * 
+	 * @param timeout
+	 *            - the timeout in seconds
+	 * @param journal
+	 *            - the {@link JournalWriter} of the matches
+	 * @param restored
+	 *            - the matches going on, by index
+	 * @param firstIndex
+	 *            - the index of the first new match
+	 */
+	public RMICarcassonneServer(int timeout, JournalWriter journal,
+			Map<Integer, GameEngine> restored, int firstIndex) {
+		super(TimeUnit.MILLISECONDS.convert(timeout, TimeUnit.SECONDS),
+				journal, restored, firstIndex);
 	}
 
 	/**
@@ -50,6 +93,34 @@ public class RMICarcassonneServer extends Server implements net.rmi.RMIServer {
 		return viewStub;
 	}
 
+	/**
+	 * Gives the seat of the player having the given color in the given match
+	 * to a new view sending the model updates to the given {@link RMIReceiver}
+	 * and returns a {@link RMIReceiver} that will listen for its commands.
+	 * 
+	 * @param receiver
+	 *            - the {@link RMIReceiver} to send model's updates to
+	 * @param matchName
+	 *            - the name of the match
+	 * @param color
+	 *            - the {@link PlayerColor} of the player
+	 * @return the RMIReceiver to send controls to, or null if the seat can't
+	 *         be taken
+	 */
+	@Override
+	public RMIReceiver rejoin(RMIReceiver receiver, String matchName,
+			PlayerColor color) throws RemoteException {
+		RMIRemoteView newView = new RMIRemoteView(receiver);
+		RMIReceiver viewStub = (RMIReceiver) UnicastRemoteObject.exportObject(
+				newView, 0);
+		if (!this.rejoin((AbstractCarcassonneView) newView, matchName,
+				color)) {
+			UnicastRemoteObject.unexportObject(newView, true);
+			return null;
+		}
+		return viewStub;
+	}
+
 	/**
 	 * Creates a RMI Registry at the specified port and export the remote
 	 * connect method
@@ -72,14 +143,39 @@ public class RMICarcassonneServer extends Server implements net.rmi.RMIServer {
 
 	/**
 	 * Creates and starts a server with timout in seconds specified in
-	 * command-line
+	 * command-line and, optionally, the directory where the matches are
+	 * recorded; the matches left going on there by the last run are recovered.
+	 * The journal is closed when the process is stopped.
 	 * 
 	 * @param args
-	 *            - the timeout in seconds.
+	 *            - the timeout in seconds and the directory of the journal.
+	 * @throws IOException
+	 *             - if the journal can't be opened
 	 */
-	public static void main(String[] args) {
-		RMICarcassonneServer server = new RMICarcassonneServer(
-				Integer.valueOf(args[0]));
+	public static void main(String[] args) throws IOException {
+		GroupCommitJournal journal = null;
+		Map<Integer, GameEngine> restored = new HashMap<Integer, GameEngine>();
+		int firstIndex = 0;
+		if (args.length > 1) {
+			journal = new GroupCommitJournal(new File(args[1]));
+			restored = journal.recover(DeckTemplate.getStandard());
+			firstIndex = journal.getNextId();
+		}
+		final RMICarcassonneServer server = new RMICarcassonneServer(
+				Integer.valueOf(args[0]), journal, restored, firstIndex);
+		// the last batch is written and forced when the process is stopped
+		Runtime.getRuntime().addShutdownHook(
+				new Thread("carcassonne-journal-close") {
+					@Override
+					public void run() {
+						try {
+							server.closeJournal();
+						} catch (IOException e) {
+							System.err.println("Journal error: "
+									+ e.getMessage());
+						}
+					}
+				});
 		server.start();
 	}
 
@@ -6,6 +6,7 @@ import java.rmi.server.UnicastRemoteObject;
 import java.util.Observable;
 import java.util.Observer;
 
+import model.PlayerColor;
 import net.rmi.*;
 import view.AbstractCarcassonneView;
 import view.TextualCarcassonneView;
@@ -34,6 +35,28 @@ public class RMIClient implements Observer {
 	 */
 	public RMIClient(AbstractCarcassonneView view, String serverAddress,
 			int port) {
+		this(view, serverAddress, port, null, null);
+	}
+
+	/**
+	 * Creates a RMI client that will play with the specified view on the server
+	 * having the specified IP listening on the specified port, taking back the
+	 * seat of the player having the given color in the given match after the
+	 * server has been restarted.
+	 * 
+	 * @param view
+	 *            - the {@link AbstractCarcassonneView} to play with
+	 * @param serverAddress
+	 *            - the {@link String} of the server's IP
+	 * @param port
+	 *            - the port on which the server's listenig
+	 * @param matchName
+	 *            - the name of the match, or null to join a new one
+	 * @param color
+	 *            - the {@link PlayerColor} of the player in the match
+	 */
+	public RMIClient(AbstractCarcassonneView view, String serverAddress,
+			int port, String matchName, PlayerColor color) {
 		RMIObservableReceiver model;
 		RMIObserverSender controller;
 		terminated = false;
@@ -45,7 +68,18 @@ public class RMIClient implements Observer {
 			RMIServer server = (RMIServer) registry.lookup("RMIServer");
 			RMIReceiver modelStub = (RMIReceiver) UnicastRemoteObject
 					.exportObject(model, 0);
-			RMIReceiver rmiobssender = server.connect(modelStub);
+			RMIReceiver rmiobssender;
+			if (matchName == null) {
+				rmiobssender = server.connect(modelStub);
+			} else {
+				rmiobssender = server.rejoin(modelStub, matchName, color);
+				if (rmiobssender == null) {
+					System.err.println("Can't take the seat of " + color
+							+ " in " + matchName + ".");
+					terminated = true;
+					return;
+				}
+			}
 			controller = new RMIObserverSender(rmiobssender);
 			view.addObserver(controller);
 			view.addObserver(this);
@@ -94,13 +128,23 @@ public class RMIClient implements Observer {
 	}
 
 	/**
-	 * Creates an RMIClient that will connect on default port to the localhost.
+	 * Creates an RMIClient that will connect on default port to the server
+	 * having the given address and, if a match and a color follow, takes back
+	 * the seat of that color in that match.
 	 * 
 	 * @param args
-	 *            - not relevant
+	 *            - the address of the server, optionally followed by the name
+	 *            of a match and a color
 	 */
 	public static void main(String[] args) {
-		RMIClient client = new RMIClient(new TextualCarcassonneView(), args[0]);
+		RMIClient client;
+		if (args.length > 2) {
+			client = new RMIClient(new TextualCarcassonneView(), args[0],
+					DEFAULT_PORT, args[1], PlayerColor.valueOf(args[2]
+							.toUpperCase()));
+		} else {
+			client = new RMIClient(new TextualCarcassonneView(), args[0]);
+		}
 		client.start();
 	}
 }
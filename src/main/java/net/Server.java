@@ -1,5 +1,6 @@
 package net;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -7,6 +8,10 @@ import controller.Match;
 
 import view.AbstractCarcassonneView;
 
+import model.Durability;
+import model.GameEngine;
+import model.JournalWriter;
+import model.MatchJournal;
 import model.PlayerColor;
 
 /**
@@ -15,6 +20,13 @@ import model.PlayerColor;
  * Match will start if the number of players hits the maximum or if no player is
  * added after a timeout specified upon construction.
  * 
+ * If the server has a {@link JournalWriter} (usually a
+ * {@link GroupCommitJournal}) every match records its moves in a
+ * {@link MatchJournal} handed to it, whose id is the index of the match. The
+ * matches rebuilt from the journal after a restart can be handed back to the
+ * server, that keeps them under their old names: their players take their
+ * seats back by rejoin(), with the name of the match and their color.
+ * 
  * @author Guido Gerosa
  * 
  */
@@ -26,8 +38,10 @@ public abstract class Server implements Runnable {
 	private int matchIndex;
 	private Thread timer;
 	private long timerTick;
+	private final JournalWriter journal;
 	static final String MATCHTITLE = "Room";
 	static final int DEFAULT_PORT = 1099;
+	static final int SNAPSHOT_INTERVAL = 50;
 
 	/**
 	 * Given a timout in milliseconds, each match with more than 2 people will
@@ -38,16 +52,70 @@ public abstract class Server implements Runnable {
 	 *            match
 	 */
 	public Server(long timerTick) {
+		this(timerTick, null);
+	}
+
+	/**
+	 * Same as Server(timerTick), but the moves of every match are recorded by
+	 * the given {@link JournalWriter}, shared by all of them.
+	 * 
+	 * @param timerTick
+	 *            - the time in milliseconds to wait before starting the current
+	 *            match
+	 * @param journal
+	 *            - the {@link JournalWriter} of the matches, or null
+	 */
+	public Server(long timerTick, JournalWriter journal) {
+		this(timerTick, journal, new HashMap<Integer, GameEngine>(), 0);
+	}
+
+	/**
+	 * Same as Server(timerTick, journal), but the server goes on with the
+	 * given matches, rebuilt from the journal by their index (as by
+	 * {@link GroupCommitJournal#recover(model.DeckTemplate)}). The new matches
+	 * get the indexes from the given one on, that must follow every index
+	 * found in the journal (see {@link GroupCommitJournal#getNextId()}), or
+	 * their records would be mixed with those of the old matches.
+	 * 
+	 * @param timerTick
+	 *            - the time in milliseconds to wait before starting the current
+	 *            match
+	 * @param journal
+	 *            - the {@link JournalWriter} of the matches
+	 * @param restored
+	 *            - the matches going on, by index
+	 * @param firstIndex
+	 *            - the index of the first new match
+	 */
+	public Server(long timerTick, JournalWriter journal,
+			Map<Integer, GameEngine> restored, int firstIndex) {
 		this.timerTick = timerTick;
+		this.journal = journal;
 		matches = new HashMap<String, Match>();
-		matchIndex = 0;
+		matchIndex = firstIndex;
+		for (Map.Entry<Integer, GameEngine> match : restored.entrySet()) {
+			String matchName = MATCHTITLE + match.getKey();
+			matches.put(matchName, new Match(matchName, match.getValue(),
+					newJournal(match.getKey())));
+			matchIndex = Math.max(matchIndex, match.getKey() + 1);
+		}
 		newMatch();
 	}
 
+	private MatchJournal newJournal(int index) {
+		if (journal == null) {
+			return null;
+		}
+		MatchJournal matchJournal = new MatchJournal(journal, Durability.TURN,
+				index);
+		matchJournal.setSnapshotInterval(SNAPSHOT_INTERVAL);
+		return matchJournal;
+	}
+
 	private synchronized void newMatch() {
 		if (currentMatch == null || currentMatch.start()) {
 			String matchName = MATCHTITLE + matchIndex;
-			currentMatch = new Match(matchName);
+			currentMatch = new Match(matchName, newJournal(matchIndex));
 			matches.put(matchName, currentMatch);
 			connectedPlayers = 0;
 			matchIndex++;
@@ -76,6 +144,26 @@ public abstract class Server implements Runnable {
 		}
 	}
 
+	/**
+	 * Gives the given view the seat of the player having the given color in
+	 * the match having the given name, already started (see
+	 * {@link Match#rejoin(AbstractCarcassonneView, PlayerColor)}).
+	 * 
+	 * @param view
+	 *            - the view taking the seat
+	 * @param matchName
+	 *            - the name of the match, as in its {@link model.StartSignal}
+	 * @param color
+	 *            - the {@link PlayerColor} of the seat
+	 * @return true if the seat has been taken
+	 */
+	public synchronized boolean rejoin(AbstractCarcassonneView view,
+			String matchName, PlayerColor color) {
+		Match match = matches.get(matchName);
+		return match != null && match != currentMatch
+				&& match.rejoin(view, color);
+	}
+
 	/**
 	 * This method sleeps for the timout specified upon construction and creates
 	 * a new match if it's not interrupted when sleeping.
@@ -89,6 +177,19 @@ public abstract class Server implements Runnable {
 		newMatch();
 	}
 
+	/**
+	 * Writes the records of the matches still waiting and closes the
+	 * {@link JournalWriter} of this server, if any.
+	 * 
+	 * @throws IOException
+	 *             - if some records couldn't be written
+	 */
+	public void closeJournal() throws IOException {
+		if (journal != null) {
+			journal.close();
+		}
+	}
+
 	/**
 	 * This method must be implemented by any concrete server with the
 	 * operations needed to get the server up and running on the specified port.
@@ -3,6 +3,8 @@ package net.rmi;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 
+import model.PlayerColor;
+
 /**
  * This interface defines the only method that a remote RMIServer lets see to
  * the clients.
@@ -24,4 +26,24 @@ public interface RMIServer extends Remote {
 	 *             when an RMI error occurs
 	 */
 	RMIReceiver connect(RMIReceiver receiver) throws RemoteException;
+
+	/**
+	 * Same as connect(), but the messages are those of the player having the
+	 * given color in the given match, already started, whose seat is taken
+	 * back after the server has been restarted.
+	 * 
+	 * @param receiver
+	 *            - the {@link RMIReceiver} that the server will use to send
+	 *            message
+	 * @param matchName
+	 *            - the name of the match
+	 * @param color
+	 *            - the {@link PlayerColor} of the player
+	 * @return the {@link RMIReceiver} on which the server will listen, or null
+	 *         if the seat can't be taken
+	 * @throws RemoteException
+	 *             when an RMI error occurs
+	 */
+	RMIReceiver rejoin(RMIReceiver receiver, String matchName,
+			PlayerColor color) throws RemoteException;
 }
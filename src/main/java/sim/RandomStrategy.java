@@ -0,0 +1,56 @@
+package sim;
+
+import java.util.List;
+import java.util.Random;
+
+import model.*;
+import view.bot.Move;
+
+/**
+ * The RandomStrategy class puts the card in a random legal place and then, if
+ * it can, puts a marker on a random free side or none at all, each choice
+ * having the same chance.
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public class RandomStrategy implements Strategy {
+
+	@Override
+	public String getName() {
+		return "random";
+	}
+
+	@Override
+	public Move choose(GameEngine engine, Card starter, List<Move> history,
+			final Random random) {
+		final TileType type = engine.getCurrentCard().getType();
+		final boolean withMarkers = engine.getMarkersLeft(engine
+				.getCurrentPlayer()) > 0;
+		final int[] seen = new int[1];
+		final Move[] chosen = new Move[1];
+		engine.getBoard().forEachPlacement(type, new PlacementVisitor() {
+			@Override
+			public boolean visit(int x, int y, int rotation,
+					int markerDirections) {
+				// reservoir sampling over the placements seen so far
+				seen[0]++;
+				if (random.nextInt(seen[0]) == 0) {
+					Direction marker = null;
+					int sides = withMarkers ? markerDirections : 0;
+					int pick = random.nextInt(1 + Integer.bitCount(sides));
+					if (pick > 0) {
+						for (int i = 1; i < pick; i++) {
+							sides &= sides - 1;
+						}
+						marker = Direction.fromOrdinal(Integer
+								.numberOfTrailingZeros(sides));
+					}
+					chosen[0] = new Move(type, x, y, rotation, marker);
+				}
+				return true;
+			}
+		});
+		return chosen[0];
+	}
+}
@@ -0,0 +1,236 @@
+package sim;
+
+import java.io.*;
+import java.util.*;
+
+import model.Direction;
+import model.TileType;
+import view.bot.Move;
+
+/**
+ * The RecordedGame class holds a match as it was played: the seed its
+ * {@link model.Deck} was shuffled from, the number of players and each
+ * {@link Move} in order, together with the projected score of each player
+ * after the move and the final scores. A {@link ReplayRunner} plays it again
+ * and checks that the engine still gives the same scores.
+ * 
+ * Games are saved in archives holding many of them: a magic number, the
+ * number of games and then each game, with a few bytes for each move.
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public class RecordedGame {
+
+	private static final int MAGIC = 0x43524731;
+	private static final int ROTATION_BITS = 2;
+	private final long seed;
+	private final int playersNumber;
+	private final List<Move> moves = new ArrayList<Move>();
+	private final List<int[]> scores = new ArrayList<int[]>();
+	private int[] finalScores;
+
+	/**
+	 * Creates an empty record of a match.
+	 * 
+	 * @param seed
+	 *            - the seed of the {@link model.Deck} of the match
+	 * @param playersNumber
+	 *            - the number of players
+	 */
+	public RecordedGame(long seed, int playersNumber) {
+		this.seed = seed;
+		this.playersNumber = playersNumber;
+		this.finalScores = new int[playersNumber];
+	}
+
+	/**
+	 * Adds a move to this record.
+	 * 
+	 * @param move
+	 *            - the {@link Move} played
+	 * @param projected
+	 *            - the projected score of each player after the move, in turn
+	 *            order
+	 */
+	public void add(Move move, int[] projected) {
+		checkLength(projected);
+		moves.add(move);
+		scores.add(projected.clone());
+	}
+
+	/**
+	 * Sets the scores of the players at the end of the match.
+	 * 
+	 * @param finalScores
+	 *            - the final score of each player, in turn order
+	 */
+	public void setFinalScores(int[] finalScores) {
+		checkLength(finalScores);
+		this.finalScores = finalScores.clone();
+	}
+
+	private void checkLength(int[] playerScores) {
+		if (playerScores.length != playersNumber) {
+			throw new IllegalArgumentException("Expected " + playersNumber
+					+ " scores, not " + playerScores.length + ".");
+		}
+	}
+
+	/**
+	 * Returns the seed of the {@link model.Deck} of the match.
+	 * 
+	 * @return the seed of the deck
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns the number of players of the match.
+	 * 
+	 * @return the number of players
+	 */
+	public int getPlayersNumber() {
+		return playersNumber;
+	}
+
+	/**
+	 * Returns the moves of the match, in order.
+	 * 
+	 * @return the {@link Move}s played
+	 */
+	public List<Move> getMoves() {
+		return Collections.unmodifiableList(moves);
+	}
+
+	/**
+	 * Returns the projected scores recorded after the given move.
+	 * 
+	 * @param move
+	 *            - the index of the move
+	 * @return the projected score of each player, in turn order
+	 */
+	public int[] getScores(int move) {
+		return scores.get(move).clone();
+	}
+
+	/**
+	 * Returns the scores of the players at the end of the match.
+	 * 
+	 * @return the final score of each player, in turn order
+	 */
+	public int[] getFinalScores() {
+		return finalScores.clone();
+	}
+
+	private void write(DataOutput output) throws IOException {
+		output.writeLong(seed);
+		output.writeByte(playersNumber);
+		output.writeInt(moves.size());
+		for (int i = 0; i < moves.size(); i++) {
+			Move move = moves.get(i);
+			int marker = move.getMarker() == null ? 0 : move.getMarker()
+					.ordinal() + 1;
+			output.writeShort(move.getType().getDefinition());
+			output.writeShort(move.getX());
+			output.writeShort(move.getY());
+			output.writeByte(move.getRotation() | marker << ROTATION_BITS);
+			for (int score : scores.get(i)) {
+				output.writeShort(score);
+			}
+		}
+		for (int score : finalScores) {
+			output.writeShort(score);
+		}
+	}
+
+	private static RecordedGame read(DataInput input) throws IOException {
+		RecordedGame game = new RecordedGame(input.readLong(),
+				input.readUnsignedByte());
+		int movesNumber = input.readInt();
+		if (movesNumber < 0) {
+			throw new IOException("Negative number of moves.");
+		}
+		Direction[] directions = Direction.values();
+		for (int i = 0; i < movesNumber; i++) {
+			TileType type = TileType.valueOf(input.readUnsignedShort());
+			int x = input.readShort();
+			int y = input.readShort();
+			int details = input.readUnsignedByte();
+			int marker = details >>> ROTATION_BITS;
+			if (marker > directions.length) {
+				throw new IOException("Unknown marker: " + marker);
+			}
+			Move move = new Move(type, x, y, details
+					& ((1 << ROTATION_BITS) - 1), marker == 0 ? null
+					: directions[marker - 1]);
+			game.moves.add(move);
+			game.scores.add(readScores(input, game.playersNumber));
+		}
+		game.finalScores = readScores(input, game.playersNumber);
+		return game;
+	}
+
+	private static int[] readScores(DataInput input, int playersNumber)
+			throws IOException {
+		int[] result = new int[playersNumber];
+		for (int i = 0; i < playersNumber; i++) {
+			result[i] = input.readShort();
+		}
+		return result;
+	}
+
+	/**
+	 * Saves the given games in an archive.
+	 * 
+	 * @param file
+	 *            - the file of the archive, overwritten if it exists
+	 * @param games
+	 *            - the games to save
+	 * @throws IOException
+	 *             - if the archive can't be written
+	 */
+	public static void save(File file, Collection<RecordedGame> games)
+			throws IOException {
+		DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(games.size());
+			for (RecordedGame game : games) {
+				game.write(output);
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Loads the games of the given archive.
+	 * 
+	 * @param file
+	 *            - the file of the archive
+	 * @return the games of the archive, in order
+	 * @throws IOException
+	 *             - if the archive can't be read or isn't an archive of
+	 *             games
+	 */
+	public static List<RecordedGame> load(File file) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			if (input.readInt() != MAGIC) {
+				throw new IOException(file + " is not an archive of games.");
+			}
+			int count = input.readInt();
+			List<RecordedGame> games = new ArrayList<RecordedGame>();
+			for (int i = 0; i < count; i++) {
+				games.add(read(input));
+			}
+			return games;
+		} finally {
+			input.close();
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package sim;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.*;
+import view.bot.Move;
+
+/**
+ * The ReplayRunner class plays again {@link RecordedGame}s as fast as it can,
+ * spreading them over several threads, and checks that every move still gives
+ * the scores that were recorded. The games are played by a {@link GameEngine},
+ * straight on its {@link Board}, so no {@link java.util.Observable} is
+ * involved: replaying an archive of matches checks that a change to the engine
+ * keeps the rules as they were, and times it on real matches.
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public class ReplayRunner {
+
+	private final List<RecordedGame> games;
+	private final DeckTemplate template;
+	private final int threads;
+	private long elapsed = 0;
+	private long moves = 0;
+
+	/**
+	 * Creates a replay of the given games, that were played with a
+	 * {@link Deck} of the given template.
+	 * 
+	 * @param games
+	 *            - the games to replay
+	 * @param template
+	 *            - the {@link DeckTemplate} of the games
+	 * @param threads
+	 *            - the number of games replayed at the same time
+	 */
+	public ReplayRunner(List<RecordedGame> games, DeckTemplate template,
+			int threads) {
+		this.games = new ArrayList<RecordedGame>(games);
+		this.template = template;
+		this.threads = Math.max(threads, 1);
+	}
+
+	/**
+	 * Replays every game, checking the scores after each move and at the end.
+	 * 
+	 * @throws InterruptedException
+	 *             - if the thread is interrupted while waiting the games
+	 * @throws ExecutionException
+	 *             - if a game failed, because a move was illegal or gave
+	 *             other scores than the recorded ones
+	 */
+	public void run() throws InterruptedException, ExecutionException {
+		long start = System.nanoTime();
+		final AtomicInteger next = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Long>> results = new ArrayList<Future<Long>>();
+		moves = 0;
+		try {
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit(new Callable<Long>() {
+					public Long call() {
+						long played = 0;
+						for (int game = next.getAndIncrement(); game < games
+								.size(); game = next.getAndIncrement()) {
+							played += replay(game);
+						}
+						return played;
+					}
+				}));
+			}
+			for (Future<Long> result : results) {
+				moves += result.get();
+			}
+		} finally {
+			executor.shutdownNow();
+			elapsed = System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Replays the given game and returns the number of its moves.
+	 */
+	private int replay(int index) {
+		RecordedGame game = games.get(index);
+		GameEngine engine = new GameEngine(new Deck(template, game.getSeed()));
+		for (int i = 0; i < game.getPlayersNumber(); i++) {
+			try {
+				engine.addPlayer();
+			} catch (FullMatchException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		engine.start();
+		List<Move> played = game.getMoves();
+		int turn = 0;
+		while (engine.nextTurn()) {
+			if (turn == played.size()) {
+				throw new IllegalStateException("Game " + index
+						+ " goes on after its " + turn + " moves.");
+			}
+			apply(engine, played.get(turn), index, turn);
+			check(game.getScores(turn), engine.getProjectedScores(), index,
+					"move " + turn);
+			turn++;
+		}
+		if (turn < played.size()) {
+			throw new IllegalStateException("Game " + index + " ends after "
+					+ turn + " of its " + played.size() + " moves.");
+		}
+		int[] scores = new int[game.getPlayersNumber()];
+		for (int i = 0; i < scores.length; i++) {
+			scores[i] = engine.getPlayers().get(i).getScore();
+		}
+		check(game.getFinalScores(), scores, index, "the end");
+		return turn;
+	}
+
+	private static void apply(GameEngine engine, Move move, int game, int turn) {
+		if (engine.getCurrentCard().getType() != move.getType()) {
+			throw new IllegalStateException("Game " + game + ", move " + turn
+					+ ": drew " + engine.getCurrentCard().getType()
+					+ " instead of " + move.getType());
+		}
+		try {
+			while (engine.getCurrentCard().getRotation() != move.getRotation()) {
+				engine.rotateCard();
+			}
+			engine.placeCurrentCard(new Coordinate(move.getX(), move.getY()));
+			if (move.getMarker() != null) {
+				engine.placeMarker(move.getMarker());
+			}
+		} catch (InvalidPutException e) {
+			throw new IllegalStateException("Game " + game + ", move " + turn
+					+ " is illegal: " + move);
+		} catch (InvalidMarkerPositionException e) {
+			throw new IllegalStateException("Game " + game + ", move " + turn
+					+ " has an illegal marker: " + move);
+		} catch (NoMoreMarkersException e) {
+			throw new IllegalStateException("Game " + game + ", move " + turn
+					+ " has no more markers: " + move);
+		}
+	}
+
+	private static void check(int[] expected, int[] actual, int game,
+			String when) {
+		if (!Arrays.equals(expected, actual)) {
+			throw new IllegalStateException("Game " + game + ", " + when
+					+ ": expected scores " + Arrays.toString(expected)
+					+ " but were " + Arrays.toString(actual));
+		}
+	}
+
+	/**
+	 * Returns the number of moves replayed by the last run().
+	 * 
+	 * @return the number of moves replayed
+	 */
+	public long getMoves() {
+		return moves;
+	}
+
+	/**
+	 * Returns the time the last run() lasted, in nanoseconds.
+	 * 
+	 * @return the duration of the last run()
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	/**
+	 * Returns the number of games replayed each second by the last run().
+	 * 
+	 * @return the throughput of the last run(), in games per second
+	 */
+	public double getThroughput() {
+		return elapsed == 0 ? 0 : games.size() * 1e9 / elapsed;
+	}
+
+	/**
+	 * Returns the number of moves replayed each second by the last run().
+	 * 
+	 * @return the throughput of the last run(), in moves per second
+	 */
+	public double getMoveThroughput() {
+		return elapsed == 0 ? 0 : moves * 1e9 / elapsed;
+	}
+
+	/**
+	 * Replays the archives of games given as arguments, recorded by
+	 * {@link TournamentRunner} with the standard deck, and prints the
+	 * throughput. The options "--threads=T" and "--rounds=R" (to replay the
+	 * whole archive R times, the first one warming up) may come first.
+	 * 
+	 * @param args
+	 *            - the command line arguments
+	 */
+	public static void main(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int rounds = 1;
+		int first = 0;
+		while (first < args.length && args[first].startsWith("--")) {
+			String option = args[first++];
+			if (option.startsWith("--threads=")) {
+				threads = Integer.parseInt(option.substring(10));
+			} else if (option.startsWith("--rounds=")) {
+				rounds = Integer.parseInt(option.substring(9));
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + option);
+			}
+		}
+		if (first == args.length) {
+			System.err.println("Usage: ReplayRunner [--threads=T] "
+					+ "[--rounds=R] archive...");
+			return;
+		}
+		List<RecordedGame> games = new ArrayList<RecordedGame>();
+		for (int i = first; i < args.length; i++) {
+			games.addAll(RecordedGame.load(new File(args[i])));
+		}
+		ReplayRunner runner = new ReplayRunner(games,
+				DeckTemplate.getStandard(), threads);
+		for (int round = 0; round < rounds; round++) {
+			runner.run();
+			System.out.println(String.format(
+					"%d games, %d moves in %.2f s (%.1f games/s, %.0f moves/s),"
+							+ " %d threads", games.size(), runner.getMoves(),
+					runner.getElapsed() / 1e9, runner.getThroughput(),
+					runner.getMoveThroughput(), threads));
+		}
+	}
+}
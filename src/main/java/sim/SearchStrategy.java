@@ -0,0 +1,64 @@
+package sim;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import model.Card;
+import model.GameEngine;
+import model.TileType;
+import view.bot.MonteCarloTreeSearch;
+import view.bot.Move;
+
+/**
+ * The SearchStrategy class chooses the {@link Move} visited the most by a
+ * {@link MonteCarloTreeSearch} having a fixed number of iterations, so that
+ * the matches can be replayed from their seed whatever the load of the
+ * machine.
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public class SearchStrategy implements Strategy {
+
+	private final int iterations;
+
+	/**
+	 * Creates a strategy searching for the given number of iterations each
+	 * turn.
+	 * 
+	 * @param iterations
+	 *            - the iterations of each search
+	 */
+	public SearchStrategy(int iterations) {
+		if (iterations <= 0) {
+			throw new IllegalArgumentException("Iterations must be positive.");
+		}
+		this.iterations = iterations;
+	}
+
+	@Override
+	public String getName() {
+		return "mcts:" + iterations;
+	}
+
+	@Override
+	public Move choose(GameEngine engine, Card starter, List<Move> history,
+			Random random) {
+		TileType type = engine.getCurrentCard().getType();
+		Map<Move, Integer> visits = new MonteCarloTreeSearch(engine
+				.getPlayers().size(), starter, history, type,
+				MonteCarloTreeSearch.getRemainingTiles(engine.getTemplate(),
+						history, type),
+				Long.MAX_VALUE, iterations, random.nextLong()).call();
+		Move best = null;
+		int bestVisits = -1;
+		for (Map.Entry<Move, Integer> entry : visits.entrySet()) {
+			if (entry.getValue() > bestVisits) {
+				best = entry.getKey();
+				bestVisits = entry.getValue();
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,44 @@
+package sim;
+
+import java.util.List;
+import java.util.Random;
+
+import model.Card;
+import model.GameEngine;
+import view.bot.Move;
+
+/**
+ * This Interface is implemented by the players of a {@link TournamentRunner}.
+ * A Strategy is shared by every match played at the same time, so it must not
+ * keep any state of its own between two calls.
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public interface Strategy {
+
+	/**
+	 * Returns the name of this Strategy, as shown in the statistics.
+	 * 
+	 * @return the name of this Strategy
+	 */
+	String getName();
+
+	/**
+	 * Chooses the {@link Move} of the current player with the current card of
+	 * the given {@link GameEngine}. The engine must not be changed.
+	 * 
+	 * @param engine
+	 *            - the {@link GameEngine} of the match, at the beginning of the
+	 *            turn
+	 * @param starter
+	 *            - the {@link Card} put in (0,0) when the match started
+	 * @param history
+	 *            - the {@link Move}s played so far, in order
+	 * @param random
+	 *            - the source of randomness of the match
+	 * @return a legal {@link Move} with the current card
+	 */
+	Move choose(GameEngine engine, Card starter, List<Move> history,
+			Random random);
+}
@@ -0,0 +1,167 @@
+package sim;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The StrategyStatistics class sums up the matches played by a
+ * {@link Strategy} in a tournament: the seats it took, its wins (a tie among k
+ * players gives 1/k of a win to each of them) and the distribution of its
+ * final scores.
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public class StrategyStatistics {
+
+	private final String name;
+	private int seats = 0;
+	private double wins = 0;
+	private long scoreSum = 0;
+	private long scoreSquares = 0;
+	private final SortedMap<Integer, Integer> scores = new TreeMap<Integer, Integer>();
+
+	/**
+	 * Creates empty statistics for the {@link Strategy} having the given name.
+	 * 
+	 * @param name
+	 *            - the name of the {@link Strategy}
+	 */
+	public StrategyStatistics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Adds a match to these statistics.
+	 * 
+	 * @param score
+	 *            - the final score of the {@link Strategy}
+	 * @param win
+	 *            - the share of the win, from 0 to 1
+	 */
+	void add(int score, double win) {
+		seats++;
+		wins += win;
+		scoreSum += score;
+		scoreSquares += (long) score * score;
+		Integer count = scores.get(score);
+		scores.put(score, count == null ? 1 : count + 1);
+	}
+
+	/**
+	 * Adds the matches of the given statistics to these ones.
+	 * 
+	 * @param other
+	 *            - statistics of the same {@link Strategy}
+	 */
+	void merge(StrategyStatistics other) {
+		seats += other.seats;
+		wins += other.wins;
+		scoreSum += other.scoreSum;
+		scoreSquares += other.scoreSquares;
+		for (Map.Entry<Integer, Integer> entry : other.scores.entrySet()) {
+			Integer count = scores.get(entry.getKey());
+			scores.put(entry.getKey(), entry.getValue()
+					+ (count == null ? 0 : count));
+		}
+	}
+
+	/**
+	 * Returns the name of the {@link Strategy}.
+	 * 
+	 * @return the name of the {@link Strategy}
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of seats taken by the {@link Strategy}.
+	 * 
+	 * @return the number of seats taken
+	 */
+	public int getSeats() {
+		return seats;
+	}
+
+	/**
+	 * Returns the wins of the {@link Strategy}, ties being shared.
+	 * 
+	 * @return the wins
+	 */
+	public double getWins() {
+		return wins;
+	}
+
+	/**
+	 * Returns the share of the seats that have been won.
+	 * 
+	 * @return the win rate, from 0 to 1
+	 */
+	public double getWinRate() {
+		return seats == 0 ? 0 : wins / seats;
+	}
+
+	/**
+	 * Returns the mean of the final scores.
+	 * 
+	 * @return the mean score
+	 */
+	public double getMeanScore() {
+		return seats == 0 ? 0 : (double) scoreSum / seats;
+	}
+
+	/**
+	 * Returns the standard deviation of the final scores.
+	 * 
+	 * @return the standard deviation of the scores
+	 */
+	public double getScoreDeviation() {
+		if (seats == 0) {
+			return 0;
+		}
+		double mean = getMeanScore();
+		return Math.sqrt(Math.max(0, (double) scoreSquares / seats - mean
+				* mean));
+	}
+
+	/**
+	 * Returns the lowest score such that at least the given share of the
+	 * scores is not higher.
+	 * 
+	 * @param share
+	 *            - the share of the scores, from 0 to 1
+	 * @return the quantile of the scores, or 0 if there's none
+	 */
+	public int getScoreQuantile(double share) {
+		long needed = Math.max(1, (long) Math.ceil(share * seats));
+		long seen = 0;
+		for (Map.Entry<Integer, Integer> entry : scores.entrySet()) {
+			seen += entry.getValue();
+			if (seen >= needed) {
+				return entry.getKey();
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns how many times each final score has been reached.
+	 * 
+	 * @return the number of matches ended with each score
+	 */
+	public SortedMap<Integer, Integer> getScoreDistribution() {
+		return new TreeMap<Integer, Integer>(scores);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%-12s seats=%d wins=%.1f%% score=%.1f+-%.1f "
+				+ "[min=%d p10=%d p50=%d p90=%d max=%d]", name, seats,
+				getWinRate() * 100, getMeanScore(), getScoreDeviation(),
+				getScoreQuantile(0), getScoreQuantile(0.1),
+				getScoreQuantile(0.5), getScoreQuantile(0.9),
+				getScoreQuantile(1));
+	}
+}
@@ -0,0 +1,306 @@
+package sim;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.*;
+import view.bot.Move;
+
+/**
+ * The TournamentRunner class plays many matches between {@link Strategy}s
+ * without any view, spreading them over several threads, and sums up how each
+ * {@link Strategy} did. The matches are played by a {@link GameEngine}, that
+ * is by the same rules {@link CarcassonneModel} applies.
+ * 
+ * Each match has its own seed, from which its {@link Deck} is shuffled and the
+ * {@link Strategy}s draw their random numbers, so that a tournament gives the
+ * same results whatever the number of threads. The {@link Strategy}s take the
+ * seats in turns: the k-th seat of the n-th match is taken by the (n+k)-th
+ * {@link Strategy}, modulo their number.
+ * 
+ * If recording is on, each match is kept as a {@link RecordedGame}, so that
+ * it can be saved and played again by a {@link ReplayRunner}.
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public class TournamentRunner {
+
+	private final List<Strategy> strategies;
+	private final int playersNumber;
+	private final int games;
+	private final long seed;
+	private final int threads;
+	private long elapsed = 0;
+	private RecordedGame[] recorded;
+
+	/**
+	 * Creates a tournament.
+	 * 
+	 * @param strategies
+	 *            - the {@link Strategy}s taking part
+	 * @param playersNumber
+	 *            - the number of players of each match
+	 * @param games
+	 *            - the number of matches
+	 * @param seed
+	 *            - the seed of the whole tournament
+	 * @param threads
+	 *            - the number of matches played at the same time
+	 */
+	public TournamentRunner(List<Strategy> strategies, int playersNumber,
+			int games, long seed, int threads) {
+		if (strategies.isEmpty()) {
+			throw new IllegalArgumentException("No strategies.");
+		}
+		if (playersNumber < 2 || playersNumber > PlayerColor.values().length) {
+			throw new IllegalArgumentException("Players must be from 2 to "
+					+ PlayerColor.values().length + ".");
+		}
+		this.strategies = new ArrayList<Strategy>(strategies);
+		this.playersNumber = playersNumber;
+		this.games = games;
+		this.seed = seed;
+		this.threads = Math.max(threads, 1);
+	}
+
+	/**
+	 * Sets whether the next run() keeps a {@link RecordedGame} of each match.
+	 * 
+	 * @param recording
+	 *            - true to record the matches
+	 */
+	public void setRecording(boolean recording) {
+		recorded = recording ? new RecordedGame[games] : null;
+	}
+
+	/**
+	 * Returns the matches recorded by the last run(), in order, or an empty
+	 * list if recording is off.
+	 * 
+	 * @return the {@link RecordedGame}s of the last run()
+	 */
+	public List<RecordedGame> getRecorded() {
+		if (recorded == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(Arrays.asList(recorded));
+	}
+
+	/**
+	 * Plays every match and returns the statistics of each {@link Strategy},
+	 * in the order they were given.
+	 * 
+	 * @return the statistics of each {@link Strategy}
+	 * @throws InterruptedException
+	 *             - if the thread is interrupted while waiting the matches
+	 * @throws ExecutionException
+	 *             - if a match failed, e.g. because a {@link Strategy} chose
+	 *             an illegal move
+	 */
+	public List<StrategyStatistics> run() throws InterruptedException,
+			ExecutionException {
+		long start = System.nanoTime();
+		final AtomicInteger next = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<List<StrategyStatistics>>> results = new ArrayList<Future<List<StrategyStatistics>>>();
+		try {
+			for (int i = 0; i < threads; i++) {
+				// each worker keeps its own statistics, merged at the end
+				results.add(executor
+						.submit(new Callable<List<StrategyStatistics>>() {
+							public List<StrategyStatistics> call() {
+								List<StrategyStatistics> statistics = newStatistics();
+								for (int game = next.getAndIncrement(); game < games; game = next
+										.getAndIncrement()) {
+									play(game, statistics);
+								}
+								return statistics;
+							}
+						}));
+			}
+			List<StrategyStatistics> total = newStatistics();
+			for (Future<List<StrategyStatistics>> result : results) {
+				List<StrategyStatistics> partial = result.get();
+				for (int i = 0; i < total.size(); i++) {
+					total.get(i).merge(partial.get(i));
+				}
+			}
+			return total;
+		} finally {
+			executor.shutdownNow();
+			elapsed = System.nanoTime() - start;
+		}
+	}
+
+	private List<StrategyStatistics> newStatistics() {
+		List<StrategyStatistics> statistics = new ArrayList<StrategyStatistics>();
+		for (Strategy strategy : strategies) {
+			statistics.add(new StrategyStatistics(strategy.getName()));
+		}
+		return statistics;
+	}
+
+	/**
+	 * Plays the given match and adds its outcome to the given statistics.
+	 */
+	private void play(int game, List<StrategyStatistics> statistics) {
+		Random random = new Random(seed + game * 0x9E3779B97F4A7C15L);
+		long deckSeed = random.nextLong();
+		GameEngine engine = new GameEngine(new Deck(DeckTemplate.getStandard(),
+				deckSeed));
+		RecordedGame record = recorded == null ? null : new RecordedGame(
+				deckSeed, playersNumber);
+		int[] seats = new int[playersNumber];
+		for (int i = 0; i < playersNumber; i++) {
+			seats[i] = (game + i) % strategies.size();
+			try {
+				engine.addPlayer();
+			} catch (FullMatchException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		Card starter = engine.start().clone();
+		List<Move> history = new ArrayList<Move>();
+		while (engine.nextTurn()) {
+			int seat = engine.getPlayers().indexOf(engine.getCurrentPlayer());
+			Strategy strategy = strategies.get(seats[seat]);
+			Move move = strategy.choose(engine, starter, history, random);
+			apply(engine, move, strategy);
+			history.add(move);
+			if (record != null) {
+				record.add(move, engine.getProjectedScores());
+			}
+		}
+		int best = Integer.MIN_VALUE;
+		int winners = 0;
+		for (Player player : engine.getPlayers()) {
+			if (player.getScore() > best) {
+				best = player.getScore();
+				winners = 1;
+			} else if (player.getScore() == best) {
+				winners++;
+			}
+		}
+		int[] scores = new int[playersNumber];
+		for (int i = 0; i < playersNumber; i++) {
+			int score = engine.getPlayers().get(i).getScore();
+			statistics.get(seats[i]).add(score,
+					score == best ? 1.0 / winners : 0);
+			scores[i] = score;
+		}
+		if (record != null) {
+			record.setFinalScores(scores);
+			recorded[game] = record;
+		}
+	}
+
+	private static void apply(GameEngine engine, Move move, Strategy strategy) {
+		if (move == null) {
+			throw new IllegalStateException(strategy.getName()
+					+ " chose no move.");
+		}
+		try {
+			while (engine.getCurrentCard().getRotation() != move.getRotation()) {
+				engine.rotateCard();
+			}
+			engine.placeCurrentCard(new Coordinate(move.getX(), move.getY()));
+			if (move.getMarker() != null) {
+				engine.placeMarker(move.getMarker());
+			}
+		} catch (InvalidPutException e) {
+			throw new IllegalStateException(strategy.getName()
+					+ " chose an illegal move: " + move);
+		} catch (InvalidMarkerPositionException e) {
+			throw new IllegalStateException(strategy.getName()
+					+ " chose an illegal marker: " + move);
+		} catch (NoMoreMarkersException e) {
+			throw new IllegalStateException(strategy.getName()
+					+ " has no more markers: " + move);
+		}
+	}
+
+	/**
+	 * Returns the time the last run() lasted, in nanoseconds.
+	 * 
+	 * @return the duration of the last run()
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	/**
+	 * Returns the number of matches played each second by the last run().
+	 * 
+	 * @return the throughput of the last run(), in matches per second
+	 */
+	public double getThroughput() {
+		return elapsed == 0 ? 0 : games * 1e9 / elapsed;
+	}
+
+	/**
+	 * Plays a tournament and prints its statistics. The arguments are the
+	 * number of matches, the number of players of each match and then the
+	 * {@link Strategy}s: "random" or "mcts:N" for a search of N iterations.
+	 * The options "--seed=S", "--threads=T" and "--record=FILE" (to save the
+	 * matches in an archive for {@link ReplayRunner}) may come first; by
+	 * default the seed is random and there's a thread for each processor.
+	 * 
+	 * @param args
+	 *            - the command line arguments
+	 */
+	public static void main(String[] args) throws Exception {
+		long seed = new Random().nextLong();
+		int threads = Runtime.getRuntime().availableProcessors();
+		File archive = null;
+		int first = 0;
+		while (first < args.length && args[first].startsWith("--")) {
+			String option = args[first++];
+			if (option.startsWith("--seed=")) {
+				seed = Long.parseLong(option.substring(7));
+			} else if (option.startsWith("--threads=")) {
+				threads = Integer.parseInt(option.substring(10));
+			} else if (option.startsWith("--record=")) {
+				archive = new File(option.substring(9));
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + option);
+			}
+		}
+		if (args.length - first < 3) {
+			System.err.println("Usage: TournamentRunner [--seed=S] "
+					+ "[--threads=T] [--record=FILE] games players strategy...");
+			return;
+		}
+		int games = Integer.parseInt(args[first]);
+		int players = Integer.parseInt(args[first + 1]);
+		List<Strategy> strategies = new ArrayList<Strategy>();
+		for (int i = first + 2; i < args.length; i++) {
+			strategies.add(parseStrategy(args[i]));
+		}
+		TournamentRunner runner = new TournamentRunner(strategies, players,
+				games, seed, threads);
+		runner.setRecording(archive != null);
+		for (StrategyStatistics statistics : runner.run()) {
+			System.out.println(statistics);
+		}
+		System.out.println(String.format(
+				"%d games in %.1f s (%.1f games/s), seed %d, %d threads",
+				games, runner.getElapsed() / 1e9, runner.getThroughput(),
+				seed, threads));
+		if (archive != null) {
+			RecordedGame.save(archive, runner.getRecorded());
+		}
+	}
+
+	private static Strategy parseStrategy(String name) {
+		if (name.equals("random")) {
+			return new RandomStrategy();
+		}
+		if (name.startsWith("mcts:")) {
+			return new SearchStrategy(Integer.parseInt(name.substring(5)));
+		}
+		throw new IllegalArgumentException("Unknown strategy: " + name);
+	}
+}
@@ -0,0 +1,241 @@
+package view;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import view.bot.MonteCarloTreeSearch;
+import view.bot.Move;
+import model.*;
+
+/**
+ * This class is a player driven by the computer. It can be added to a
+ * {@link controller.Match} like any other view: it follows the match through
+ * the updates of the model and, when it's its turn, it chooses a {@link Move}
+ * by Monte Carlo Tree Search and sends the same commands a human would send
+ * ("rotate", the {@link Coordinate}, then the {@link Direction} of the marker
+ * or "pass").
+ * 
+ * The search is run in parallel by several independent
+ * {@link MonteCarloTreeSearch}es, whose visits are summed, within a time
+ * budget and optionally an iteration budget for each turn. Commands are sent
+ * from a separate thread, since the model answers them by updating this view.
+ * The searches of all the bots share a pool with a thread for each processor
+ * and the commands are sent by threads that stop when idle, so a bot left in a
+ * match that never ends keeps no thread alive.
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public class BotCarcassonneView extends AbstractCarcassonneView {
+
+	static final long DEFAULT_TIME = 1500;
+	private static final ThreadFactory DAEMONS = new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "carcassonne-bot");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+	private static final ExecutorService SEARCHERS = Executors
+			.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+					DAEMONS);
+	private static final ExecutorService ACTORS = Executors
+			.newCachedThreadPool(DAEMONS);
+	private final DeckTemplate template;
+	private final int threads;
+	private final long time;
+	private final int iterations;
+	private final Random seeds = new Random();
+	private final List<Move> history = new ArrayList<Move>();
+	private final Set<Coordinate> placed = new HashSet<Coordinate>();
+	private Player owner;
+	private int playersNumber;
+	private Card starter;
+	private Player currentPlayer;
+	private CardUpdate currentCard;
+	private Coordinate lastPlaced;
+	private boolean started = false;
+	private boolean pendingTurn = false;
+	private int turns = 0;
+
+	/**
+	 * Construct a bot for a match played with the standard
+	 * {@link DeckTemplate}, searching with a thread for each processor for 1.5
+	 * seconds each turn.
+	 */
+	public BotCarcassonneView() {
+		this(DeckTemplate.getStandard(), Runtime.getRuntime()
+				.availableProcessors(), DEFAULT_TIME, 0);
+	}
+
+	/**
+	 * Construct a bot having the given budget.
+	 * 
+	 * @param template
+	 *            - the {@link DeckTemplate} of the {@link Deck} of the match
+	 * @param threads
+	 *            - the number of searches run in parallel
+	 * @param time
+	 *            - the milliseconds the search can last each turn
+	 * @param iterations
+	 *            - the iterations of the search each turn, split among the
+	 *            threads, or 0 for no limit
+	 */
+	public BotCarcassonneView(DeckTemplate template, int threads, long time,
+			int iterations) {
+		super();
+		this.template = template;
+		this.threads = Math.max(threads, 1);
+		this.time = time;
+		this.iterations = iterations;
+	}
+
+	/**
+	 * Overrides the {@link Observer}'s update. Keeps track of the moves played
+	 * and starts thinking when it's the turn of this bot.
+	 */
+	@Override
+	public synchronized void update(Observable model, Object update) {
+		if (update instanceof StartSignal && !started) {
+			StartSignal signal = (StartSignal) update;
+			owner = signal.getPlayer();
+			playersNumber = signal.getPlayersNumber();
+			starter = signal.getStarterCard();
+			placed.add(new Coordinate(0, 0));
+			started = true;
+		} else if (update instanceof Player) {
+			currentPlayer = (Player) update;
+			// the card of the new turn comes next
+			currentCard = null;
+			pendingTurn = true;
+			turns++;
+		} else if (update instanceof CardUpdate) {
+			currentCard = (CardUpdate) update;
+		} else if (update instanceof BoardUpdate) {
+			track((BoardUpdate) update);
+		} else if (update instanceof String
+				&& ((String) update).startsWith("Game Over")) {
+			started = false;
+		}
+		if (started && pendingTurn && currentCard != null && owner != null
+				&& owner.equals(currentPlayer)) {
+			pendingTurn = false;
+			final CardUpdate card = currentCard;
+			final int turn = turns;
+			ACTORS.execute(new Runnable() {
+				public void run() {
+					play(card, turn);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Records a placement, or the marker put on the last placed card. The
+	 * updates of cards losing their markers are not recorded since the moves
+	 * are enough to know the state of the match. A placement may come with its
+	 * marker when the bot is brought up to date on a match going on.
+	 */
+	private void track(BoardUpdate update) {
+		Coordinate where = update.getWhere();
+		Card card = update.getUpdatedCard();
+		if (placed.add(where)) {
+			lastPlaced = where;
+			Direction marker = null;
+			try {
+				marker = card.getMarkerPosition();
+			} catch (NoMarkerOnCardException e) {
+				// placed without a marker.
+			}
+			history.add(new Move(card.getType(), where.getX(), where.getY(),
+					card.getRotation(), marker));
+		} else if (where.equals(lastPlaced)) {
+			try {
+				Direction marker = card.getMarkerPosition();
+				Move last = history.get(history.size() - 1);
+				if (last.getMarker() == null) {
+					history.set(history.size() - 1, last.withMarker(marker));
+				}
+			} catch (NoMarkerOnCardException e) {
+				// the last placed card lost its marker: nothing to record.
+			}
+		}
+	}
+
+	/**
+	 * Chooses and sends the commands of the turn.
+	 */
+	private void play(CardUpdate card, int turn) {
+		Move move;
+		try {
+			move = chooseMove(card.getType());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if (move == null) {
+			return;
+		}
+		for (int i = (move.getRotation() - card.getRotation()) & 3; i > 0; i--) {
+			setChanged();
+			notifyObservers("rotate");
+		}
+		setChanged();
+		notifyObservers(new Coordinate(move.getX(), move.getY()));
+		if (move.getMarker() != null) {
+			setChanged();
+			notifyObservers(move.getMarker());
+		}
+		synchronized (this) {
+			if (turns != turn || !started) {
+				// the marker has been put and the turn (or the match) is over.
+				return;
+			}
+		}
+		setChanged();
+		notifyObservers("pass");
+	}
+
+	/**
+	 * Runs the searches and returns the {@link Move} visited the most, or
+	 * null if there's none.
+	 */
+	private Move chooseMove(TileType type) throws InterruptedException {
+		List<Move> moves;
+		List<TileType> deck;
+		synchronized (this) {
+			moves = new ArrayList<Move>(history);
+			deck = MonteCarloTreeSearch.getRemainingTiles(template, history,
+					type);
+		}
+		long deadline = System.currentTimeMillis() + time;
+		int perThread = iterations == 0 ? 0 : Math.max(1, iterations / threads);
+		List<Future<Map<Move, Integer>>> results = new ArrayList<Future<Map<Move, Integer>>>();
+		for (int i = 0; i < threads; i++) {
+			results.add(SEARCHERS.submit(new MonteCarloTreeSearch(
+					playersNumber, starter, moves, type, deck, deadline,
+					perThread, seeds.nextLong())));
+		}
+		Map<Move, Integer> visits = new HashMap<Move, Integer>();
+		for (Future<Map<Move, Integer>> result : results) {
+			try {
+				for (Map.Entry<Move, Integer> entry : result.get().entrySet()) {
+					Integer sum = visits.get(entry.getKey());
+					visits.put(entry.getKey(), entry.getValue()
+							+ (sum == null ? 0 : sum));
+				}
+			} catch (ExecutionException e) {
+				System.err.println("Bot search failed: " + e.getCause());
+			}
+		}
+		Move best = null;
+		int bestVisits = -1;
+		for (Map.Entry<Move, Integer> entry : visits.entrySet()) {
+			if (entry.getValue() > bestVisits) {
+				best = entry.getKey();
+				bestVisits = entry.getValue();
+			}
+		}
+		return best;
+	}
+}
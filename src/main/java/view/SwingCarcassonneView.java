@@ -49,8 +49,8 @@ public class SwingCarcassonneView extends AbstractCarcassonneView implements
 		if (update instanceof String) {
 			this.stringUpdate((String) update);
 		}
-		if (update instanceof Card) {
-			this.cardUpdate((Card) update);
+		if (update instanceof CardUpdate) {
+			this.cardUpdate(((CardUpdate) update).getUpdatedCard());
 		}
 		if (update instanceof Player) {
 			this.playerUpdate((Player) update);
@@ -315,8 +315,9 @@ public class TextualCarcassonneView extends AbstractCarcassonneView implements
 			console.flush();
 		}
 
-		if (update instanceof Card) {
-			currentTile = new TextualCard((Card) update);
+		if (update instanceof CardUpdate) {
+			currentTile = new TextualCard(
+					((CardUpdate) update).getUpdatedCard());
 			console.println("The card to play is:");
 			console.println("#############");
 			console.flush();
@@ -0,0 +1,244 @@
+package view.bot;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import model.Card;
+import model.DeckTemplate;
+import model.TileType;
+
+/**
+ * The MonteCarloTreeSearch class looks for the best {@link Move} of a player
+ * with open-loop UCT: the tiles still in the deck are shuffled again at each
+ * iteration, the tree is walked choosing the {@link Move}s by upper confidence
+ * bound among those legal with the drawn tiles, a new node is added and the
+ * match is played to the end with random {@link Move}s. Each node is rewarded
+ * with the outcome of the player that made its {@link Move}: 1 for a win,
+ * 0.5 for a tie and 0 otherwise.
+ * 
+ * The search is a Callable so that several searches, each with its own
+ * {@link SearchState} and seed, can run in parallel on the same position and
+ * have their visits summed (root parallelization).
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public class MonteCarloTreeSearch implements Callable<Map<Move, Integer>> {
+
+	private static final double EXPLORATION = 0.7;
+	private final SearchState state;
+	private final TileType current;
+	private final TileType[] deck;
+	private final long deadline;
+	private final int iterations;
+	private final Random random;
+	private final int[] scores;
+	private final double[] outcome;
+	private final Node root = new Node(-1);
+
+	/**
+	 * A node of the tree: the statistics of the {@link Move} leading to it.
+	 */
+	private static final class Node {
+		private final int player;
+		private final Map<Move, Node> children = new HashMap<Move, Node>();
+		private int visits = 0;
+		private int availability = 0;
+		private double reward = 0;
+
+		private Node(int player) {
+			this.player = player;
+		}
+
+		private double bound() {
+			return reward / visits + EXPLORATION
+					* Math.sqrt(Math.log(availability) / visits);
+		}
+	}
+
+	/**
+	 * Creates a search of the best {@link Move} with the given tile for the
+	 * player to move in the match obtained by playing the given {@link Move}s
+	 * from the starter {@link Card}.
+	 * 
+	 * @param playersNumber
+	 *            - the number of players of the match
+	 * @param starter
+	 *            - the {@link Card} put in (0,0) when the match started
+	 * @param history
+	 *            - the {@link Move}s played so far, in order
+	 * @param current
+	 *            - the {@link TileType} of the tile to put
+	 * @param deck
+	 *            - the {@link TileType}s of the tiles still in the deck
+	 * @param deadline
+	 *            - the time, as of System.currentTimeMillis(), when the search
+	 *            has to stop
+	 * @param iterations
+	 *            - the number of iterations after which the search stops, 0 for
+	 *            no limit
+	 * @param seed
+	 *            - the seed of the random choices
+	 */
+	public MonteCarloTreeSearch(int playersNumber, Card starter,
+			List<Move> history, TileType current, List<TileType> deck,
+			long deadline, int iterations, long seed) {
+		this.state = new SearchState(playersNumber, starter);
+		for (Move move : history) {
+			state.play(move);
+		}
+		this.current = current;
+		this.deck = deck.toArray(new TileType[deck.size()]);
+		this.deadline = deadline;
+		this.iterations = iterations;
+		this.random = new Random(seed);
+		this.scores = new int[playersNumber];
+		this.outcome = new double[playersNumber];
+	}
+
+	/**
+	 * Runs the search until the deadline or the number of iterations is
+	 * reached and returns the number of visits of each {@link Move} of the
+	 * player to move.
+	 * 
+	 * @return the number of visits of each {@link Move} at the root
+	 */
+	public Map<Move, Integer> call() {
+		int done = 0;
+		do {
+			iterate();
+			done++;
+		} while ((iterations == 0 || done < iterations)
+				&& System.currentTimeMillis() < deadline);
+		Map<Move, Integer> visits = new HashMap<Move, Integer>();
+		for (Map.Entry<Move, Node> child : root.children.entrySet()) {
+			visits.put(child.getKey(), child.getValue().visits);
+		}
+		return visits;
+	}
+
+	/**
+	 * Returns the tiles of the given {@link DeckTemplate} that are still in
+	 * the deck after the given {@link Move}s have been played and the given
+	 * tile has been drawn.
+	 * 
+	 * @param template
+	 *            - the {@link DeckTemplate} of the deck of the match
+	 * @param history
+	 *            - the {@link Move}s played so far
+	 * @param drawn
+	 *            - the {@link TileType} of the last drawn tile
+	 * @return the {@link TileType}s of the tiles still in the deck
+	 */
+	public static List<TileType> getRemainingTiles(DeckTemplate template,
+			List<Move> history, TileType drawn) {
+		List<TileType> remaining = new ArrayList<TileType>();
+		for (int i = 0; i < template.size(); i++) {
+			remaining.add(template.get(i));
+		}
+		// the starter is not in the deck nor in the history
+		for (Move move : history) {
+			remaining.remove(move.getType());
+		}
+		remaining.remove(drawn);
+		return remaining;
+	}
+
+	private void iterate() {
+		List<Node> path = new ArrayList<Node>();
+		state.push();
+		Node node = root;
+		TileType tile = current;
+		int drawn = 0;
+		boolean expanded = false;
+		// selection and expansion
+		while (tile != null && !expanded) {
+			// a tile that can't be put is discarded
+			List<Move> moves = state.getMoves(tile);
+			if (!moves.isEmpty()) {
+				Node chosen = null;
+				Move chosenMove = null;
+				Move unexploredMove = null;
+				int unexplored = 0;
+				for (Move move : moves) {
+					Node child = node.children.get(move);
+					if (child == null) {
+						unexplored++;
+						if (random.nextInt(unexplored) == 0) {
+							unexploredMove = move;
+						}
+					} else {
+						child.availability++;
+						if (chosen == null || child.bound() > chosen.bound()) {
+							chosen = child;
+							chosenMove = move;
+						}
+					}
+				}
+				if (unexploredMove != null) {
+					// a random unexplored move is added to the tree
+					chosen = new Node(state.getCurrentPlayer());
+					chosen.availability++;
+					chosenMove = unexploredMove;
+					node.children.put(chosenMove, chosen);
+					expanded = true;
+				}
+				state.play(chosenMove);
+				path.add(chosen);
+				node = chosen;
+			}
+			tile = draw(drawn++);
+		}
+		// simulation
+		while (tile != null) {
+			Move move = state.getRandomMove(tile, random);
+			if (move != null) {
+				state.play(move);
+			}
+			tile = draw(drawn++);
+		}
+		// backpropagation
+		evaluate();
+		for (Node visited : path) {
+			visited.visits++;
+			visited.reward += outcome[visited.player];
+		}
+		state.pop();
+	}
+
+	/**
+	 * Draws the given tile of a random permutation of the deck, shuffling it
+	 * lazily, or returns null if the deck is over.
+	 */
+	private TileType draw(int index) {
+		if (index >= deck.length) {
+			return null;
+		}
+		int swap = index + random.nextInt(deck.length - index);
+		TileType drawn = deck[swap];
+		deck[swap] = deck[index];
+		deck[index] = drawn;
+		return drawn;
+	}
+
+	private void evaluate() {
+		state.getFinalScores(scores);
+		int best = Integer.MIN_VALUE;
+		int winners = 0;
+		for (int score : scores) {
+			if (score > best) {
+				best = score;
+				winners = 1;
+			} else if (score == best) {
+				winners++;
+			}
+		}
+		for (int i = 0; i < scores.length; i++) {
+			if (scores[i] < best) {
+				outcome[i] = 0;
+			} else {
+				outcome[i] = winners == 1 ? 1 : 0.5;
+			}
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package view.bot;
+
+import model.Direction;
+import model.TileType;
+
+/**
+ * The immutable Move class represents a whole turn: the {@link TileType} put,
+ * where and with how many rotations it's put, and the side where a marker is
+ * put on it, if any.
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public final class Move {
+
+	private final TileType type;
+	private final int x;
+	private final int y;
+	private final int rotation;
+	private final Direction marker;
+
+	/**
+	 * Creates a new Move.
+	 * 
+	 * @param type
+	 *            - the {@link TileType} of the tile put
+	 * @param x
+	 *            - the x of the coordinate where the tile is put
+	 * @param y
+	 *            - the y of the coordinate where the tile is put
+	 * @param rotation
+	 *            - the number of clockwise rotations, from 0 to 3
+	 * @param marker
+	 *            - the side where a marker is put, or null
+	 */
+	public Move(TileType type, int x, int y, int rotation, Direction marker) {
+		this.type = type;
+		this.x = x;
+		this.y = y;
+		this.rotation = rotation;
+		this.marker = marker;
+	}
+
+	/**
+	 * Get the tile type.
+	 * 
+	 * @return the tile type
+	 */
+	public TileType getType() {
+		return type;
+	}
+
+	/**
+	 * Get the x of the coordinate.
+	 * 
+	 * @return the x of the coordinate
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * Get the y of the coordinate.
+	 * 
+	 * @return the y of the coordinate
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * Get the number of clockwise rotations.
+	 * 
+	 * @return the number of clockwise rotations
+	 */
+	public int getRotation() {
+		return rotation;
+	}
+
+	/**
+	 * Get the side of the marker, or null.
+	 * 
+	 * @return the side of the marker, or null
+	 */
+	public Direction getMarker() {
+		return marker;
+	}
+
+	/**
+	 * Returns the same Move with a marker on the given side.
+	 * 
+	 * @param side
+	 *            - the side where the marker is put
+	 * @return the same Move with the marker
+	 */
+	public Move withMarker(Direction side) {
+		return new Move(type, x, y, rotation, side);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + type.getId();
+		result = prime * result + x;
+		result = prime * result + y;
+		result = prime * result + rotation;
+		result = prime * result + ((marker == null) ? 0 : marker.ordinal() + 1);
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (getClass() != obj.getClass()) {
+			return false;
+		}
+		Move other = (Move) obj;
+		return type == other.type && x == other.x && y == other.y
+				&& rotation == other.rotation && marker == other.marker;
+	}
+
+	@Override
+	public String toString() {
+		return "Move [" + x + "," + y + " rotation=" + rotation + " marker="
+				+ marker + "]";
+	}
+}
@@ -0,0 +1,303 @@
+package view.bot;
+
+import java.util.*;
+
+import model.*;
+
+/**
+ * The SearchState class is a match that can be played forward and taken back,
+ * used by bots to explore moves. It applies the same rules as
+ * {@link GameEngine} on its own {@link Board}, keeping scores and markers left
+ * by player (players take turns in {@link PlayerColor} order).
+ * 
+ * Every change made after push() is reverted by the matching pop(): the
+ * {@link Board} through its undo log, scores and markers through a stack of
+ * deltas.
+ * 
+ * @author Guido Gerosa
+ * 
+ */
+public class SearchState {
+
+	private static final int MARKER_PER_PLAYER = 7;
+	private static final int SCORE = 0;
+	private static final int MARKERS = 1;
+	private final Board board = new Board();
+	private final Player[] players;
+	private final int[] scores;
+	private final int[] markersLeft;
+	private int current = 0;
+	private final Collection<Marker> returned = new ArrayList<Marker>();
+	// three ints for each change: kind, player, delta
+	private int[] changes = new int[48];
+	private int changesSize = 0;
+	// three ints for each push(): board checkpoint, changes size, player
+	private int[] frames = new int[48];
+	private int framesSize = 0;
+
+	/**
+	 * Creates the state of a match having the given number of players, with
+	 * the given starter {@link Card} in (0,0).
+	 * 
+	 * @param playersNumber
+	 *            - the number of players
+	 * @param starter
+	 *            - the first {@link Card}
+	 */
+	public SearchState(int playersNumber, Card starter) {
+		players = new Player[playersNumber];
+		scores = new int[playersNumber];
+		markersLeft = new int[playersNumber];
+		for (int i = 0; i < playersNumber; i++) {
+			players[i] = new Player(PlayerColor.values()[i]);
+			markersLeft[i] = MARKER_PER_PLAYER;
+		}
+		try {
+			board.place(new Coordinate(0, 0),
+					new Card(starter.getType(), starter.getRotation()));
+		} catch (InvalidPutException e) {
+			// the board is empty: the first card is always accepted.
+		}
+	}
+
+	/**
+	 * Saves the current state so that the next pop() goes back to it.
+	 */
+	public void push() {
+		if (framesSize == frames.length) {
+			frames = Arrays.copyOf(frames, frames.length * 2);
+		}
+		frames[framesSize++] = board.checkpoint();
+		frames[framesSize++] = changesSize;
+		frames[framesSize++] = current;
+	}
+
+	/**
+	 * Goes back to the state saved by the last push().
+	 */
+	public void pop() {
+		current = frames[--framesSize];
+		int mark = frames[--framesSize];
+		while (changesSize > mark) {
+			int delta = changes[--changesSize];
+			int player = changes[--changesSize];
+			if (changes[--changesSize] == SCORE) {
+				scores[player] -= delta;
+			} else {
+				markersLeft[player] -= delta;
+			}
+		}
+		board.rollback(frames[--framesSize]);
+	}
+
+	private void change(int kind, int player, int delta) {
+		if (kind == SCORE) {
+			scores[player] += delta;
+		} else {
+			markersLeft[player] += delta;
+		}
+		if (framesSize > 0) {
+			if (changesSize + 3 > changes.length) {
+				changes = Arrays.copyOf(changes, changes.length * 2);
+			}
+			changes[changesSize++] = kind;
+			changes[changesSize++] = player;
+			changes[changesSize++] = delta;
+		}
+	}
+
+	/**
+	 * Plays the given {@link Move} for the current player, pays out the zones
+	 * it completes and passes the turn to the next player.
+	 * 
+	 * @param move
+	 *            - a legal {@link Move}
+	 * @throws IllegalArgumentException
+	 *             - if the {@link Move} is not legal
+	 */
+	public void play(Move move) {
+		Coordinate coordinate = new Coordinate(move.getX(), move.getY());
+		try {
+			Collection<Zone> touched = board.place(coordinate, new Card(
+					move.getType(), move.getRotation()));
+			if (move.getMarker() != null) {
+				if (markersLeft[current] == 0) {
+					throw new IllegalArgumentException("No more markers.");
+				}
+				touched = board.place(new Marker(players[current]),
+						coordinate, move.getMarker());
+				change(MARKERS, current, -1);
+			}
+			score(touched);
+		} catch (InvalidPutException e) {
+			throw new IllegalArgumentException("Illegal move: " + move);
+		} catch (InvalidMarkerPositionException e) {
+			throw new IllegalArgumentException("Illegal marker: " + move);
+		}
+		current = (current + 1) % players.length;
+	}
+
+	private void score(Collection<Zone> touched) {
+		for (Zone zone : touched) {
+			if (zone.isCompleted() && zone.isRuled()) {
+				for (Player ruler : zone.getRulers()) {
+					change(SCORE, ruler.getColor().ordinal(), zone.getScore());
+				}
+				board.removeMarkers(zone, returned);
+				for (Marker marker : returned) {
+					change(MARKERS, marker.getOwner().getColor().ordinal(), 1);
+				}
+				returned.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns every legal {@link Move} of the current player with a tile of
+	 * the given {@link TileType}: each placement without marker and, if the
+	 * player has markers left, with a marker on each free {@link Zone} of the
+	 * tile.
+	 * 
+	 * @param type
+	 *            - the {@link TileType} of the tile to put
+	 * @return the legal {@link Move}s, none if the tile can't be put
+	 */
+	public List<Move> getMoves(final TileType type) {
+		final List<Move> moves = new ArrayList<Move>();
+		final boolean withMarkers = markersLeft[current] > 0;
+		board.forEachPlacement(type, new PlacementVisitor() {
+			@Override
+			public boolean visit(int x, int y, int rotation,
+					int markerDirections) {
+				Move placement = new Move(type, x, y, rotation, null);
+				moves.add(placement);
+				if (withMarkers) {
+					int sides = distinctZones(type, rotation, markerDirections);
+					while (sides != 0) {
+						moves.add(placement.withMarker(Direction
+								.fromOrdinal(Integer.numberOfTrailingZeros(sides))));
+						sides &= sides - 1;
+					}
+				}
+				return true;
+			}
+		});
+		return moves;
+	}
+
+	/**
+	 * Returns a random legal {@link Move} of the current player with a tile of
+	 * the given {@link TileType}, each one having the same chance, or null if
+	 * the tile can't be put.
+	 * 
+	 * @param type
+	 *            - the {@link TileType} of the tile to put
+	 * @param random
+	 *            - the source of randomness
+	 * @return a random legal {@link Move}, or null
+	 */
+	public Move getRandomMove(final TileType type, final Random random) {
+		final boolean withMarkers = markersLeft[current] > 0;
+		final int[] seen = new int[1];
+		final Move[] chosen = new Move[1];
+		board.forEachPlacement(type, new PlacementVisitor() {
+			@Override
+			public boolean visit(int x, int y, int rotation,
+					int markerDirections) {
+				int sides = withMarkers ? distinctZones(type, rotation,
+						markerDirections) : 0;
+				int options = 1 + Integer.bitCount(sides);
+				seen[0] += options;
+				// reservoir sampling over every move seen so far
+				int pick = random.nextInt(seen[0]);
+				if (pick < options) {
+					// 0 is no marker, k is the marker on the k-th side
+					Direction marker = null;
+					if (pick > 0) {
+						for (int i = 1; i < pick; i++) {
+							sides &= sides - 1;
+						}
+						marker = Direction.fromOrdinal(Integer
+								.numberOfTrailingZeros(sides));
+					}
+					chosen[0] = new Move(type, x, y, rotation, marker);
+				}
+				return true;
+			}
+		});
+		return chosen[0];
+	}
+
+	/**
+	 * Keeps only the lowest of the given sides that belong to the same zone of
+	 * the tile, so that the same marker is not proposed twice.
+	 */
+	private static int distinctZones(TileType type, int rotation, int sides) {
+		int result = 0;
+		int left = sides;
+		while (left != 0) {
+			int side = Integer.numberOfTrailingZeros(left);
+			left &= left - 1;
+			int connected = type.cross(rotation, Direction.fromOrdinal(side));
+			if ((connected & result) == 0) {
+				result |= 1 << side;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Puts in the given array the score each player would have if the match
+	 * ended now, paying out the uncompleted zones.
+	 * 
+	 * @param result
+	 *            - the array to fill, one item for each player
+	 */
+	public void getFinalScores(int[] result) {
+		// completed zones are paid out at once, the pending points are those
+		// of the uncompleted ones.
+		for (int i = 0; i < scores.length; i++) {
+			result[i] = scores[i] + board.getPendingScore(players[i]);
+		}
+	}
+
+	/**
+	 * Returns the index of the player to move.
+	 * 
+	 * @return the index of the player to move
+	 */
+	public int getCurrentPlayer() {
+		return current;
+	}
+
+	/**
+	 * Returns the number of players.
+	 * 
+	 * @return the number of players
+	 */
+	public int getPlayersNumber() {
+		return players.length;
+	}
+
+	/**
+	 * Returns the score of the given player.
+	 * 
+	 * @param player
+	 *            - the index of the player
+	 * @return the score of the player
+	 */
+	public int getScore(int player) {
+		return scores[player];
+	}
+
+	/**
+	 * Returns the markers left to the given player.
+	 * 
+	 * @param player
+	 *            - the index of the player
+	 * @return the markers left to the player
+	 */
+	public int getMarkersLeft(int player) {
+		return markersLeft[player];
+	}
+}
@@ -49,7 +49,11 @@ public class TextualCard {
 				} else {
 					representations.put(current, currentPlace.firstLetter()
 							+ indexes.get(currentPlace));
-					for (Direction connected : tile.cross(current)) {
+					int crossed = tile.cross(current);
+					for (Direction connected : Direction.values()) {
+						if ((crossed & connected.mask()) == 0) {
+							continue;
+						}
 						directionStack.remove(connected);
 						representations.put(
 								connected,
@@ -0,0 +1,242 @@
+package modelTests;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import model.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BoardTest {
+
+	private static final String STARTER = "N=N S=C W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0";
+	private static final String CITY_CAP = "N=C S=N W=N E=N NS=0 NE=0 NW=0 WE=0 SE=0 SW=0";
+	private static final String STRAIGHT = "N=N S=N W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0";
+
+	private Board board;
+
+	@Before
+	public void setUp() throws InvalidPutException {
+		board = new Board();
+		board.place(new Coordinate(0, 0), new Card(STARTER));
+	}
+
+	@Test
+	public void completedCityTest() throws InvalidPutException {
+		Collection<Zone> touched = board.place(new Coordinate(0, -1), new Card(
+				CITY_CAP));
+		assertEquals(1, touched.size());
+		Zone city = touched.iterator().next();
+		assertTrue(city.isCompleted());
+		assertEquals(Place.CITY, city.getPlace());
+		assertEquals(Integer.valueOf(4), city.getScore());
+		// the city is no more an uncompleted zone
+		assertFalse(board.getUncompletedZones().contains(city));
+		assertEquals(1, board.getUncompletedZones().size());
+		// once paid out the city is compacted but still answers queries
+		assertTrue(board.compact(city));
+		assertTrue(city.isCompacted());
+		assertEquals(Integer.valueOf(4), city.getScore());
+		assertEquals(2, city.getCoveredCoordinates().size());
+		assertTrue(city.covers(new Position(new Coordinate(0, -1),
+				Direction.NORTH)));
+		assertFalse(city.covers(new Position(new Coordinate(0, -1),
+				Direction.SOUTH)));
+	}
+
+	@Test
+	public void compactUncompletedTest() {
+		for (Zone zone : board.getUncompletedZones()) {
+			assertFalse(board.compact(zone));
+		}
+	}
+
+	@Test
+	public void streetMergeTest() throws InvalidPutException {
+		board.place(new Coordinate(1, 0), new Card(STRAIGHT));
+		Collection<Zone> touched = board.place(new Coordinate(-1, 0), new Card(
+				STRAIGHT));
+		assertEquals(1, touched.size());
+		Zone street = touched.iterator().next();
+		assertFalse(street.isCompleted());
+		assertEquals(Integer.valueOf(3), street.getScore());
+		assertTrue(street.covers(new Position(new Coordinate(1, 0),
+				Direction.EAST)));
+		assertTrue(street.covers(new Position(new Coordinate(-1, 0),
+				Direction.WEST)));
+		// the street and the open city of the starter
+		assertEquals(2, board.getUncompletedZones().size());
+	}
+
+	@Test
+	public void acceptingCoordinatesTest() throws InvalidPutException {
+		// the cap fits south of the starter, where the cities meet, and north
+		// of it, where it shows nothing to nothing
+		Collection<Coordinate> accepting = board
+				.getAcceptingCoordinates(new Card(CITY_CAP));
+		assertEquals(2, accepting.size());
+		assertTrue(accepting.contains(new Coordinate(0, -1)));
+		assertTrue(accepting.contains(new Coordinate(0, 1)));
+		board.place(new Coordinate(1, 0), new Card(STRAIGHT));
+		// a straight street can't touch the city of the starter
+		accepting = board.getAcceptingCoordinates(new Card(STRAIGHT));
+		assertEquals(5, accepting.size());
+		assertFalse(accepting.contains(new Coordinate(0, -1)));
+		assertTrue(accepting.contains(new Coordinate(2, 0)));
+		assertTrue(accepting.contains(new Coordinate(-1, 0)));
+		Card cap = new Card(CITY_CAP);
+		assertTrue(board.canAccept(cap));
+		assertTrue(board.getAcceptingCoordinates(cap).size() > 0);
+	}
+
+	@Test
+	public void forEachPlacementTest() throws InvalidPutException,
+			InvalidMarkerPositionException {
+		board.place(new Coordinate(1, 0), new Card(STRAIGHT));
+		board.place(new Marker(new Player(PlayerColor.RED)),
+				new Coordinate(1, 0), Direction.EAST);
+		final int[] visits = new int[1];
+		final int[] markers = new int[2];
+		Card straight = new Card(STRAIGHT);
+		board.forEachPlacement(straight.getType(), new PlacementVisitor() {
+			@Override
+			public boolean visit(int x, int y, int rotation,
+					int markerDirections) {
+				visits[0]++;
+				if (x == 2 && y == 0) {
+					markers[0] = markerDirections;
+				} else if (x == 0 && y == 1) {
+					markers[1] = markerDirections;
+				}
+				return true;
+			}
+		});
+		// five openings, the straight street showing the same in two rotations
+		assertEquals(5, visits[0]);
+		// the street east of the tile is ruled, the one north of it is free
+		assertEquals(0, markers[0]);
+		assertEquals(Direction.WEST.mask() | Direction.EAST.mask(),
+				markers[1]);
+		// the card has not been rotated
+		assertEquals(0, straight.getRotation());
+	}
+
+	@Test
+	public void rollbackTest() throws InvalidPutException,
+			InvalidMarkerPositionException, InvalidPositionException {
+		board.place(new Coordinate(1, 0), new Card(STRAIGHT));
+		Position street = new Position(new Coordinate(1, 0), Direction.EAST);
+		Zone before = board.getZoneHaving(street);
+		int openings = board.getAcceptingCoordinates(new Card(STRAIGHT))
+				.size();
+		int checkpoint = board.checkpoint();
+		board.place(new Coordinate(-1, 0), new Card(STRAIGHT));
+		board.place(new Marker(new Player(PlayerColor.RED)), new Coordinate(
+				-1, 0), Direction.WEST);
+		Card cap = new Card(CITY_CAP);
+		Collection<Zone> touched = board.place(new Coordinate(0, -1), cap);
+		Zone city = touched.iterator().next();
+		assertTrue(city.isCompleted());
+		assertTrue(board.getZoneHaving(street).isRuled());
+		assertEquals(Integer.valueOf(3), board.getZoneHaving(street)
+				.getScore());
+		board.rollback(checkpoint);
+		// the street is back as it was and the city is open again
+		assertSame(before, board.getZoneHaving(street));
+		assertFalse(before.isRuled());
+		assertEquals(Integer.valueOf(2), before.getScore());
+		assertFalse(before.covers(new Position(new Coordinate(-1, 0),
+				Direction.WEST)));
+		assertEquals(2, board.getUncompletedZones().size());
+		assertEquals(openings,
+				board.getAcceptingCoordinates(new Card(STRAIGHT)).size());
+		// the same moves can be made again
+		board.place(new Coordinate(-1, 0), new Card(STRAIGHT));
+		assertEquals(Integer.valueOf(3), board.getZoneHaving(street)
+				.getScore());
+		board.commit();
+	}
+
+	@Test
+	public void hashTest() throws InvalidPutException,
+			InvalidMarkerPositionException {
+		long start = board.getHash();
+		Board other = new Board();
+		other.place(new Coordinate(0, 0), new Card(STARTER));
+		assertEquals(start, other.getHash());
+		int checkpoint = board.checkpoint();
+		board.place(new Coordinate(1, 0), new Card(STRAIGHT));
+		board.place(new Coordinate(-1, 0), new Card(STRAIGHT));
+		// the same tiles put in another order, one rotated by half a turn
+		other.place(new Coordinate(-1, 0), new Card(STRAIGHT));
+		Card rotated = new Card(STRAIGHT);
+		rotated.rotate();
+		rotated.rotate();
+		other.place(new Coordinate(1, 0), rotated);
+		assertEquals(board.getHash(), other.getHash());
+		long tiles = board.getHash();
+		board.place(new Marker(new Player(PlayerColor.RED)), new Coordinate(
+				-1, 0), Direction.WEST);
+		assertFalse(tiles == board.getHash());
+		TranspositionTable<String> table = new TranspositionTable<String>(5);
+		assertEquals(8, table.capacity());
+		table.put(board.getHash(), "marker");
+		table.put(tiles, "tiles");
+		assertEquals("tiles", table.get(other.getHash()));
+		board.rollback(checkpoint);
+		assertEquals(start, board.getHash());
+		board.commit();
+	}
+
+	@Test
+	public void rulersTest() {
+		Player red = new Player(PlayerColor.RED);
+		Player blue = new Player(PlayerColor.BLUE);
+		Set<Position> positions = new HashSet<Position>();
+		positions.add(new Position(new Coordinate(0, 0), Direction.EAST));
+		positions.add(new Position(new Coordinate(0, 0), Direction.WEST));
+		Zone street = new Zone(positions, Place.STREET);
+		street.forceMarker(new Marker(red));
+		street.forceMarker(new Marker(blue));
+		assertEquals(2, street.getRulers().size());
+		assertEquals(Integer.valueOf(1), street.getScore());
+		positions.clear();
+		positions.add(new Position(new Coordinate(1, 0), Direction.WEST));
+		Zone other = new Zone(positions, Place.STREET);
+		other.forceMarker(new Marker(red));
+		street.merge(other);
+		assertEquals(Integer.valueOf(2), street.getScore());
+		assertEquals(2, street.getMarkerCount(red));
+		assertEquals(Arrays.asList(red), street.getRulers());
+		street.removeMarkers();
+		assertFalse(street.isRuled());
+		assertTrue(street.getRulers().isEmpty());
+	}
+
+	@Test
+	public void fittingOpeningsTest() throws InvalidPutException {
+		TileType cities = TileType
+				.valueOf("N=C S=C W=C E=C NS=1 NE=1 NW=1 WE=1 SE=1 SW=1");
+		TileType straight = TileType.valueOf(STRAIGHT);
+		assertEquals(1, board.getFittingOpenings(cities));
+		assertEquals(3, board.getFittingOpenings(straight));
+		int checkpoint = board.checkpoint();
+		board.place(new Coordinate(0, -1), new Card(CITY_CAP));
+		// the only opening next to a city has been taken
+		assertEquals(0, board.getFittingOpenings(cities));
+		assertFalse(board.canAccept(new Card(cities)));
+		assertEquals(6, board.getFittingOpenings(straight));
+		board.rollback(checkpoint);
+		assertEquals(1, board.getFittingOpenings(cities));
+		assertEquals(3, board.getFittingOpenings(straight));
+		board.commit();
+	}
+
+	@Test(expected = InvalidPutException.class)
+	public void invalidPutTest() throws InvalidPutException {
+		// a street can't touch the city of the starter
+		board.place(new Coordinate(0, -1), new Card(STRAIGHT));
+	}
+}
@@ -0,0 +1,169 @@
+package modelTests;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import model.BoardUpdate;
+import model.Card;
+import model.CardUpdate;
+import model.Coordinate;
+import model.Direction;
+import model.Marker;
+import model.Place;
+import model.Player;
+import model.PlayerColor;
+import model.StartSignal;
+import model.TileType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CardTest {
+
+	private Card card;
+
+	@Before
+	public void setUp() {
+		card = new Card("N=C S=S W=S E=N NS=0 NE=0 NW=0 WE=0 SE=0 SW=1");
+	}
+
+	@Test
+	public void rotationTest() {
+		card.rotate();
+		// the west side goes north, the north side goes east, and so on
+		assertEquals(Place.STREET, card.getPlace(Direction.NORTH));
+		assertEquals(Place.CITY, card.getPlace(Direction.EAST));
+		assertEquals(Place.NOTHING, card.getPlace(Direction.SOUTH));
+		assertEquals(Place.STREET, card.getPlace(Direction.WEST));
+		// SW becomes NW
+		assertEquals(Direction.WEST.mask(), card.cross(Direction.NORTH));
+		assertEquals(Direction.NORTH.mask(), card.cross(Direction.WEST));
+		assertEquals(0, card.cross(Direction.EAST));
+		card.rotate();
+		card.rotate();
+		card.rotate();
+		assertEquals(new Card(
+				"N=C S=S W=S E=N NS=0 NE=0 NW=0 WE=0 SE=0 SW=1"), card);
+	}
+
+	@Test
+	public void crossTest() {
+		Card crossing = new Card(
+				"N=C S=C W=C E=C NS=1 NE=1 NW=1 WE=1 SE=1 SW=1");
+		assertEquals(Direction.SOUTH.mask() | Direction.EAST.mask()
+				| Direction.WEST.mask(), crossing.cross(Direction.NORTH));
+		// nothing is never connected, even if the flags say so
+		Card nothing = new Card("N=N S=C W=N E=N NS=1 NE=0 NW=0 WE=0 SE=0 SW=0");
+		assertEquals(0, nothing.cross(Direction.NORTH));
+		assertEquals(Direction.NORTH.mask(), nothing.cross(Direction.SOUTH));
+	}
+
+	@Test
+	public void tileTypeTest() {
+		String definition = "N=C S=S W=S E=N NS=0 NE=0 NW=0 WE=0 SE=0 SW=1";
+		// the same tile is represented by the same type in every card
+		assertSame(card.getType(), new Card(definition).getType());
+		assertSame(card.getType(), TileType.get(card.getType().getId()));
+		assertEquals(definition, card.getStringID());
+		card.rotate();
+		assertEquals(definition, card.getStringID());
+		assertEquals(1, card.getRotation());
+	}
+
+	@Test
+	public void rotationsTest() {
+		TileType straight = TileType
+				.valueOf("N=N S=N W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0");
+		// a free opening takes every rotation, but half of them repeat
+		assertEquals(0x3, straight.getRotations(0));
+		assertTrue(straight.fits(2, 0));
+		// a street required in west: only the horizontal rotation fits
+		int westStreet = (Place.STREET.ordinal() + 1) << (2 * Direction.WEST
+				.ordinal());
+		assertEquals(0x1, straight.getRotations(westStreet));
+		assertTrue(straight.fits(2, westStreet));
+		assertFalse(straight.fits(1, westStreet));
+		// the card of the test is not symmetric
+		assertEquals(0xF, card.getType().getRotations(0));
+	}
+
+	@Test
+	public void cardUpdateTest() throws Exception {
+		card.rotate();
+		CardUpdate update = new CardUpdate(card);
+		card.rotate();
+		card.addMarker(Direction.EAST, new Marker(new Player(PlayerColor.RED)));
+		// the update shows the card as it was when it was created
+		assertEquals(1, update.getRotation());
+		assertSame(card.getType(), update.getType());
+		assertEquals(new Card(card.getType(), 1), update.getUpdatedCard());
+		update = (CardUpdate) deserialize(serialize(new CardUpdate(card)));
+		assertEquals(card, update.getUpdatedCard());
+	}
+
+	private static byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream output = new ObjectOutputStream(bytes);
+		output.writeObject(object);
+		output.close();
+		return bytes.toByteArray();
+	}
+
+	private static Object deserialize(byte[] bytes) throws Exception {
+		return new ObjectInputStream(new ByteArrayInputStream(bytes))
+				.readObject();
+	}
+
+	@Test
+	public void serializationTest() throws Exception {
+		Player owner = new Player(PlayerColor.BLUE);
+		owner.addScore(12);
+		card.rotate();
+		card.addMarker(Direction.EAST, new Marker(owner));
+		Card read = (Card) deserialize(serialize(card));
+		assertEquals(card, read);
+		assertSame(card.getType(), read.getType());
+		// the owner is told by its color only
+		assertEquals(PlayerColor.BLUE, read.getMarker().getOwner().getColor());
+		assertEquals(0, read.getMarker().getOwner().getScore());
+		// so a marker takes no more bytes than the card alone
+		ByteArrayOutputStream cards = new ByteArrayOutputStream();
+		ObjectOutputStream cardOutput = new ObjectOutputStream(cards);
+		cardOutput.writeObject(new Card(card.getType()));
+		cardOutput.flush();
+		int first = cards.size();
+		cardOutput.writeObject(new Card(card.getType()));
+		cardOutput.flush();
+		int unmarked = cards.size() - first;
+		cardOutput.writeObject(card);
+		cardOutput.flush();
+		assertEquals(unmarked, cards.size() - first - unmarked);
+
+		BoardUpdate update = (BoardUpdate) deserialize(serialize(new BoardUpdate(
+				card, new Coordinate(-3, 70))));
+		assertEquals(card, update.getUpdatedCard());
+		assertEquals(new Coordinate(-3, 70), update.getWhere());
+		// once the class is described, an update takes a few bytes
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream output = new ObjectOutputStream(bytes);
+		output.writeObject(update);
+		output.flush();
+		int described = bytes.size();
+		output.writeObject(new BoardUpdate(new Card(card.getType()),
+				new Coordinate(1, -1)));
+		output.flush();
+		assertTrue(bytes.size() - described <= 16);
+
+		StartSignal signal = (StartSignal) deserialize(serialize(new StartSignal(
+				card, "Room3", owner, 4)));
+		assertEquals(card, signal.getStarterCard());
+		assertEquals("Room3", signal.getGameName());
+		assertEquals(owner, signal.getPlayer());
+		assertEquals(12, signal.getPlayer().getScore());
+		assertEquals(4, signal.getPlayersNumber());
+		signal = (StartSignal) deserialize(serialize(new StartSignal(card,
+				"Room3", null, 2)));
+		assertNull(signal.getPlayer());
+	}
+}
@@ -0,0 +1,149 @@
+package modelTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+import model.*;
+
+import org.junit.Test;
+
+public class DeckTest {
+
+	private static final String TILES = "N=C S=N W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0\n"
+			+ "N=C S=S W=N E=S NS=0 NE=0 NW=0 WE=0 SE=1 SW=0\n\n";
+	private static final TileType CAP = TileType
+			.valueOf("N=C S=N W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0");
+	private static final TileType STRAIGHT = TileType
+			.valueOf("N=C S=S W=N E=S NS=0 NE=0 NW=0 WE=0 SE=1 SW=0");
+
+	@Test
+	public void templateTest() throws IOException {
+		DeckTemplate template = DeckTemplate.read(new ByteArrayInputStream(
+				TILES.getBytes("UTF-8")));
+		assertEquals(2, template.size());
+		assertSame(TileType.valueOf("N=C S=S W=N E=S NS=0 NE=0 NW=0 WE=0 SE=1 SW=0"),
+				template.get(1));
+		// the standard template is read only once
+		assertSame(DeckTemplate.getStandard(), DeckTemplate.getStandard());
+		assertEquals(DeckTemplate.getStandard().size(), new Deck().size());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void pickTest() throws IOException {
+		Deck deck = new Deck(DeckTemplate.read(new ByteArrayInputStream(TILES
+				.getBytes("UTF-8"))));
+		Card first = deck.pick();
+		deck.add(first);
+		deck.add(new Card(first.getType()));
+		assertEquals(3, deck.size());
+		deck.pick();
+		assertSame(first, deck.pick());
+		deck.pick();
+		deck.pick();
+	}
+
+	@Test
+	public void compositionTest() throws IOException, InvalidPutException {
+		Deck deck = new Deck(DeckTemplate.read(new ByteArrayInputStream(TILES
+				.getBytes("UTF-8"))), 42);
+		Card first = deck.pick();
+		TileType other = first.getType() == CAP ? STRAIGHT : CAP;
+		assertEquals(0, deck.getRemaining(first.getType()));
+		assertEquals(1, deck.getRemaining(other));
+		assertEquals(1, deck.getComposition().size());
+		deck.add(first);
+		assertEquals(1, deck.getRemaining(first.getType()));
+		assertEquals(2, deck.getComposition().size());
+		Board board = new Board();
+		board.place(new Coordinate(0, 0), new Card(CAP));
+		// both tiles have a city to put next to the city
+		int signature = board.getSignature(new Coordinate(0, 1));
+		assertEquals(2, deck.countFitting(signature));
+		assertEquals(1, deck.getFitProbability(signature), 1e-9);
+		// none has four cities
+		int city = Place.CITY.ordinal() + 1;
+		assertEquals(0, deck.countFitting(city | city << 2 | city << 4
+				| city << 6));
+		assertEquals(-1, board.getSignature(new Coordinate(0, 0)));
+	}
+
+	@Test
+	public void resetTest() {
+		Deck deck = new Deck(DeckTemplate.getStandard(), 7);
+		List<Card> first = new ArrayList<Card>();
+		while (deck.size() > 0) {
+			first.add(deck.pick());
+		}
+		deck.add(first.get(0));
+		deck.reset();
+		assertEquals(DeckTemplate.getStandard().size(), deck.size());
+		assertEquals(new Deck(DeckTemplate.getStandard(), 7), deck);
+		// the same seed gives the same cards in the same order
+		for (Card card : first) {
+			assertEquals(card, deck.pick());
+		}
+		assertEquals(7, deck.getSeed());
+	}
+
+	@Test
+	public void countedFormatTest() throws IOException {
+		DeckTemplate template = DeckTemplate.read(new ByteArrayInputStream(
+				("# two kinds\n3 N=C S=N W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0\n"
+						+ "SE=1 E=S W=N S=S N=C\n").getBytes("UTF-8")));
+		assertEquals(4, template.size());
+		assertSame(CAP, template.get(2));
+		assertSame(STRAIGHT, template.get(3));
+		String[] wrong = { "0 N=C S=N W=S E=S", "N=C S=N W=S",
+				"N=C S=N W=S E=S NS=1", "N=C S=C W=C E=C NS=1 NE=1",
+				"N=C S=N W=S E=X", "N=C S=N W=S E=S WE=1 WE=1",
+				"2147483647 N=C S=N W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0" };
+		for (String line : wrong) {
+			try {
+				DeckTemplate.read(new ByteArrayInputStream(("\n" + line)
+						.getBytes("UTF-8")));
+				fail(line);
+			} catch (InvalidDeckException e) {
+				assertEquals(2, e.getLine());
+			}
+		}
+		// a kind of tile is declared once, even if the counts would fit
+		try {
+			DeckTemplate.read(new ByteArrayInputStream(
+					("40000 N=C S=N W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0\n"
+							+ "SE=1 E=S W=N S=S N=C\n"
+							+ "N=C S=N W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0")
+							.getBytes("UTF-8")));
+			fail("declared twice");
+		} catch (InvalidDeckException e) {
+			assertEquals(3, e.getLine());
+		}
+		File definition = File.createTempFile("deck", ".txt");
+		File cache = new File(definition.getPath() + ".bin");
+		try {
+			template.writeBinary(cache, definition);
+			DeckTemplate loaded = DeckTemplate.load(definition, cache);
+			assertEquals(4, loaded.size());
+			assertSame(CAP, loaded.get(0));
+			assertEquals(new Deck(template, 3), new Deck(loaded, 3));
+			// once the definition changes the cache is not trusted any more
+			OutputStream output = new FileOutputStream(definition);
+			output.write("N=C S=N W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0\n"
+					.getBytes("UTF-8"));
+			output.close();
+			assertEquals(1, DeckTemplate.load(definition, cache).size());
+			assertEquals(1, DeckTemplate.readBinary(cache).size());
+			// nor is a cache not made from a definition
+			template.writeBinary(cache);
+			assertEquals(1, DeckTemplate.load(definition, cache).size());
+		} finally {
+			definition.delete();
+			cache.delete();
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package modelTests;
+
+import static org.junit.Assert.*;
+
+import model.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GameEngineTest {
+
+	private GameEngine engine;
+	private Player first;
+	private Player second;
+
+	@Before
+	public void setUp() throws FullMatchException {
+		engine = new GameEngine(new Deck());
+		first = engine.addPlayer();
+		second = engine.addPlayer();
+		engine.start();
+	}
+
+	@Test
+	public void playTest() throws InvalidPutException,
+			InvalidMarkerPositionException, NoMoreMarkersException {
+		int turns = 0;
+		while (engine.nextTurn()) {
+			assertSame(turns % 2 == 0 ? first : second,
+					engine.getCurrentPlayer());
+			Card card = engine.getCurrentCard();
+			engine.placeCurrentCard(engine.getBoard()
+					.getAcceptingCoordinates(card).iterator().next());
+			turns++;
+		}
+		assertTrue(engine.isOver());
+		assertEquals(0, engine.getTilesLeft());
+		assertEquals(new Deck().size(), turns);
+		assertEquals(7, engine.getMarkersLeft(first));
+		assertFalse(engine.nextTurn());
+	}
+
+	@Test
+	public void placeMarkerTest() throws InvalidPutException,
+			InvalidMarkerPositionException, NoMoreMarkersException {
+		assertTrue(engine.nextTurn());
+		Card card = engine.getCurrentCard();
+		engine.placeCurrentCard(engine.getBoard().getAcceptingCoordinates(card)
+				.iterator().next());
+		// every card of the deck has a city on some side
+		for (Direction direction : Direction.values()) {
+			if (card.getPlace(direction) == Place.CITY) {
+				engine.placeMarker(direction);
+				break;
+			}
+		}
+		assertEquals(6, engine.getMarkersLeft(first));
+		assertEquals(7, engine.getMarkersLeft(second));
+	}
+
+	@Test
+	public void projectedScoreTest() throws InvalidPutException,
+			InvalidMarkerPositionException, NoMoreMarkersException {
+		int[] projected = null;
+		while (engine.nextTurn()) {
+			// the completed zones have been paid: only uncompleted ones pend
+			for (Player player : engine.getPlayers()) {
+				int pending = 0;
+				for (Zone zone : engine.getBoard().getUncompletedZones()) {
+					if (zone.getRulers().contains(player)) {
+						pending += zone.getPlace() == Place.STREET ? zone
+								.getScore() : zone.getScore() / 2;
+					}
+				}
+				assertEquals(player.getScore() + pending,
+						engine.getProjectedScore(player));
+			}
+			Card card = engine.getCurrentCard();
+			engine.placeCurrentCard(engine.getBoard()
+					.getAcceptingCoordinates(card).iterator().next());
+			try {
+				engine.placeMarker(Direction.NORTH);
+			} catch (InvalidMarkerPositionException e) {
+				// the zone is taken or there's nothing on that side.
+			}
+			projected = engine.getProjectedScores();
+		}
+		// the last projection is the final score
+		assertEquals(projected[0], first.getScore());
+		assertEquals(projected[1], second.getScore());
+		assertArrayEquals(projected, engine.getProjectedScores());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void placeTwiceTest() throws InvalidPutException {
+		engine.nextTurn();
+		Card card = engine.getCurrentCard();
+		Coordinate coordinate = engine.getBoard().getAcceptingCoordinates(card)
+				.iterator().next();
+		engine.placeCurrentCard(coordinate);
+		engine.placeCurrentCard(coordinate);
+	}
+}
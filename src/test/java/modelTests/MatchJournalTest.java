@@ -0,0 +1,330 @@
+package modelTests;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import model.*;
+
+import org.junit.Test;
+
+public class MatchJournalTest {
+
+	private Card current;
+
+	/**
+	 * Plays a whole match of two players on the given model, putting a marker
+	 * wherever possible, and returns the number of turns played.
+	 */
+	private int play(CarcassonneModel model) throws FullMatchException,
+			InvalidPutException {
+		model.addObserver(new Observer() {
+			public void update(Observable o, Object update) {
+				if (update instanceof CardUpdate) {
+					current = ((CardUpdate) update).getUpdatedCard();
+				}
+			}
+		});
+		model.addPlayer();
+		model.addPlayer();
+		Board mirror = new Board();
+		mirror.place(new Coordinate(0, 0), model.start().clone());
+		int turns = 0;
+		current = null;
+		model.nextTurn();
+		while (current != null) {
+			Card card = current;
+			current = null;
+			Coordinate where = mirror.getAcceptingCoordinates(card).iterator()
+					.next();
+			model.placeCurrentCardOnBoard(where);
+			mirror.place(where, new Card(card.getType(), card.getRotation()));
+			for (Direction direction : Direction.values()) {
+				if (model.placeMarkerOnLastPlacedCard(direction)) {
+					break;
+				}
+			}
+			model.nextTurn();
+			turns++;
+		}
+		return turns;
+	}
+
+	@Test
+	public void restoreTest() throws Exception {
+		File file = File.createTempFile("match", ".journal");
+		try {
+			FileJournalWriter writer = new FileJournalWriter(file);
+			MatchJournal journal = new MatchJournal(writer, Durability.TURN);
+			CarcassonneModel model = new CarcassonneModel(new Deck(
+					DeckTemplate.getStandard(), 11));
+			model.setJournal(journal);
+			int turns = play(model);
+			assertEquals(DeckTemplate.getStandard().size(), turns);
+			assertTrue(journal.awaitAcknowledged(5000));
+			writer.close();
+			// start, then draw, placement, marker and pass for each turn
+			assertTrue(journal.getAppended() >= 2 + turns * 3);
+			assertTrue(file.length() < 16 * journal.getAppended());
+
+			GameEngine restored = MatchJournal.restore(new FileInputStream(
+					file), DeckTemplate.getStandard());
+			assertTrue(restored.isOver());
+			assertArrayEquals(model.getProjectedScores(),
+					restored.getProjectedScores());
+
+			// a record cut at the end of the journal is dropped
+			FileOutputStream output = new FileOutputStream(file, true);
+			output.write(new byte[] { 0 });
+			output.close();
+			restored = MatchJournal.restore(new FileInputStream(file),
+					DeckTemplate.getStandard());
+			assertArrayEquals(model.getProjectedScores(),
+					restored.getProjectedScores());
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Keeps the records in memory and acknowledges them at once.
+	 */
+	private static class MemoryWriter implements JournalWriter {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		@Override
+		public void submit(MatchJournal journal, byte[] records, int length,
+				long sequence, int flags) {
+			bytes.write(records, 0, length);
+			journal.acknowledge(sequence);
+		}
+
+		@Override
+		public void submit(MatchJournal journal, MatchSnapshot snapshot,
+				long sequence, int flags) {
+			byte[] record = snapshot.toRecord();
+			submit(journal, record, record.length, sequence, flags);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private Card copyCurrent;
+
+	/**
+	 * Rotates the current card until it fits somewhere on the given board and
+	 * returns the number of rotations.
+	 */
+	private int rotateToFit(CarcassonneModel model, Board mirror) {
+		int turns = 0;
+		while (mirror.getAcceptingCoordinates(current).isEmpty()) {
+			model.rotateCard();
+			turns++;
+		}
+		return turns;
+	}
+
+	/**
+	 * A deck large enough for the match to outlast a few snapshots.
+	 */
+	private static DeckTemplate largeDeck() throws IOException {
+		return DeckTemplate.read(new ByteArrayInputStream(
+				("20 N=C S=S W=S E=N NS=0 NE=0 NW=0 WE=0 SE=0 SW=1\n"
+						+ "20 N=C S=N W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0\n"
+						+ "20 N=C S=S W=N E=S NS=0 NE=0 NW=0 WE=0 SE=1 SW=0\n")
+						.getBytes("UTF-8")));
+	}
+
+	@Test
+	public void snapshotTest() throws Exception {
+		DeckTemplate template = largeDeck();
+		MemoryWriter writer = new MemoryWriter();
+		MatchJournal journal = new MatchJournal(writer, Durability.TURN);
+		journal.setSnapshotInterval(4);
+		CarcassonneModel model = new CarcassonneModel(new Deck(template, 5));
+		model.setJournal(journal);
+		model.addObserver(new Observer() {
+			public void update(Observable o, Object update) {
+				if (update instanceof CardUpdate) {
+					current = ((CardUpdate) update).getUpdatedCard();
+				}
+			}
+		});
+		model.addPlayer();
+		model.addPlayer();
+		Board mirror = new Board();
+		mirror.place(new Coordinate(0, 0), model.start().clone());
+		current = null;
+		model.nextTurn();
+		for (int turn = 0; turn < 10; turn++) {
+			rotateToFit(model, mirror);
+			Card card = current;
+			Coordinate where = mirror.getAcceptingCoordinates(card).iterator()
+					.next();
+			model.placeCurrentCardOnBoard(where);
+			mirror.place(where, new Card(card.getType(), card.getRotation()));
+			model.placeMarkerOnLastPlacedCard(Direction.NORTH);
+			model.nextTurn();
+		}
+
+		// rebuilt from the snapshot taken after the 8th turn, with a card drawn
+		GameEngine restored = MatchJournal.restore(new ByteArrayInputStream(
+				writer.bytes.toByteArray()), template);
+		assertFalse(restored.isOver());
+		assertArrayEquals(model.getProjectedScores(),
+				restored.getProjectedScores());
+		assertEquals(current.getType(), restored.getCurrentCard().getType());
+		assertEquals(current.getRotation(), restored.getCurrentCard()
+				.getRotation());
+
+		// the rebuilt match goes on just like the original one
+		CarcassonneModel copy = new CarcassonneModel(restored);
+		copy.addObserver(new Observer() {
+			public void update(Observable o, Object update) {
+				if (update instanceof CardUpdate) {
+					copyCurrent = ((CardUpdate) update).getUpdatedCard();
+				}
+			}
+		});
+		while (current != null) {
+			for (int turns = rotateToFit(model, mirror); turns > 0; turns--) {
+				copy.rotateCard();
+			}
+			Card card = current;
+			current = null;
+			copyCurrent = null;
+			Coordinate where = mirror.getAcceptingCoordinates(card).iterator()
+					.next();
+			model.placeCurrentCardOnBoard(where);
+			copy.placeCurrentCardOnBoard(where);
+			mirror.place(where, new Card(card.getType(), card.getRotation()));
+			for (Direction direction : Direction.values()) {
+				boolean placed = model.placeMarkerOnLastPlacedCard(direction);
+				assertEquals(placed, copy.placeMarkerOnLastPlacedCard(direction));
+				if (placed) {
+					break;
+				}
+			}
+			model.nextTurn();
+			copy.nextTurn();
+			assertArrayEquals(model.getProjectedScores(),
+					copy.getProjectedScores());
+			assertEquals(current == null, copyCurrent == null);
+		}
+		assertTrue(restored.isOver());
+	}
+
+	@Test
+	public void fileSnapshotTest() throws Exception {
+		DeckTemplate template = largeDeck();
+		File file = File.createTempFile("match", ".journal");
+		try {
+			FileJournalWriter writer = new FileJournalWriter(file);
+			MatchJournal journal = new MatchJournal(writer, Durability.TURN);
+			journal.setSnapshotInterval(3);
+			CarcassonneModel model = new CarcassonneModel(
+					new Deck(template, 9));
+			model.setJournal(journal);
+			model.addObserver(new Observer() {
+				public void update(Observable o, Object update) {
+					if (update instanceof CardUpdate) {
+						current = ((CardUpdate) update).getUpdatedCard();
+					}
+				}
+			});
+			model.addPlayer();
+			model.addPlayer();
+			Board mirror = new Board();
+			mirror.place(new Coordinate(0, 0), model.start().clone());
+			model.nextTurn();
+			for (int turn = 0; turn < 10; turn++) {
+				rotateToFit(model, mirror);
+				Card card = current;
+				Coordinate where = mirror.getAcceptingCoordinates(card)
+						.iterator().next();
+				model.placeCurrentCardOnBoard(where);
+				mirror.place(where, new Card(card.getType(), card.getRotation()));
+				model.placeMarkerOnLastPlacedCard(Direction.NORTH);
+				model.nextTurn();
+			}
+			assertTrue(journal.awaitAcknowledged(5000));
+			// the file holds a single journal
+			try {
+				writer.submit(new MatchJournal(writer, Durability.TURN),
+						new byte[] { 4 }, 1, 1, 0);
+				fail("Another journal");
+			} catch (IllegalStateException e) {
+				// expected.
+			}
+			writer.close();
+
+			// the snapshots encoded by the writer are read back
+			GameEngine restored = MatchJournal.restore(new FileInputStream(
+					file), template);
+			assertArrayEquals(model.getProjectedScores(),
+					restored.getProjectedScores());
+			assertEquals(current.getType(), restored.getCurrentCard()
+					.getType());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void corruptJournalTest() throws Exception {
+		MemoryWriter writer = new MemoryWriter();
+		CarcassonneModel model = new CarcassonneModel(new Deck(largeDeck(), 3));
+		model.setJournal(new MatchJournal(writer, Durability.NONE));
+		model.addPlayer();
+		model.addPlayer();
+		model.start();
+		model.nextTurn();
+		byte[] drawn = writer.bytes.toByteArray();
+		// a rotation, a marker side and a snapshot length out of range
+		byte[][] tails = { { 0x52, 0, 2 }, { 0x73 }, { 6, 1 } };
+		for (byte[] tail : tails) {
+			byte[] journal = Arrays.copyOf(drawn, drawn.length + tail.length);
+			System.arraycopy(tail, 0, journal, drawn.length, tail.length);
+			try {
+				MatchJournal.restore(new ByteArrayInputStream(journal),
+						largeDeck());
+				fail(Arrays.toString(tail));
+			} catch (IOException e) {
+				// expected.
+			}
+		}
+	}
+
+	@Test
+	public void markersSnapshotTest() throws Exception {
+		CarcassonneModel model = new CarcassonneModel(new Deck(largeDeck(), 3));
+		model.addPlayer();
+		model.addPlayer();
+		model.start();
+		model.nextTurn();
+		// a journal set on a match going on begins with its snapshot
+		MemoryWriter writer = new MemoryWriter();
+		model.setJournal(new MatchJournal(writer, Durability.NONE));
+		byte[] snapshot = writer.bytes.toByteArray();
+		assertNotNull(MatchJournal.restore(
+				new ByteArrayInputStream(snapshot), largeDeck()));
+		// kind, length, seed, drawn, queued tiles, players and first score
+		int markers = 1 + 1 + 8 + 1 + 1 + 2 * snapshot[11] + 1 + 1;
+		assertEquals(7, snapshot[markers]);
+		// more markers than a player has, and fewer than left and on board
+		for (int wrong : new int[] { 8, 6 }) {
+			byte[] journal = snapshot.clone();
+			journal[markers] = (byte) wrong;
+			try {
+				MatchJournal.restore(new ByteArrayInputStream(journal),
+						largeDeck());
+				fail(String.valueOf(wrong));
+			} catch (InvalidObjectException e) {
+				// expected.
+			}
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package netTests;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import model.*;
+import net.GroupCommitJournal;
+
+import org.junit.Test;
+
+public class GroupCommitJournalTest {
+
+	/**
+	 * A match of two players played one turn at a time, with a marker put
+	 * wherever possible.
+	 */
+	private static class Table implements Observer {
+		private final CarcassonneModel model;
+		private final Board mirror = new Board();
+		private Card current;
+
+		private Table(MatchJournal journal, DeckTemplate template, long seed)
+				throws Exception {
+			model = new CarcassonneModel(new Deck(template, seed));
+			model.setJournal(journal);
+			model.addObserver(this);
+			model.addPlayer();
+			model.addPlayer();
+			mirror.place(new Coordinate(0, 0), model.start().clone());
+			model.nextTurn();
+		}
+
+		public void update(Observable o, Object update) {
+			if (update instanceof CardUpdate) {
+				current = ((CardUpdate) update).getUpdatedCard();
+			}
+		}
+
+		private boolean turn() throws InvalidPutException {
+			if (current == null) {
+				return false;
+			}
+			while (mirror.getAcceptingCoordinates(current).isEmpty()) {
+				model.rotateCard();
+			}
+			Card card = current;
+			current = null;
+			Coordinate where = mirror.getAcceptingCoordinates(card).iterator()
+					.next();
+			model.placeCurrentCardOnBoard(where);
+			mirror.place(where, new Card(card.getType(), card.getRotation()));
+			for (Direction direction : Direction.values()) {
+				if (model.placeMarkerOnLastPlacedCard(direction)) {
+					break;
+				}
+			}
+			model.nextTurn();
+			return true;
+		}
+	}
+
+	/**
+	 * A deck large enough for the match to outlast a few snapshots.
+	 */
+	private static DeckTemplate largeDeck() throws IOException {
+		return DeckTemplate.read(new ByteArrayInputStream(
+				("20 N=C S=S W=S E=N NS=0 NE=0 NW=0 WE=0 SE=0 SW=1\n"
+						+ "20 N=C S=N W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0\n"
+						+ "20 N=C S=S W=N E=S NS=0 NE=0 NW=0 WE=0 SE=1 SW=0\n")
+						.getBytes("UTF-8")));
+	}
+
+	private static File newDirectory() throws IOException {
+		File directory = File.createTempFile("server", ".journal");
+		directory.delete();
+		directory.mkdir();
+		return directory;
+	}
+
+	private static void delete(File directory) {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void groupCommitTest() throws Exception {
+		File log = newDirectory();
+		try {
+			GroupCommitJournal writer = new GroupCommitJournal(log, 4096, 50,
+					1 << 20);
+			List<MatchJournal> journals = new ArrayList<MatchJournal>();
+			List<Table> tables = new ArrayList<Table>();
+			for (int i = 0; i < 3; i++) {
+				journals.add(new MatchJournal(writer, Durability.TURN, 10 + i));
+				tables.add(new Table(journals.get(i), DeckTemplate
+						.getStandard(), 100 + i));
+			}
+			// the matches take turns, so their records share the batches
+			boolean playing = true;
+			while (playing) {
+				playing = false;
+				for (Table table : tables) {
+					playing |= table.turn();
+				}
+			}
+			for (MatchJournal journal : journals) {
+				assertTrue(journal.awaitAcknowledged(5000));
+			}
+			writer.close();
+			assertTrue(writer.getBatches() < writer.getSubmissions());
+
+			Map<Integer, byte[]> read = GroupCommitJournal.read(log);
+			assertEquals(Arrays.asList(10, 11, 12),
+					new ArrayList<Integer>(read.keySet()));
+			for (int i = 0; i < 3; i++) {
+				GameEngine restored = MatchJournal.restore(
+						new ByteArrayInputStream(read.get(10 + i)),
+						DeckTemplate.getStandard());
+				assertTrue(restored.isOver());
+				assertArrayEquals(tables.get(i).model.getProjectedScores(),
+						restored.getProjectedScores());
+			}
+
+			// a torn batch at the end of the log is dropped
+			assertEquals(1, log.list().length);
+			FileOutputStream output = new FileOutputStream(log.listFiles()[0],
+					true);
+			output.write(new byte[] { 0, 0, 0, 9, 1, 2, 3 });
+			output.close();
+			assertEquals(3, GroupCommitJournal.read(log).size());
+		} finally {
+			delete(log);
+		}
+	}
+
+	@Test
+	public void segmentsTest() throws Exception {
+		File log = newDirectory();
+		GroupCommitJournal writer = new GroupCommitJournal(log, 256, 5, 512);
+		try {
+			DeckTemplate template = largeDeck();
+			List<Table> tables = new ArrayList<Table>();
+			List<MatchJournal> journals = new ArrayList<MatchJournal>();
+			for (int i = 0; i < 3; i++) {
+				journals.add(new MatchJournal(writer, Durability.TURN, 10 + i));
+				journals.get(i).setSnapshotInterval(5);
+				tables.add(new Table(journals.get(i), template, 200 + i));
+			}
+			for (int turn = 0; turn < 20; turn++) {
+				for (Table table : tables) {
+					assertTrue(table.turn());
+				}
+				// each round is written before the next one, whatever the
+				// timing of the batches
+				for (MatchJournal journal : journals) {
+					assertTrue(journal.awaitAcknowledged(5000));
+				}
+			}
+			writer.close();
+			// the segments before the last snapshots are deleted as it goes
+			int last = 0;
+			for (String name : log.list()) {
+				last = Math.max(last, Integer.parseInt(name.replaceAll("\\D",
+						"")));
+			}
+			assertEquals(writer.getSegments(), log.list().length);
+			assertTrue(writer.getSegments() < last);
+
+			// the matches going on are rebuilt when the log is opened again
+			writer = new GroupCommitJournal(log, 256, 5, 512);
+			Map<Integer, GameEngine> recovered = writer
+					.recover(template);
+			assertEquals(new HashSet<Integer>(Arrays.asList(10, 11, 12)),
+					recovered.keySet());
+			journals.clear();
+			for (int i = 0; i < 3; i++) {
+				GameEngine engine = recovered.get(10 + i);
+				assertArrayEquals(tables.get(i).model.getProjectedScores(),
+						engine.getProjectedScores());
+				assertEquals(tables.get(i).current.getType(), engine
+						.getCurrentCard().getType());
+				journals.add(new MatchJournal(writer, Durability.TURN, 10 + i));
+				new CarcassonneModel(engine).setJournal(journals.get(i));
+			}
+			for (MatchJournal journal : journals) {
+				assertTrue(journal.awaitAcknowledged(5000));
+			}
+			// the new snapshots leave the old segments useless
+			assertEquals(1, writer.getSegments());
+			assertEquals(1, log.list().length);
+		} finally {
+			writer.close();
+			delete(log);
+		}
+	}
+
+	@Test
+	public void restartTest() throws Exception {
+		File log = newDirectory();
+		GroupCommitJournal writer = new GroupCommitJournal(log, 256, 5, 512);
+		try {
+			DeckTemplate template = largeDeck();
+			MatchJournal journal = new MatchJournal(writer, Durability.TURN, 0);
+			journal.setSnapshotInterval(5);
+			Table table = new Table(journal, template, 300);
+			while (table.turn()) {
+				assertTrue(journal.awaitAcknowledged(5000));
+			}
+			writer.close();
+
+			// the match is over: nothing to recover, but its id stays taken
+			writer = new GroupCommitJournal(log, 256, 5, 512);
+			assertTrue(writer.recover(template).isEmpty());
+			assertEquals(1, writer.getNextId());
+			// a match starting again with the same id is kept all the same,
+			// even without snapshots
+			journal = new MatchJournal(writer, Durability.TURN, 0);
+			table = new Table(journal, template, 301);
+			for (int turn = 0; turn < 30; turn++) {
+				assertTrue(table.turn());
+				assertTrue(journal.awaitAcknowledged(5000));
+			}
+			writer.close();
+
+			writer = new GroupCommitJournal(log, 256, 5, 512);
+			GameEngine engine = writer.recover(template).get(0);
+			assertNotNull(engine);
+			assertArrayEquals(table.model.getProjectedScores(),
+					engine.getProjectedScores());
+		} finally {
+			writer.close();
+			delete(log);
+		}
+	}
+
+	@Test
+	public void backpressureTest() throws Exception {
+		File log = newDirectory();
+		final GroupCommitJournal writer = new GroupCommitJournal(log, 64,
+				1000, 1 << 20, 64);
+		final CountDownLatch stuck = new CountDownLatch(1);
+		try {
+			// the writing thread hangs on the first acknowledgement
+			final MatchJournal journal = new MatchJournal(writer,
+					Durability.NONE, 5) {
+				@Override
+				public void acknowledge(long sequence) {
+					try {
+						stuck.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					super.acknowledge(sequence);
+				}
+			};
+			final byte[] records = new byte[16];
+			Thread match = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 1; i <= 50; i++) {
+						records[0] = (byte) i;
+						writer.submit(journal, records, records.length, i, 0);
+					}
+				}
+			};
+			match.start();
+			for (int i = 0; i < 500 && writer.getStalls() == 0; i++) {
+				Thread.sleep(10);
+			}
+			// the buffer is full: the match waits instead of filling it more
+			assertTrue(writer.getStalls() > 0);
+			match.join(50);
+			assertTrue(match.isAlive());
+			stuck.countDown();
+			match.join(5000);
+			assertFalse(match.isAlive());
+			writer.close();
+			assertEquals(50, journal.getAcknowledged());
+			byte[] read = GroupCommitJournal.read(log).get(5);
+			assertEquals(50 * records.length, read.length);
+			for (int i = 0; i < 50; i++) {
+				assertEquals(i + 1, read[i * records.length]);
+			}
+		} finally {
+			stuck.countDown();
+			delete(log);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package netTests;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import model.*;
+import net.GroupCommitJournal;
+import net.Server;
+
+import org.junit.Test;
+
+import view.AbstractCarcassonneView;
+
+public class ServerTest {
+
+	/**
+	 * A server that isn't reachable from the network.
+	 */
+	private static class LocalServer extends Server {
+		private LocalServer(JournalWriter journal,
+				Map<Integer, GameEngine> restored, int firstIndex) {
+			super(0, journal, restored, firstIndex);
+		}
+
+		@Override
+		public void start(int port) {
+		}
+	}
+
+	/**
+	 * A view keeping a copy of the board, that plays the first place found
+	 * for the card when the test asks it to.
+	 */
+	private static class ScriptedView extends AbstractCarcassonneView {
+		private final Board mirror = new Board();
+		private final Set<Coordinate> placed = new HashSet<Coordinate>();
+		private StartSignal signal;
+		private Player current;
+		private Card card;
+		private boolean over = false;
+
+		@Override
+		public synchronized void update(Observable o, Object update) {
+			if (update instanceof StartSignal) {
+				signal = (StartSignal) update;
+				track(new Coordinate(0, 0), signal.getStarterCard());
+			} else if (update instanceof BoardUpdate) {
+				track(((BoardUpdate) update).getWhere(),
+						((BoardUpdate) update).getUpdatedCard());
+			} else if (update instanceof Player) {
+				current = (Player) update;
+			} else if (update instanceof CardUpdate) {
+				card = ((CardUpdate) update).getUpdatedCard();
+			} else if ("Game Over!".equals(update)) {
+				over = true;
+			}
+		}
+
+		private void track(Coordinate where, Card tile) {
+			if (placed.add(where)) {
+				try {
+					mirror.place(where, new Card(tile.getType(), tile
+							.getRotation()));
+				} catch (InvalidPutException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+
+		private synchronized boolean isPlaying() {
+			return signal != null && !over
+					&& signal.getPlayer().equals(current);
+		}
+
+		private void send(Object command) {
+			setChanged();
+			notifyObservers(command);
+		}
+
+		private void turn() {
+			while (mirror.getAcceptingCoordinates(card).isEmpty()) {
+				send("rotate");
+			}
+			send(mirror.getAcceptingCoordinates(card).iterator().next());
+			send("pass");
+		}
+	}
+
+	private static File newDirectory() throws IOException {
+		File directory = File.createTempFile("server", ".journal");
+		directory.delete();
+		directory.mkdir();
+		return directory;
+	}
+
+	private static void delete(File directory) {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	/**
+	 * Plays the turns of the given views, up to the given number or to the
+	 * end of the match, and returns the number of turns played.
+	 */
+	private static int play(List<ScriptedView> views, int turns) {
+		int played = 0;
+		for (boolean playing = true; playing && played < turns;) {
+			playing = false;
+			for (ScriptedView view : views) {
+				if (view.isPlaying()) {
+					view.turn();
+					played++;
+					playing = true;
+					break;
+				}
+			}
+		}
+		return played;
+	}
+
+	@Test
+	public void rejoinTest() throws Exception {
+		File log = newDirectory();
+		GroupCommitJournal writer = new GroupCommitJournal(log, 256, 5, 1 << 20);
+		try {
+			Server server = new LocalServer(writer,
+					new HashMap<Integer, GameEngine>(), 0);
+			List<ScriptedView> views = new ArrayList<ScriptedView>();
+			for (int i = 0; i < 2; i++) {
+				views.add(new ScriptedView());
+				server.newPlayer(views.get(i));
+			}
+			// the match starts when the timer of the server expires
+			for (int i = 0; i < 500 && !views.get(1).isPlaying()
+					&& !views.get(0).isPlaying(); i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(2, play(views, 2));
+			assertFalse(views.get(0).over);
+			// the server stops without the match being over
+			server.closeJournal();
+
+			writer = new GroupCommitJournal(log, 256, 5, 1 << 20);
+			Map<Integer, GameEngine> restored = writer.recover(DeckTemplate
+					.getStandard());
+			assertEquals(Collections.singleton(0), restored.keySet());
+			server = new LocalServer(writer, restored, writer.getNextId());
+			List<ScriptedView> rejoined = new ArrayList<ScriptedView>();
+			for (ScriptedView view : views) {
+				ScriptedView seat = new ScriptedView();
+				PlayerColor color = view.signal.getPlayer().getColor();
+				assertFalse(server.rejoin(seat, "Room1", color));
+				assertTrue(server.rejoin(seat, "Room0", color));
+				assertFalse(server.rejoin(new ScriptedView(), "Room0", color));
+				// the new view sees the match as the old one left it
+				assertEquals(view.placed, seat.placed);
+				assertEquals(view.current, seat.current);
+				assertEquals(view.card, seat.card);
+				rejoined.add(seat);
+			}
+			assertTrue(play(rejoined, Integer.MAX_VALUE) > 0);
+			for (ScriptedView seat : rejoined) {
+				assertTrue(seat.over);
+			}
+			server.closeJournal();
+
+			// the match is over: nothing is left to recover
+			writer = new GroupCommitJournal(log, 256, 5, 1 << 20);
+			assertTrue(writer.recover(DeckTemplate.getStandard()).isEmpty());
+		} finally {
+			writer.close();
+			delete(log);
+		}
+	}
+}
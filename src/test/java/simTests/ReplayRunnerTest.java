@@ -0,0 +1,68 @@
+package simTests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+import model.DeckTemplate;
+
+import org.junit.Test;
+
+import sim.RandomStrategy;
+import sim.RecordedGame;
+import sim.ReplayRunner;
+import sim.Strategy;
+import sim.TournamentRunner;
+
+public class ReplayRunnerTest {
+
+	@Test
+	public void replayTest() throws Exception {
+		List<Strategy> strategies = new ArrayList<Strategy>();
+		strategies.add(new RandomStrategy());
+		TournamentRunner tournament = new TournamentRunner(strategies, 3, 8,
+				7, 2);
+		tournament.setRecording(true);
+		tournament.run();
+		List<RecordedGame> recorded = tournament.getRecorded();
+		assertEquals(8, recorded.size());
+
+		File archive = File.createTempFile("games", ".bin");
+		try {
+			RecordedGame.save(archive, recorded);
+			List<RecordedGame> loaded = RecordedGame.load(archive);
+			assertEquals(8, loaded.size());
+			ReplayRunner replay = new ReplayRunner(loaded,
+					DeckTemplate.getStandard(), 3);
+			replay.run();
+			long moves = 0;
+			for (RecordedGame game : recorded) {
+				moves += game.getMoves().size();
+			}
+			assertEquals(moves, replay.getMoves());
+			assertTrue(replay.getMoveThroughput() > 0);
+
+			// a game whose scores differ from the engine's is reported
+			RecordedGame original = loaded.get(5);
+			RecordedGame wrong = new RecordedGame(original.getSeed(),
+					original.getPlayersNumber());
+			for (int i = 0; i < original.getMoves().size(); i++) {
+				wrong.add(original.getMoves().get(i), original.getScores(i));
+			}
+			int[] scores = original.getFinalScores();
+			scores[0]++;
+			wrong.setFinalScores(scores);
+			loaded.set(5, wrong);
+			try {
+				new ReplayRunner(loaded, DeckTemplate.getStandard(), 3).run();
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause().getMessage().startsWith("Game 5"));
+			}
+		} finally {
+			archive.delete();
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package simTests;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import sim.RandomStrategy;
+import sim.SearchStrategy;
+import sim.Strategy;
+import sim.StrategyStatistics;
+import sim.TournamentRunner;
+
+public class TournamentRunnerTest {
+
+	@Test
+	public void runTest() throws Exception {
+		List<Strategy> strategies = new ArrayList<Strategy>();
+		strategies.add(new RandomStrategy());
+		strategies.add(new SearchStrategy(5));
+		List<StrategyStatistics> first = new TournamentRunner(strategies, 3,
+				6, 42, 3).run();
+		assertEquals(2, first.size());
+		assertEquals(9, first.get(0).getSeats());
+		assertEquals(9, first.get(1).getSeats());
+		assertEquals(6, first.get(0).getWins() + first.get(1).getWins(), 1e-9);
+		// the same seed gives the same matches with any number of threads
+		List<StrategyStatistics> second = new TournamentRunner(strategies, 3,
+				6, 42, 1).run();
+		for (int i = 0; i < first.size(); i++) {
+			assertEquals(first.get(i).getScoreDistribution(), second.get(i)
+					.getScoreDistribution());
+			assertEquals(first.get(i).getWins(), second.get(i).getWins(), 1e-9);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package view.botTests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.*;
+
+import model.Card;
+import model.DeckTemplate;
+import model.Direction;
+import model.TileType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import view.bot.MonteCarloTreeSearch;
+import view.bot.Move;
+import view.bot.SearchState;
+
+public class SearchTest {
+
+	private static final String STARTER = "N=N S=C W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0";
+	private static final TileType CITY = TileType
+			.valueOf("N=C S=N W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0");
+
+	private SearchState state;
+
+	@Before
+	public void setUp() {
+		state = new SearchState(2, new Card(STARTER));
+	}
+
+	@Test
+	public void pushPopTest() {
+		List<Move> moves = state.getMoves(CITY);
+		Move closing = new Move(CITY, 0, -1, 0, Direction.NORTH);
+		assertTrue(moves.contains(closing));
+		state.push();
+		state.play(closing);
+		// the city is closed at once: the marker is paid and given back
+		assertEquals(4, state.getScore(0));
+		assertEquals(7, state.getMarkersLeft(0));
+		assertEquals(1, state.getCurrentPlayer());
+		state.pop();
+		assertEquals(0, state.getScore(0));
+		assertEquals(0, state.getCurrentPlayer());
+		assertEquals(moves, state.getMoves(CITY));
+	}
+
+	@Test
+	public void searchTest() {
+		List<TileType> deck = new ArrayList<TileType>(Arrays.asList(CITY,
+				CITY, CITY));
+		Map<Move, Integer> visits = new MonteCarloTreeSearch(2, new Card(
+				STARTER), new ArrayList<Move>(), CITY, deck, Long.MAX_VALUE,
+				200, 42).call();
+		assertFalse(visits.isEmpty());
+		int total = 0;
+		for (Map.Entry<Move, Integer> entry : visits.entrySet()) {
+			assertTrue(state.getMoves(CITY).contains(entry.getKey()));
+			total += entry.getValue();
+		}
+		assertEquals(200, total);
+	}
+
+	@Test
+	public void remainingTilesTest() throws Exception {
+		DeckTemplate template = DeckTemplate.read(new ByteArrayInputStream(
+				("3 N=C S=N W=S E=S NS=0 NE=0 NW=0 WE=1 SE=0 SW=0\n"
+						+ "N=S S=S W=S E=S NS=0 NE=0 NW=0 WE=0 SE=0 SW=0\n")
+						.getBytes("UTF-8")));
+		List<Move> history = new ArrayList<Move>();
+		history.add(new Move(CITY, 0, -1, 0, null));
+		List<TileType> remaining = MonteCarloTreeSearch.getRemainingTiles(
+				template, history, CITY);
+		// the tiles of the given template, not of the standard one
+		assertEquals(2, remaining.size());
+		assertEquals(1, Collections.frequency(remaining, CITY));
+		assertTrue(remaining.contains(template.get(3)));
+	}
+}
@@ -21,32 +21,32 @@ public class TextualCarcassonneViewTest {
 				"N=C S=C W=C E=C NS=1 NE=0 NW=0 WE=1 SE=0 SW=0");
 		Player owner = new Player(PlayerColor.BLACK);
 		tileToPrint.addMarker(Direction.EAST, new Marker(owner));
-		view.update(null, tileToPrint);
+		view.update(null, new CardUpdate(tileToPrint));
 		tileToPrint = new Card("N=C S=N W=C E=C NS=0 NE=1 NW=1 WE=1 SE=0 SW=0");
 		owner = new Player(PlayerColor.BLUE);
 		tileToPrint.addMarker(Direction.NORTH, new Marker(owner));
-		view.update(null, tileToPrint);
+		view.update(null, new CardUpdate(tileToPrint));
 		tileToPrint = new Card("N=S S=S W=S E=S NS=0 NE=0 NW=0 WE=0 SE=0 SW=0");
 		owner = new Player(PlayerColor.GREEN);
 		tileToPrint.addMarker(Direction.SOUTH, new Marker(owner));
-		view.update(null, tileToPrint);
+		view.update(null, new CardUpdate(tileToPrint));
 		tileToPrint = new Card("N=C S=S W=C E=S NS=0 NE=0 NW=0 WE=0 SE=1 SW=0");
 		owner = new Player(PlayerColor.RED);
 		tileToPrint.addMarker(Direction.WEST, new Marker(owner));
-		view.update(null, tileToPrint);
+		view.update(null, new CardUpdate(tileToPrint));
 		// caso di casino
 		tileToPrint = new Card("N=S S=N W=S E=S NS=0 NE=0 NW=1 WE=0 SE=0 SW=1");
 		owner = new Player(PlayerColor.RED);
 		tileToPrint.addMarker(Direction.WEST, new Marker(owner));
-		view.update(null, tileToPrint);
+		view.update(null, new CardUpdate(tileToPrint));
 		tileToPrint.rotate();
-		view.update(null, tileToPrint);
+		view.update(null, new CardUpdate(tileToPrint));
 		tileToPrint.rotate();
-		view.update(null, tileToPrint);
+		view.update(null, new CardUpdate(tileToPrint));
 		tileToPrint.rotate();
-		view.update(null, tileToPrint);
+		view.update(null, new CardUpdate(tileToPrint));
 		tileToPrint.rotate();
-		view.update(null, tileToPrint);
+		view.update(null, new CardUpdate(tileToPrint));
 	}
 
 	@Test
@@ -82,13 +82,13 @@ public class TextualCarcassonneViewTest {
 				"N=S S=S W=S E=S NS=0 NE=0 NW=0 WE=0 SE=0 SW=0");
 		Player owner = new Player(PlayerColor.BLACK);
 		tileToPrint.addMarker(Direction.EAST, new Marker(owner));
-		viewtest.view.update(null, tileToPrint);
+		viewtest.view.update(null, new CardUpdate(tileToPrint));
 		tileToPrint.rotate();
-		viewtest.view.update(null, tileToPrint);
+		viewtest.view.update(null, new CardUpdate(tileToPrint));
 		tileToPrint.rotate();
-		viewtest.view.update(null, tileToPrint);
+		viewtest.view.update(null, new CardUpdate(tileToPrint));
 		tileToPrint.rotate();
-		viewtest.view.update(null, tileToPrint);
+		viewtest.view.update(null, new CardUpdate(tileToPrint));
 		viewtest.setUp();
 		viewtest.tilePrintTest();/*
 								 * viewtest.setUp(); viewtest.boardPrintTest();